@@ -1,27 +1,123 @@
 package com.mathsoft.cgraphicsapp;
 
 import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
 import android.util.Log;
 
 import androidx.core.content.ContextCompat;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ClangCompilerManager {
 
     private static final String TAG = "ClangCompilerManager";
     private static final String COMPILER_DIR = "clang";
     private static final String BIN_DIR = "bin";
-    private static final String MARKER_FILE = ".compiler_installed";
+    // Marcador de las instalaciones anteriores al manifiesto
+    private static final String LEGACY_MARKER_FILE = ".compiler_installed";
+    private static final String TOOLCHAIN_FILE = "toolchain.json";
+
+    // Verificación completa de hashes como mucho una vez por semana
+    private static final long VERIFY_INTERVAL_MS = 7L * 24 * 60 * 60 * 1000;
+    // Espera antes de la verificación completa, para no competir con la precarga
+    // ni con la primera compilación, que leen el mismo toolchain
+    private static final long FULL_VERIFY_DELAY_MS = 2 * 60 * 1000;
+
+    // Verificación en su propio hilo de baja prioridad (no en el executor serial de AsyncTask)
+    static final ScheduledExecutorService VERIFY_EXECUTOR = 
+        BackgroundExecutors.newSingleThreadScheduledExecutor("toolchain-verify");
+
+    // Descriptor y estado de instalación compartidos por todas las instancias del proceso
+    private static final Object toolchainLock = new Object();
+    private static ToolchainDescriptor cachedToolchain;
+    private static InstallManifest cachedInstallState;
+    // Se consultan en cada compilación (hasDeferredFiles): se calculan una vez
+    private static Boolean cachedInstalled;
+    private static Long cachedPackageVersion;
+
+    // Instalación y reparación no se ejecutan a la vez; la verificación solo
+    // lo toma para leer el manifiesto y para registrar el resultado
+    private static final Object installLock = new Object();
+
+    // Copiado en paralelo del árbol de assets
+    private static final int MAX_COPY_THREADS = 4;
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    // El progreso se publica a intervalos fijos, no por archivo
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    // Extensiones que el APK guarda sin comprimir (noCompress en app/build.gradle):
+    // solo esos assets se pueden abrir como descriptor y copiar con transferTo
+    private static final String[] UNCOMPRESSED_EXTENSIONS = { ".so", ".a", ".o" };
+
+    // Ejecutables empaquetados como librerías nativas: libbin_<nombre>.so
+    private static final String NATIVE_EXEC_PREFIX = "libbin_";
+    private static final String NATIVE_EXEC_SUFFIX = ".so";
+
+    // Partes del sysroot que dependen de la arquitectura
+    private static final String SYSROOT_LIB_DIR = "sysroot/usr/lib/";
+    private static final String SYSROOT_INCLUDE_DIR = "sysroot/usr/include/";
+
+    // Se registra el tiempo de copia de cada archivo a partir de este tamaño
+    private static final long TIMING_LOG_MIN_SIZE = 4L * 1024 * 1024;
+
+    // Los duplicados más chicos se copian: un enlace no ahorra casi nada
+    // (app/toolchain.gradle usa el mismo límite al omitirlos de las partes)
+    private static final long MIN_LINK_SIZE = 64 * 1024;
 
     private final Context context;
     private CopyCallback callback;
+    private String installSummary;
+    private int copiedFiles;
+
+    // Progreso de la copia en curso: los hilos de copiado solo actualizan contadores
+    private final AtomicLong copiedBytes = new AtomicLong();
+    private String lastCopiedFile;
+    private int progressTotalFiles;
+    private long progressTotalBytes;
+    private boolean progressTotalBytesKnown;
+    private long progressStart;
+
+    /**
+     * Un archivo del árbol de assets y su ruta dentro del directorio del compilador
+     */
+    private static class AssetEntry {
+        final String assetPath;
+        final String relativePath;
+
+        AssetEntry(String assetPath, String relativePath) {
+            this.assetPath = assetPath;
+            this.relativePath = relativePath;
+        }
+    }
 
     public ClangCompilerManager(Context context) {
         this.context = context.getApplicationContext();
@@ -35,24 +131,94 @@ public class ClangCompilerManager {
     }
 
     /**
-     * Verifica si el compilador ya está instalado en el espacio privado de la app
+     * Verifica si el compilador ya está instalado en el espacio privado de la app:
+     * la última instalación terminó, nada quedó marcado como dañado y la
+     * hizo esta versión del APK
      */
     public boolean isCompilerInstalled() {
-        File compilerDir = new File(context.getFilesDir(), COMPILER_DIR);
-        File markerFile = new File(compilerDir, MARKER_FILE);
-        return compilerDir.exists() && markerFile.exists();
+        synchronized (toolchainLock) {
+            if (cachedInstalled == null) {
+                InstallManifest state = getInstallState();
+                cachedInstalled = state.isComplete()
+                    && state.getPackageVersion() == getPackageVersion();
+            }
+            return cachedInstalled;
+        }
+    }
+
+    /**
+     * Identificador de la instalación actual del toolchain. Cambia cada vez que
+     * la instalación escribe o borra archivos, lo que invalida los artefactos
+     * derivados (PCH, caches)
+     * @return el identificador, o 0 si no está instalado
+     */
+    public long getInstallStamp() {
+        return getInstallState().getInstallStamp();
     }
 
     /**
-     * Copia el compilador de assets al espacio privado si no existe
+     * Estado de la instalación (solo la cabecera del manifiesto, sin la lista de archivos)
+     */
+    private InstallManifest getInstallState() {
+        synchronized (toolchainLock) {
+            if (cachedInstallState == null) {
+                cachedInstallState = InstallManifest.loadHeader(getCompilerDirectory());
+            }
+            return cachedInstallState;
+        }
+    }
+
+    /**
+     * Descarta el estado en memoria tras cambiar el manifiesto
+     * @param toolchainChanged Si también hay que volver a examinar el toolchain
+     */
+    private static void invalidateInstallState(boolean toolchainChanged) {
+        synchronized (toolchainLock) {
+            cachedInstallState = null;
+            cachedInstalled = null;
+            cachedPackageVersion = null;
+            if (toolchainChanged) {
+                cachedToolchain = null;
+            }
+        }
+    }
+
+    /**
+     * Versión del APK instalado; una actualización de la app la cambia y
+     * obliga a comprobar el toolchain contra el nuevo APK. No cambia mientras
+     * el proceso vive, así que se consulta al PackageManager una sola vez.
+     */
+    private long getPackageVersion() {
+        synchronized (toolchainLock) {
+            if (cachedPackageVersion == null) {
+                try {
+                    cachedPackageVersion = context.getPackageManager()
+                        .getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+                } catch (PackageManager.NameNotFoundException e) {
+                    cachedPackageVersion = 0L;
+                }
+            }
+            return cachedPackageVersion;
+        }
+    }
+
+    /**
+     * Instala el compilador de assets al espacio privado, o completa o
+     * actualiza la instalación existente. Los archivos que el manifiesto
+     * registra como ya escritos (y que coinciden con el APK) no se copian.
      * @return true si se copió exitosamente o ya existía, false en caso de error
      */
     public boolean installCompiler() {
-        if (isCompilerInstalled()) {
-            Log.d(TAG, "Compiler already installed");
-            return true;
+        synchronized (installLock) {
+            if (isCompilerInstalled()) {
+                Log.d(TAG, "Compiler already installed");
+                return true;
+            }
+            return installOrRepair();
         }
+    }
 
+    private boolean installOrRepair() {
         String abi = getDeviceABI();
         String assetPath = abi + "/" + COMPILER_DIR;
         
@@ -62,19 +228,107 @@ public class ClangCompilerManager {
             callback.onCopyStarted();
         }
 
+        File destDir = new File(context.getFilesDir(), COMPILER_DIR);
+        InstallManifest installed = InstallManifest.load(destDir);
+        ScheduledExecutorService publisher = null;
         try {
-            File destDir = new File(context.getFilesDir(), COMPILER_DIR);
-            
-            // Copiar el árbol de directorios
-            copyAssetFolder(context.getAssets(), assetPath, destDir);
+            if (!destDir.exists() && !destDir.mkdirs()) {
+                throw new IOException("Failed to create directory: " + destDir.getAbsolutePath());
+            }
+            new File(destDir, LEGACY_MARKER_FILE).delete();
+
+            AssetManager assets = context.getAssets();
+            long start = System.currentTimeMillis();
+            resetProgress();
+            publisher = startProgressPublisher();
+
+            // Qué archivos ya están escritos y al día
+            InstallManifest expected = InstallManifest.loadPackaged(assets, abi);
+            boolean removedStale = pruneInstalled(installed, expected, destDir);
+            // Ejecutables que el sistema ya extrajo a nativeLibraryDir: no se copian
+            // (si antes se copiaron de assets, ahora los reemplaza el enlace)
+            Map<String, File> nativeExecutables = findNativeExecutables();
+            for (String path : nativeExecutables.keySet()) {
+                installed.remove(path);
+            }
+            int upToDate = installed.getFileCount();
+            installed.beginInstall(getPackageVersion());
+            Set<String> skip = new HashSet<>();
+            for (InstallManifest.FileEntry entry : installed.getFiles()) {
+                skip.add(entry.getPath());
+            }
+            if (upToDate > 0) {
+                Log.d(TAG, "Resuming install: " + upToDate + " files already in place");
+            }
+
+            skip.addAll(nativeExecutables.keySet());
+
+            // Sysroot mínimo: la arquitectura del dispositivo y el nivel de API
+            // mínimo. El resto se extrae cuando una compilación lo necesita.
+            String deviceTriple = ToolchainDescriptor.getTripleForAbi(abi, 
+                Collections.<String>emptyList());
+            String deviceArch = getSysrootArch(deviceTriple);
+            String apiLevel = getApiLevel(deviceTriple);
+            Set<String> deferredArchs = Collections.synchronizedSet(new TreeSet<String>());
+            Set<String> deferredApiLevels = Collections.synchronizedSet(new TreeSet<String>());
+            ToolchainArchive.EntryFilter wanted = path -> {
+                if (isCoreFile(path, deviceArch, apiLevel)) {
+                    return true;
+                }
+                if (installed.get(path) == null) {
+                    String pathApiLevel = getPathApiLevel(path);
+                    if (pathApiLevel != null) {
+                        deferredApiLevels.add(pathApiLevel);
+                    } else {
+                        deferredArchs.add(getPathArch(path));
+                    }
+                }
+                return false;
+            };
+
+            // Los duplicados (clang, clang++, clang-17...) no se escriben: se enlazan al final
+            Map<String, String> duplicates = findDuplicates(expected);
+            Set<String> originals = findRequiredOriginals(duplicates, skip, installed, wanted);
+            Set<String> skipCopy = new HashSet<>(skip);
+            skipCopy.addAll(duplicates.keySet());
+
+            long bytes = copyFiles(assets, abi, destDir, expected, installed,
+                path -> (wanted.shouldExtract(path) || originals.contains(path)) 
+                    && !skipCopy.contains(path));
+            int written = copiedFiles;
+            // Antes que los duplicados: el original puede ser uno de estos ejecutables
+            linkNativeExecutables(nativeExecutables, destDir);
+            long savedBytes = linkDuplicates(duplicates, skip, installed, expected, destDir, wanted);
+            if (!deferredArchs.isEmpty() || !deferredApiLevels.isEmpty()) {
+                Log.d(TAG, "Sysroot files deferred for: " + deferredArchs + " " + deferredApiLevels);
+            }
+
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
+            installSummary = String.format(Locale.US, 
+                "%d archivos, %.1f MB en %.1f s (%.1f MB/s), %d enlazados (%.1f MB ahorrados), "
+                + "%d ya instalados",
+                written, bytes / (1024.0 * 1024.0), elapsed / 1000.0,
+                (bytes / (1024.0 * 1024.0)) / (elapsed / 1000.0), copiedFiles - written,
+                savedBytes / (1024.0 * 1024.0), upToDate);
+            Log.d(TAG, "Installed: " + installSummary);
             
             // Establecer permisos de ejecución en binarios
             setExecutablePermissions(destDir);
             
-            // Crear archivo marcador
-            File markerFile = new File(destDir, MARKER_FILE);
-            markerFile.createNewFile();
+            // Cerrar el manifiesto: la instalación queda completa
+            // Los ejecutables de nativeLibraryDir cambian con cada actualización de la app
+            installed.setDeferredArchs(deferredArchs);
+            installed.setDeferredApiLevels(deferredApiLevels);
+            installed.finishInstall(copiedFiles > 0 || removedStale || !nativeExecutables.isEmpty());
+            invalidateInstallState(false);
+            writeInventory(destDir, installed, nativeExecutables);
+
+            // Examinar el toolchain una sola vez, aquí, en lugar de en cada compilación
+            synchronized (toolchainLock) {
+                cachedToolchain = probeToolchain(destDir);
+            }
             
+            stopProgressPublisher(publisher);
             if (callback != null) {
                 callback.onCopyCompleted(true);
             }
@@ -84,6 +338,9 @@ public class ClangCompilerManager {
             
         } catch (IOException e) {
             Log.e(TAG, "Error installing compiler", e);
+            installed.abortInstall();
+            invalidateInstallState(true);
+            stopProgressPublisher(publisher);
             if (callback != null) {
                 callback.onCopyCompleted(false);
             }
@@ -91,6 +348,666 @@ public class ClangCompilerManager {
         }
     }
 
+    /**
+     * Si al target le falta alguna parte del sysroot que quedó pendiente al
+     * instalar: sus headers y librerías comunes, o las de su nivel de API
+     */
+    public boolean hasDeferredFiles(String targetTriple) {
+        if (!isCompilerInstalled()) {
+            return false;
+        }
+        InstallManifest state = getInstallState();
+        String arch = getSysrootArch(targetTriple);
+        return state.getDeferredArchs().contains(arch)
+            || state.getDeferredApiLevels().contains(arch + "/" + getApiLevel(targetTriple));
+    }
+
+    /**
+     * Extrae la parte del sysroot que quedó pendiente al instalar (otra
+     * arquitectura u otro nivel de API) para un target. Se llama cuando una
+     * compilación falla por un archivo que no existe, y solo extrae si ese
+     * archivo pertenece a la parte pendiente del sysroot del target.
+     * @param missing Archivos que no encontraron clang o lld: un header como
+     *                figura en el #include, "-l&lt;nombre&gt;" o una ruta
+     * @return true si se extrajo algo y vale la pena reintentar la compilación
+     */
+    public boolean materializeDeferred(String targetTriple, Collection<String> missing) {
+        if (!hasDeferredFiles(targetTriple)) {
+            return false;
+        }
+        String arch = getSysrootArch(targetTriple);
+        String apiLevel = arch + "/" + getApiLevel(targetTriple);
+        AssetManager assets = context.getAssets();
+        String abi = getDeviceABI();
+        InstallManifest expected = InstallManifest.loadPackaged(assets, abi);
+        if (!findsDeferredFile(missing, targetTriple, expected)) {
+            Log.d(TAG, "Missing files are not in the deferred sysroot: " + missing);
+            return false;
+        }
+
+        synchronized (installLock) {
+            InstallManifest state = getInstallState();
+            boolean archDeferred = state.getDeferredArchs().contains(arch);
+            boolean apiDeferred = state.getDeferredApiLevels().contains(apiLevel);
+            if (!isCompilerInstalled() || (!archDeferred && !apiDeferred)) {
+                return false;
+            }
+
+            File destDir = getCompilerDirectory();
+            InstallManifest installed = InstallManifest.load(destDir);
+            try {
+                long start = System.currentTimeMillis();
+                resetProgress();
+
+                // Solo la parte del target: los demás niveles de API siguen pendientes
+                ToolchainArchive.EntryFilter wanted = path -> {
+                    if (installed.get(path) != null || !arch.equals(getPathArch(path))) {
+                        return false;
+                    }
+                    String pathApiLevel = getPathApiLevel(path);
+                    return pathApiLevel == null ? archDeferred : apiLevel.equals(pathApiLevel);
+                };
+                Map<String, String> duplicates = findDuplicates(expected);
+                Set<String> originals = findRequiredOriginals(duplicates, 
+                    Collections.<String>emptySet(), installed, wanted);
+
+                installed.beginInstall(getPackageVersion());
+                long bytes = copyFiles(assets, abi, destDir, expected, installed,
+                    path -> (wanted.shouldExtract(path) || originals.contains(path)) 
+                        && !duplicates.containsKey(path));
+                linkDuplicates(duplicates, Collections.<String>emptySet(), installed, expected,
+                    destDir, wanted);
+
+                Set<String> remainingArchs = installed.getDeferredArchs();
+                remainingArchs.remove(arch);
+                installed.setDeferredArchs(remainingArchs);
+                Set<String> remainingApiLevels = installed.getDeferredApiLevels();
+                remainingApiLevels.remove(apiLevel);
+                installed.setDeferredApiLevels(remainingApiLevels);
+                installed.finishInstall(false);
+                invalidateInstallState(false);
+                writeInventory(destDir, installed, findNativeExecutables());
+
+                Log.d(TAG, "Materialized " + copiedFiles + " deferred files (" + (bytes / 1024) 
+                      + " KB) for " + targetTriple + " in " 
+                      + (System.currentTimeMillis() - start) + " ms");
+                return copiedFiles > 0;
+            } catch (IOException e) {
+                Log.e(TAG, "Error extracting deferred sysroot files", e);
+                installed.abortInstall();
+                invalidateInstallState(true);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Si alguno de los archivos que no encontró la compilación está en la
+     * parte pendiente del sysroot del target (y en el APK). Los headers del
+     * proyecto, las librerías inexistentes o los fuentes que faltan no
+     * justifican extraer nada.
+     * @param expected Lista del APK, o null si el APK trae el árbol suelto
+     */
+    private boolean findsDeferredFile(Collection<String> missing, String targetTriple,
+                                      InstallManifest expected) {
+        String arch = getSysrootArch(targetTriple);
+        String apiLevel = getApiLevel(targetTriple);
+        File compilerDir = getCompilerDirectory();
+        for (String name : missing) {
+            for (String path : getSysrootCandidates(name, arch, apiLevel)) {
+                if (!arch.equals(getPathArch(path)) || new File(compilerDir, path).exists()) {
+                    continue;
+                }
+                if (expected != null ? expected.get(path) != null : assetExists(path)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rutas del sysroot del target (relativas al directorio del compilador)
+     * donde podría estar un archivo que no se encontró
+     */
+    private List<String> getSysrootCandidates(String name, String arch, String apiLevel) {
+        List<String> candidates = new ArrayList<>();
+        String compilerPrefix = getCompilerDirectory().getAbsolutePath() + "/";
+        if (name.startsWith(compilerPrefix)) {
+            candidates.add(name.substring(compilerPrefix.length()));
+            return candidates;
+        }
+        if (name.startsWith("/") || name.contains("..")) {
+            // Otra ruta absoluta: un archivo del usuario
+            return candidates;
+        }
+
+        String archLibDir = SYSROOT_LIB_DIR + arch + "/";
+        String apiLibDir = archLibDir + apiLevel + "/";
+        if (name.startsWith("-l")) {
+            String library = "lib" + name.substring(2);
+            candidates.add(apiLibDir + library + ".so");
+            candidates.add(apiLibDir + library + ".a");
+            candidates.add(archLibDir + library + ".a");
+            return candidates;
+        }
+        // Un header (los comunes ya están instalados) o un objeto de arranque
+        candidates.add(SYSROOT_INCLUDE_DIR + arch + "/" + name);
+        candidates.add(apiLibDir + name);
+        candidates.add(archLibDir + name);
+        return candidates;
+    }
+
+    /**
+     * Si el árbol suelto de assets trae un archivo del compilador
+     */
+    private boolean assetExists(String path) {
+        try (InputStream in = context.getAssets().open(getDeviceABI() + "/" + COMPILER_DIR 
+                                                        + "/" + path)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Archivos que se extraen al instalar: todo salvo el sysroot de otras
+     * arquitecturas y, de la del dispositivo, las librerías de otros niveles de API
+     */
+    private static boolean isCoreFile(String path, String deviceArch, String apiLevel) {
+        String arch = getPathArch(path);
+        if (arch == null) {
+            return true;
+        }
+        if (!arch.equals(deviceArch)) {
+            return false;
+        }
+        String pathApiLevel = getPathApiLevel(path);
+        return pathApiLevel == null || pathApiLevel.equals(arch + "/" + apiLevel);
+    }
+
+    /**
+     * Nivel de API de una librería del sysroot (sysroot/usr/lib/&lt;arch&gt;/&lt;api&gt;/...)
+     * @return "&lt;arch&gt;/&lt;api&gt;", o null si el archivo no depende del nivel de API
+     */
+    private static String getPathApiLevel(String path) {
+        String arch = getPathArch(path);
+        if (arch == null || !path.startsWith(SYSROOT_LIB_DIR)) {
+            return null;
+        }
+        String rest = path.substring(SYSROOT_LIB_DIR.length() + arch.length() + 1);
+        int slash = rest.indexOf('/');
+        if (slash < 0) {
+            return null;
+        }
+        String level = rest.substring(0, slash);
+        return isNumber(level) ? arch + "/" + level : null;
+    }
+
+    /**
+     * Arquitectura del sysroot a la que pertenece un archivo
+     * (sysroot/usr/lib/&lt;arch&gt;/... o sysroot/usr/include/&lt;arch&gt;/...)
+     * @return la arquitectura, o null si el archivo es común a todas
+     */
+    private static String getPathArch(String path) {
+        String rest;
+        if (path.startsWith(SYSROOT_LIB_DIR)) {
+            rest = path.substring(SYSROOT_LIB_DIR.length());
+        } else if (path.startsWith(SYSROOT_INCLUDE_DIR)) {
+            rest = path.substring(SYSROOT_INCLUDE_DIR.length());
+        } else {
+            return null;
+        }
+        int slash = rest.indexOf('/');
+        if (slash < 0) {
+            return null;
+        }
+        String dir = rest.substring(0, slash);
+        return dir.contains("-linux-android") ? dir : null;
+    }
+
+    /**
+     * Directorio del sysroot para un target triple: sin el nivel de API, y
+     * con el nombre "arm" que usa el sysroot en lugar de "armv7a"
+     */
+    private static String getSysrootArch(String targetTriple) {
+        String arch = targetTriple.substring(0, 
+            targetTriple.length() - getApiLevel(targetTriple).length());
+        if (arch.startsWith("armv7a-")) {
+            arch = "arm-" + arch.substring("armv7a-".length());
+        }
+        return arch;
+    }
+
+    /**
+     * Nivel de API al final de un target triple ("" si no tiene)
+     */
+    private static String getApiLevel(String targetTriple) {
+        int end = targetTriple.length();
+        int start = end;
+        while (start > 0 && Character.isDigit(targetTriple.charAt(start - 1))) {
+            start--;
+        }
+        return targetTriple.substring(start, end);
+    }
+
+    private static boolean isNumber(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Escribe los archivos que acepta el filtro: desde el archivo empaquetado
+     * si el APK lo trae, si no desde el árbol suelto
+     * @return bytes escritos
+     */
+    private long copyFiles(AssetManager assets, String abi, File destDir, InstallManifest expected,
+                           InstallManifest installed, ToolchainArchive.EntryFilter filter)
+            throws IOException {
+        ToolchainArchive archive = ToolchainArchive.open(assets, abi);
+        if (archive != null) {
+            Log.d(TAG, "Extracting from " + archive.getParts().size() + " archive parts ("
+                  + archive.getFileCount() + " files)");
+            if (expected != null) {
+                addPendingTotals(expected, filter);
+            } else {
+                // Sin la lista del APK, el total es el del archivo completo (una cota)
+                addProgressTotals(archive.getFileCount(), archive.getTotalBytes());
+            }
+            return runInParallel(archive.getParts(), (part, buffer) ->
+                ToolchainArchive.extractPart(assets, part, destDir, buffer, filter,
+                    (path, size, hash) -> recordInstalled(installed, expected, path, size, hash),
+                    copiedBytes));
+        }
+        Log.d(TAG, "Copying from the asset tree");
+        return copyAssetTree(assets, abi + "/" + COMPILER_DIR, destDir, expected, filter, installed);
+    }
+
+    /**
+     * Quita del manifiesto los archivos que hay que volver a escribir. Con la
+     * lista del APK se conservan los que tienen el mismo hash; sin ella, solo
+     * los de una instalación interrumpida de esta misma versión del APK.
+     * @return true si se borraron archivos que el APK ya no trae
+     */
+    private boolean pruneInstalled(InstallManifest installed, InstallManifest expected, 
+                                   File destDir) {
+        boolean sameVersion = installed.getPackageVersion() == getPackageVersion();
+        boolean removedStale = false;
+        for (InstallManifest.FileEntry entry : installed.getFiles()) {
+            boolean keep;
+            if (expected != null) {
+                InstallManifest.FileEntry wanted = expected.get(entry.getPath());
+                if (wanted == null) {
+                    new File(destDir, entry.getPath()).delete();
+                    removedStale = true;
+                    keep = false;
+                } else {
+                    keep = wanted.sameContentAs(entry) && installed.isPresent(entry);
+                }
+            } else {
+                keep = sameVersion && installed.isPresent(entry);
+            }
+            if (!keep) {
+                installed.remove(entry.getPath());
+            }
+        }
+        return removedStale;
+    }
+
+    /**
+     * Ejecutables empaquetados como librerías: el APK trae bin/&lt;nombre&gt;
+     * como lib/&lt;abi&gt;/libbin_&lt;nombre&gt;.so, que el sistema extrae a
+     * nativeLibraryDir al instalar la app (con permiso de ejecución)
+     * @return ruta dentro del compilador (bin/&lt;nombre&gt;) → archivo en nativeLibraryDir
+     */
+    private Map<String, File> findNativeExecutables() {
+        Map<String, File> executables = new LinkedHashMap<>();
+        File[] libraries = getNativeLibraryDir().listFiles();
+        if (libraries == null) {
+            return executables;
+        }
+        for (File library : libraries) {
+            String name = library.getName();
+            if (name.startsWith(NATIVE_EXEC_PREFIX) && name.endsWith(NATIVE_EXEC_SUFFIX)
+                    && name.length() > NATIVE_EXEC_PREFIX.length() + NATIVE_EXEC_SUFFIX.length()) {
+                String tool = name.substring(NATIVE_EXEC_PREFIX.length(),
+                    name.length() - NATIVE_EXEC_SUFFIX.length());
+                executables.put(BIN_DIR + "/" + tool, library);
+            }
+        }
+        return executables;
+    }
+
+    private File getNativeLibraryDir() {
+        return new File(context.getApplicationInfo().nativeLibraryDir);
+    }
+
+    /**
+     * Crea en bin/ los enlaces con los nombres reales de las herramientas
+     * (clang elige el modo según argv[0] y busca ld.lld por nombre). Se
+     * rehacen en cada instalación porque nativeLibraryDir cambia con cada
+     * actualización de la app.
+     */
+    private void linkNativeExecutables(Map<String, File> executables, File destDir) 
+            throws IOException {
+        for (Map.Entry<String, File> executable : executables.entrySet()) {
+            File link = new File(destDir, executable.getKey());
+            File parent = link.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Failed to create directory: " + parent.getAbsolutePath());
+            }
+            link.delete();
+            try {
+                Os.symlink(executable.getValue().getAbsolutePath(), link.getAbsolutePath());
+            } catch (ErrnoException e) {
+                throw new IOException("No se pudo enlazar " + executable.getKey(), e);
+            }
+        }
+        if (!executables.isEmpty()) {
+            Log.d(TAG, "Linked " + executables.size() + " executables from nativeLibraryDir");
+        }
+    }
+
+    /**
+     * Busca en la lista del APK los archivos idénticos (mismo tamaño y hash).
+     * El primero de cada grupo se copia y los demás se enlazan a él.
+     * @return ruta del duplicado → ruta del original (vacío sin lista del APK)
+     */
+    private static Map<String, String> findDuplicates(InstallManifest expected) {
+        Map<String, String> duplicates = new LinkedHashMap<>();
+        if (expected == null) {
+            return duplicates;
+        }
+        Map<String, String> originals = new HashMap<>();
+        for (InstallManifest.FileEntry entry : expected.getFiles()) {
+            if (entry.getHash() == null || entry.getSize() < MIN_LINK_SIZE) {
+                continue;
+            }
+            String key = entry.getSize() + ":" + entry.getHash();
+            String original = originals.get(key);
+            if (original == null) {
+                originals.put(key, entry.getPath());
+            } else {
+                duplicates.put(entry.getPath(), original);
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Originales que hay que escribir en esta pasada aunque por sí mismos
+     * queden pendientes (otra arquitectura u otro nivel de API): el archivo
+     * empaquetado no trae los duplicados, que solo se pueden enlazar
+     * @param upToDate Duplicados que ya estaban instalados
+     * @param wanted Archivos que corresponde instalar en esta pasada
+     */
+    private static Set<String> findRequiredOriginals(Map<String, String> duplicates,
+                                                     Set<String> upToDate,
+                                                     InstallManifest installed,
+                                                     ToolchainArchive.EntryFilter wanted) {
+        Set<String> originals = new HashSet<>();
+        for (Map.Entry<String, String> duplicate : duplicates.entrySet()) {
+            String original = duplicate.getValue();
+            if (!upToDate.contains(duplicate.getKey()) && wanted.shouldExtract(duplicate.getKey())
+                    && installed.get(original) == null && !wanted.shouldExtract(original)) {
+                originals.add(original);
+            }
+        }
+        return originals;
+    }
+
+    /**
+     * Crea los duplicados como hard links al original (mismo inodo: clang ve
+     * su propia ruta y nombre, como con una copia). Si el sistema de archivos
+     * no lo permite se usa un symlink y, en último caso, una copia.
+     * @param upToDate Duplicados que ya estaban instalados
+     * @param wanted Archivos que corresponde instalar en esta pasada
+     * @return bytes que no hubo que escribir
+     */
+    private long linkDuplicates(Map<String, String> duplicates, Set<String> upToDate,
+                                InstallManifest installed, InstallManifest expected, File destDir,
+                                ToolchainArchive.EntryFilter wanted) throws IOException {
+        List<Map.Entry<String, String>> pending = new ArrayList<>();
+        for (Map.Entry<String, String> duplicate : duplicates.entrySet()) {
+            if (!upToDate.contains(duplicate.getKey()) && wanted.shouldExtract(duplicate.getKey())) {
+                pending.add(duplicate);
+            }
+        }
+        // Los enlaces cuentan como archivos, pero no suman bytes escritos
+        addProgressTotals(pending.size(), 0);
+
+        long saved = 0;
+        for (Map.Entry<String, String> duplicate : pending) {
+            File original = new File(destDir, duplicate.getValue());
+            File link = new File(destDir, duplicate.getKey());
+            File parent = link.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Failed to create directory: " + parent.getAbsolutePath());
+            }
+            link.delete();
+
+            InstallManifest.FileEntry entry = expected.get(duplicate.getKey());
+            if (createLink(original, link)) {
+                saved += entry.getSize();
+            } else {
+                FileUtils.copyFile(original, link);
+            }
+            installed.record(entry.getPath(), entry.getSize(), entry.getHash());
+            notifyProgress(entry.getPath());
+        }
+        return saved;
+    }
+
+    private static boolean createLink(File original, File link) {
+        try {
+            Os.link(original.getAbsolutePath(), link.getAbsolutePath());
+            return true;
+        } catch (ErrnoException e) {
+            Log.w(TAG, "Hard link failed for " + link.getName() + ", trying symlink", e);
+        }
+        try {
+            Os.symlink(original.getAbsolutePath(), link.getAbsolutePath());
+            return true;
+        } catch (ErrnoException e) {
+            Log.w(TAG, "Symlink failed for " + link.getName() + ", copying", e);
+            return false;
+        }
+    }
+
+    /**
+     * Registra un archivo recién escrito, comprobándolo contra la lista del APK
+     */
+    private void recordInstalled(InstallManifest installed, InstallManifest expected, String path,
+                                 long size, String hash) throws IOException {
+        if (expected != null) {
+            InstallManifest.FileEntry wanted = expected.get(path);
+            if (wanted != null && wanted.getHash() != null
+                    && (wanted.getSize() != size || !wanted.getHash().equals(hash))) {
+                throw new IOException("El archivo " + path + " no coincide con el manifiesto del APK");
+            }
+        }
+        installed.record(path, size, hash);
+        notifyProgress(path);
+    }
+
+    /**
+     * Verifica la instalación: siempre la existencia y el tamaño de cada
+     * archivo, y los hashes si se pide y la última verificación completa es de
+     * hace más de una semana. Los archivos se leen sin tomar installLock; los
+     * dañados quedan pendientes para la próxima instalación. Puede leer todo
+     * el toolchain: no llamar desde el hilo principal.
+     * @param allowFullPass Si se permite la verificación completa de hashes
+     * @return cantidad de archivos dañados (0 si todo está bien o no está instalado)
+     */
+    public int verifyInstallation(boolean allowFullPass) {
+        InstallManifest installed;
+        long installStamp;
+        synchronized (installLock) {
+            if (!isCompilerInstalled()) {
+                return 0;
+            }
+            installStamp = getInstallStamp();
+            installed = InstallManifest.load(getCompilerDirectory());
+        }
+
+        long start = System.currentTimeMillis();
+        boolean full = allowFullPass && start - installed.getVerifiedAt() > VERIFY_INTERVAL_MS;
+        List<String> damaged = full ? installed.verifyHashes() : installed.checkSizes();
+        damaged.addAll(checkExecutables());
+        Log.d(TAG, (full ? "Full" : "Quick") + " toolchain verification: " + damaged.size()
+              + " damaged files in " + (System.currentTimeMillis() - start) + " ms");
+
+        synchronized (installLock) {
+            // Una instalación que terminó mientras se leía deja el resultado obsoleto
+            if (!isCompilerInstalled() || getInstallStamp() != installStamp) {
+                return 0;
+            }
+            try {
+                if (!damaged.isEmpty()) {
+                    Log.w(TAG, "Damaged toolchain files: " + damaged);
+                    installed.markDamaged(damaged);
+                    // Se conserva el descriptor en uso: la reparación se hace en el
+                    // próximo inicio, no mientras puede haber compilaciones en curso
+                    invalidateInstallState(false);
+                } else if (full) {
+                    installed.markVerified();
+                    invalidateInstallState(false);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error updating install manifest", e);
+            }
+        }
+        return damaged.size();
+    }
+
+    /**
+     * Programa la verificación completa de hashes si ya corresponde. No se
+     * inicia junto con la precarga ni con la primera compilación: espera un
+     * rato y solo se ejecuta si la primera compilación del proceso ya
+     * terminó; si no, queda para otro inicio.
+     */
+    public void scheduleFullVerification() {
+        if (System.currentTimeMillis() - getInstallState().getVerifiedAt() <= VERIFY_INTERVAL_MS) {
+            return;
+        }
+        VERIFY_EXECUTOR.schedule(() -> {
+            if (!ToolchainPrewarmer.isFirstCompileDone()) {
+                Log.d(TAG, "Full toolchain verification deferred to another launch");
+                return;
+            }
+            verifyInstallation(true);
+        }, FULL_VERIFY_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ejecutables que perdieron el permiso de ejecución o desaparecieron
+     * (incluidos los enlaces a nativeLibraryDir, que no están en el manifiesto).
+     * Sin inventario se da la instalación por dañada, para que se vuelva a escribir.
+     */
+    private List<String> checkExecutables() {
+        List<String> damaged = new ArrayList<>();
+        ToolchainInventory inventory = getInventory();
+        if (inventory == null) {
+            damaged.add(ToolchainInventory.INVENTORY_FILE);
+            return damaged;
+        }
+        File compilerDir = getCompilerDirectory();
+        for (String path : inventory.getExecutables()) {
+            if (!new File(compilerDir, path).canExecute()) {
+                damaged.add(path);
+            }
+        }
+        return damaged;
+    }
+
+    /**
+     * Escribe el inventario de la instalación a partir del manifiesto; si no
+     * se puede, la pantalla principal solo pierde la vista del árbol
+     */
+    private void writeInventory(File destDir, InstallManifest installed,
+                                Map<String, File> nativeExecutables) {
+        long start = System.currentTimeMillis();
+        try {
+            ToolchainInventory inventory = ToolchainInventory.build(destDir, 
+                installed.getInstallStamp(), installed.getFiles(), nativeExecutables);
+            inventory.save(destDir);
+            Log.d(TAG, "Wrote inventory (" + inventory.getFileCount() + " files) in " 
+                  + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing toolchain inventory", e);
+        }
+    }
+
+    /**
+     * Inventario del toolchain instalado (árbol resumido, tamaños, ejecutables)
+     * @return el inventario, o null si no está instalado o el inventario es de otra instalación
+     */
+    public ToolchainInventory getInventory() {
+        long stamp = getInstallStamp();
+        if (stamp == 0) {
+            return null;
+        }
+        ToolchainInventory inventory = ToolchainInventory.load(getCompilerDirectory());
+        return inventory != null && inventory.getInstallStamp() == stamp ? inventory : null;
+    }
+
+    /**
+     * Resumen de la última instalación (archivos, tamaño y MB/s), o null si
+     * en este proceso no se instaló el compilador
+     */
+    public String getInstallSummary() {
+        return installSummary;
+    }
+
+    /**
+     * Descriptor del toolchain instalado. Se carga del disco la primera vez
+     * (o se examina la instalación si no existe o no es válido) y luego se
+     * mantiene en memoria.
+     * @return el descriptor, o null si el compilador no está instalado o no se encontró clang
+     */
+    public ToolchainDescriptor getToolchain() {
+        synchronized (toolchainLock) {
+            if (cachedToolchain != null) {
+                return cachedToolchain;
+            }
+            if (!isCompilerInstalled()) {
+                return null;
+            }
+
+            File compilerDir = getCompilerDirectory();
+            cachedToolchain = ToolchainDescriptor.load(new File(compilerDir, TOOLCHAIN_FILE), 
+                compilerDir, getInstallStamp());
+            if (cachedToolchain == null) {
+                // Instalación anterior al descriptor, o descriptor dañado
+                cachedToolchain = probeToolchain(compilerDir);
+            }
+            return cachedToolchain;
+        }
+    }
+
+    /**
+     * Examina el toolchain y guarda el descriptor junto a él
+     */
+    private ToolchainDescriptor probeToolchain(File compilerDir) {
+        ToolchainDescriptor descriptor = ToolchainDescriptor.probe(compilerDir, getDeviceABI(), 
+            getInstallStamp(), getNativeLibraryDir());
+        if (descriptor != null) {
+            try {
+                descriptor.save(new File(compilerDir, TOOLCHAIN_FILE));
+            } catch (IOException e) {
+                Log.e(TAG, "Error saving toolchain descriptor", e);
+            }
+        }
+        return descriptor;
+    }
+
     /**
      * Obtiene la ABI del dispositivo
      */
@@ -104,84 +1021,348 @@ public class ClangCompilerManager {
     }
 
     /**
-     * Copia recursivamente una carpeta de assets al sistema de archivos
+     * Recorre el árbol de assets una sola vez. AssetManager.list se llama una
+     * vez por ruta: una lista vacía indica que la ruta es un archivo.
+     * @param relativePath Ruta relativa al directorio del compilador ("" para la raíz)
      */
-    private void copyAssetFolder(AssetManager assets, String assetPath, File destDir) throws IOException {
-        String[] files = assets.list(assetPath);
-        
-        if (files == null || files.length == 0) {
-            // Es un archivo, no un directorio
-            copyAssetFile(assets, assetPath, destDir);
+    private void listAssetTree(AssetManager assets, String assetPath, String relativePath,
+                               List<String> directories, List<AssetEntry> files) throws IOException {
+        String[] children = assets.list(assetPath);
+        if (children == null || children.length == 0) {
+            files.add(new AssetEntry(assetPath, relativePath));
             return;
         }
 
-        // Es un directorio
-        if (!destDir.exists() && !destDir.mkdirs()) {
-            throw new IOException("Failed to create directory: " + destDir.getAbsolutePath());
+        directories.add(relativePath);
+        for (String child : children) {
+            listAssetTree(assets, assetPath + "/" + child,
+                relativePath.isEmpty() ? child : relativePath + "/" + child, directories, files);
         }
+    }
 
-        // Copiar cada elemento del directorio
-        for (String filename : files) {
-            String assetFilePath = assetPath + "/" + filename;
-            File destFile = new File(destDir, filename);
-            
-            // Verificar si es un subdirectorio
-            String[] subFiles = assets.list(assetFilePath);
-            if (subFiles != null && subFiles.length > 0) {
-                // Es un subdirectorio
-                copyAssetFolder(assets, assetFilePath, destFile);
+    /**
+     * Orden de copiado: primero los binarios y las librerías de clang (los
+     * archivos más grandes, que conviene empezar antes para repartir bien el
+     * trabajo), después los headers y al final el resto del sysroot
+     */
+    private static int getCopyPriority(String relativePath) {
+        if (relativePath.startsWith(BIN_DIR + "/")) {
+            return 0;
+        }
+        if (relativePath.startsWith("lib/clang/")) {
+            return 2;
+        }
+        if (relativePath.startsWith("lib/")) {
+            return 1;
+        }
+        if (relativePath.startsWith("sysroot/usr/include/")) {
+            return 2;
+        }
+        return 3;
+    }
+
+    /**
+     * Copia el árbol suelto de assets: lo enumera una sola vez (o toma la
+     * lista del APK), crea todos los directorios y copia en paralelo, por
+     * orden de prioridad, los archivos que acepta el filtro. Los que el APK
+     * guarda sin comprimir se copian con transferTo; el resto, por stream.
+     * Los ejecutables de bin/ (clang incluido) no tienen extensión y van
+     * comprimidos, así que siempre toman el camino por stream.
+     * @return bytes copiados
+     */
+    private long copyAssetTree(AssetManager assets, String assetPath, File destDir, 
+                               InstallManifest expected, ToolchainArchive.EntryFilter filter,
+                               InstallManifest installed) throws IOException {
+        long start = System.currentTimeMillis();
+        List<String> directories = new ArrayList<>();
+        List<AssetEntry> files = new ArrayList<>();
+        if (expected != null) {
+            Set<String> parents = new HashSet<>();
+            for (InstallManifest.FileEntry entry : expected.getFiles()) {
+                files.add(new AssetEntry(assetPath + "/" + entry.getPath(), entry.getPath()));
+                String parent = new File(entry.getPath()).getParent();
+                if (parent != null && parents.add(parent)) {
+                    directories.add(parent);
+                }
+            }
+        } else {
+            listAssetTree(assets, assetPath, "", directories, files);
+        }
+        for (String directory : directories) {
+            File dir = new File(destDir, directory);
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Failed to create directory: " + dir.getAbsolutePath());
+            }
+        }
+        Log.d(TAG, "Listed " + files.size() + " asset files in " 
+              + (System.currentTimeMillis() - start) + " ms");
+
+        List<AssetEntry> pending = new ArrayList<>();
+        for (AssetEntry entry : files) {
+            if (filter.shouldExtract(entry.relativePath)) {
+                pending.add(entry);
+            }
+        }
+        pending.sort((a, b) -> Integer.compare(getCopyPriority(a.relativePath),
+            getCopyPriority(b.relativePath)));
+        if (expected != null) {
+            addPendingTotals(expected, filter);
+        } else {
+            // Del árbol suelto solo se conoce la cantidad de archivos, no su tamaño
+            addProgressTotals(pending.size(), -1);
+        }
+        // Tiempo acumulado por método (suma de los hilos), para comparar ambos caminos
+        AtomicLong[] directStats = { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+        AtomicLong[] streamStats = { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+        AtomicLong unverified = new AtomicLong();
+        long total = runInParallel(pending, (entry, buffer) -> {
+            File target = new File(destDir, entry.relativePath);
+            // Un archivo nuevo: si el anterior era un enlace, el original no se toca
+            target.delete();
+
+            long fileStart = System.currentTimeMillis();
+            long copied;
+            String hash;
+            AssetFileDescriptor fd = openUncompressed(assets, entry.assetPath);
+            boolean direct = fd != null;
+            if (direct) {
+                copied = FileUtils.writeAsset(fd, target, copiedBytes);
+                InstallManifest.FileEntry wanted = expected != null
+                    ? expected.get(entry.relativePath) : null;
+                if (wanted != null && wanted.getHash() != null) {
+                    // El contenido no pasa por Java y leerlo de nuevo anularía la
+                    // ventaja: se comprueba el tamaño al registrarlo y el hash lo
+                    // compara la verificación completa en segundo plano
+                    hash = copied == wanted.getSize() ? wanted.getHash() : null;
+                    unverified.incrementAndGet();
+                } else {
+                    // Sin lista del APK no hay con qué comparar después (cuenta en el tiempo)
+                    hash = HashUtils.sha256Hex(target);
+                }
             } else {
-                // Es un archivo
-                copyAssetFile(assets, assetFilePath, destFile);
+                MessageDigest digest = HashUtils.newDigest();
+                try (InputStream in = assets.open(entry.assetPath)) {
+                    copied = FileUtils.writeStream(in, target, buffer, digest, copiedBytes);
+                }
+                hash = HashUtils.toHex(digest.digest());
             }
-            
-            // Notificar progreso
-            if (callback != null) {
-                callback.onCopyProgress(assetFilePath);
+            long fileMs = System.currentTimeMillis() - fileStart;
+            AtomicLong[] stats = direct ? directStats : streamStats;
+            stats[0].incrementAndGet();
+            stats[1].addAndGet(copied);
+            stats[2].addAndGet(fileMs);
+            if (copied >= TIMING_LOG_MIN_SIZE) {
+                Log.d(TAG, "Copied " + entry.relativePath + " via " 
+                      + (direct ? "transferTo" : "stream") + ": " + formatRate(copied, fileMs));
             }
+
+            recordInstalled(installed, expected, entry.relativePath, copied, hash);
+            return copied;
+        });
+        Log.d(TAG, "transferTo: " + directStats[0].get() + " files, " 
+              + formatRate(directStats[1].get(), directStats[2].get()) + "; stream: " 
+              + streamStats[0].get() + " files, " 
+              + formatRate(streamStats[1].get(), streamStats[2].get()));
+        if (unverified.get() > 0) {
+            // Que la próxima verificación completa no espere el intervalo
+            installed.clearVerified();
         }
+        return total;
     }
 
     /**
-     * Copia un archivo individual de assets al sistema de archivos
+     * Abre un asset como descriptor de archivo, lo que solo es posible si el
+     * APK lo guarda sin comprimir (noCompress). Se decide por la extensión,
+     * sin intentar openFd con los headers, que están comprimidos.
+     * @return el descriptor, o null si el asset está comprimido
      */
-    private void copyAssetFile(AssetManager assets, String assetPath, File destFile) throws IOException {
-        InputStream in = null;
-        OutputStream out = null;
-        
+    private static AssetFileDescriptor openUncompressed(AssetManager assets, String assetPath) {
+        if (!isUncompressedAsset(assetPath)) {
+            return null;
+        }
         try {
-            in = assets.open(assetPath);
-            
-            // Crear directorio padre si no existe
-            File parentDir = destFile.getParentFile();
-            if (parentDir != null && !parentDir.exists()) {
-                parentDir.mkdirs();
-            }
-            
-            out = new FileOutputStream(destFile);
-            
-            byte[] buffer = new byte[8192];
-            int read;
-            while ((read = in.read(buffer)) != -1) {
-                out.write(buffer, 0, read);
+            return assets.openFd(assetPath);
+        } catch (IOException e) {
+            // "probably compressed": se copia por stream
+            return null;
+        }
+    }
+
+    private static boolean isUncompressedAsset(String assetPath) {
+        for (String extension : UNCOMPRESSED_EXTENSIONS) {
+            if (assetPath.endsWith(extension)) {
+                return true;
             }
-            
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    Log.e(TAG, "Error closing input stream", e);
+        }
+        return false;
+    }
+
+    private static String formatRate(long bytes, long millis) {
+        double megabytes = bytes / (1024.0 * 1024.0);
+        return String.format(Locale.US, "%.1f MB in %d ms (%.1f MB/s)", megabytes, millis,
+            megabytes / (Math.max(1, millis) / 1000.0));
+    }
+
+    /**
+     * Trabajo de instalación sobre un elemento (archivo o parte del archivo
+     * empaquetado), con el buffer del hilo que lo ejecuta
+     */
+    private interface InstallTask<T> {
+        long run(T item, byte[] buffer) throws IOException;
+    }
+
+    /**
+     * Procesa los elementos con un grupo acotado de hilos. Cada hilo toma el
+     * siguiente elemento de la lista (que ya viene en orden de prioridad) y
+     * usa su propio buffer. Al primer error los demás hilos se detienen.
+     * @return suma de los bytes que devolvieron las tareas
+     */
+    private <T> long runInParallel(List<T> items, InstallTask<T> task) throws IOException {
+        int threads = Math.max(1, Math.min(Math.min(MAX_COPY_THREADS, items.size()),
+            Runtime.getRuntime().availableProcessors()));
+        AtomicInteger nextItem = new AtomicInteger();
+        AtomicLong totalBytes = new AtomicLong();
+        AtomicBoolean failed = new AtomicBoolean();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, 
+            runnable -> new Thread(runnable, "toolchain-install"));
+        List<Future<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(pool.submit(() -> {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int index;
+                while (!failed.get() && (index = nextItem.getAndIncrement()) < items.size()) {
+                    try {
+                        totalBytes.addAndGet(task.run(items.get(index), buffer));
+                    } catch (IOException e) {
+                        failed.set(true);
+                        throw e;
+                    }
                 }
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<Void> worker : workers) {
+                worker.get();
             }
-            if (out != null) {
-                try {
-                    out.flush();
-                    out.close();
-                } catch (IOException e) {
-                    Log.e(TAG, "Error closing output stream", e);
-                }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
             }
+            throw new IOException("Error copiando el compilador", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.set(true);
+            throw new IOException("Instalación interrumpida", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return totalBytes.get();
+    }
+
+    /**
+     * Cuenta un archivo instalado. No llama al callback: el progreso se
+     * publica a intervalos fijos desde startProgressPublisher
+     */
+    private void notifyProgress(String path) {
+        synchronized (this) {
+            copiedFiles++;
+            lastCopiedFile = path;
+        }
+    }
+
+    /**
+     * Pone a cero los contadores antes de una copia
+     */
+    private synchronized void resetProgress() {
+        copiedFiles = 0;
+        copiedBytes.set(0);
+        lastCopiedFile = null;
+        progressTotalFiles = -1;
+        progressTotalBytes = 0;
+        progressTotalBytesKnown = true;
+        progressStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Suma al total de la copia en curso
+     * @param bytes Bytes a escribir, o -1 si no se conocen
+     */
+    private synchronized void addProgressTotals(int files, long bytes) {
+        progressTotalFiles = Math.max(0, progressTotalFiles) + files;
+        if (bytes < 0) {
+            progressTotalBytesKnown = false;
+        } else {
+            progressTotalBytes += bytes;
+        }
+    }
+
+    /**
+     * Suma al total los archivos de la lista del APK que acepta el filtro
+     */
+    private void addPendingTotals(InstallManifest expected, ToolchainArchive.EntryFilter filter) {
+        int files = 0;
+        long bytes = 0;
+        for (InstallManifest.FileEntry entry : expected.getFiles()) {
+            if (filter.shouldExtract(entry.getPath())) {
+                files++;
+                bytes += entry.getSize();
+            }
+        }
+        addProgressTotals(files, bytes);
+    }
+
+    /**
+     * Progreso de la copia en curso (o de la última): archivos y bytes
+     * escritos, totales, velocidad y tiempo restante
+     */
+    public synchronized InstallProgress getProgress() {
+        boolean totalsKnown = progressTotalFiles >= 0;
+        return new InstallProgress(copiedFiles, progressTotalFiles, copiedBytes.get(),
+            totalsKnown && progressTotalBytesKnown ? progressTotalBytes : -1,
+            System.currentTimeMillis() - progressStart, lastCopiedFile);
+    }
+
+    /**
+     * Publica el progreso en el callback cada PROGRESS_INTERVAL_MS, desde un
+     * único hilo, de modo que el callback no tiene que ser seguro entre hilos
+     * ni recibe una llamada por archivo
+     * @return el hilo que publica, o null si no hay callback
+     */
+    private ScheduledExecutorService startProgressPublisher() {
+        if (callback == null) {
+            return null;
+        }
+        ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "toolchain-progress"));
+        publisher.scheduleAtFixedRate(this::publishProgress, PROGRESS_INTERVAL_MS,
+            PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        return publisher;
+    }
+
+    /**
+     * Detiene la publicación periódica y publica el estado final
+     */
+    private void stopProgressPublisher(ScheduledExecutorService publisher) {
+        if (publisher == null) {
+            return;
+        }
+        publisher.shutdown();
+        try {
+            publisher.awaitTermination(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        publishProgress();
+    }
+
+    private void publishProgress() {
+        CopyCallback target = callback;
+        if (target != null) {
+            target.onCopyProgress(getProgress());
         }
     }
 
@@ -202,7 +1383,8 @@ public class ClangCompilerManager {
         }
 
         for (File binary : binaries) {
-            if (binary.isFile()) {
+            // Los de nativeLibraryDir ya son ejecutables (y no se pueden modificar)
+            if (binary.isFile() && !binary.canExecute()) {
                 boolean success = binary.setExecutable(true, false);
                 if (success) {
                     Log.d(TAG, "Set executable permission for: " + binary.getName());
@@ -224,23 +1406,12 @@ public class ClangCompilerManager {
      * Elimina el compilador del espacio privado (útil para reinstalación o limpieza)
      */
     public boolean uninstallCompiler() {
-        File compilerDir = new File(context.getFilesDir(), COMPILER_DIR);
-        return deleteRecursive(compilerDir);
-    }
-
-    /**
-     * Elimina recursivamente un directorio y su contenido
-     */
-    private boolean deleteRecursive(File fileOrDirectory) {
-        if (fileOrDirectory.isDirectory()) {
-            File[] children = fileOrDirectory.listFiles();
-            if (children != null) {
-                for (File child : children) {
-                    deleteRecursive(child);
-                }
-            }
+        synchronized (installLock) {
+            File compilerDir = new File(context.getFilesDir(), COMPILER_DIR);
+            boolean deleted = FileUtils.deleteRecursive(compilerDir);
+            invalidateInstallState(true);
+            return deleted;
         }
-        return fileOrDirectory.delete();
     }
 
     /**
@@ -253,10 +1424,11 @@ public class ClangCompilerManager {
         void onCopyStarted();
 
         /**
-         * Se llama durante el proceso de copiado con el archivo actual
-         * @param currentFile Ruta del archivo que se está copiando
+         * Se llama durante el proceso de copiado unas pocas veces por segundo
+         * (y una vez al terminar), desde un hilo de fondo y nunca desde dos a la vez
+         * @param progress Archivos y bytes copiados, velocidad y tiempo restante
          */
-        void onCopyProgress(String currentFile);
+        void onCopyProgress(InstallProgress progress);
 
         /**
          * Se llama cuando termina el proceso de copiado
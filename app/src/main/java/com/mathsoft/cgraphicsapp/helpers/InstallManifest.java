@@ -0,0 +1,475 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Manifiesto de la instalación del toolchain: ruta, tamaño y SHA-256 de cada
+ * archivo instalado, más el estado de la instalación.
+ *
+ * Se guarda en el directorio del compilador como texto: una primera línea
+ * JSON con el estado y después una línea "tamaño\thash\truta" por archivo.
+ * Mientras se instala, cada archivo terminado se agrega a un diario con el
+ * mismo formato de línea, de modo que si el proceso muere a mitad de la copia
+ * la siguiente instalación retoma desde donde quedó. Al terminar, el diario
+ * se incorpora al manifiesto.
+ *
+ * Las partes del sysroot para otras arquitecturas y niveles de API pueden
+ * quedar sin extraer (ver ClangCompilerManager); la cabecera registra qué
+ * arquitecturas (headers y librerías comunes) y qué niveles de API de cada
+ * arquitectura tienen archivos pendientes.
+ *
+ * El APK puede traer la lista esperada en assets/&lt;abi&gt;/clang.files.json
+ * ({"format": 1, "files": [{"path", "size", "sha256"}]}); con ella una
+ * actualización de la app reescribe solo los archivos que cambiaron.
+ */
+public class InstallManifest {
+
+    private static final String TAG = "InstallManifest";
+    static final String MANIFEST_FILE = ".install_manifest";
+    static final String JOURNAL_FILE = ".install_journal";
+    private static final String PACKAGED_FILE = "clang.files.json";
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Un archivo del toolchain
+     */
+    public static class FileEntry {
+        final String path;
+        final long size;
+        final String hash;
+
+        FileEntry(String path, long size, String hash) {
+            this.path = path;
+            this.size = size;
+            this.hash = hash;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * SHA-256 en hexadecimal, o null si no se conoce
+         */
+        public String getHash() {
+            return hash;
+        }
+
+        boolean sameContentAs(FileEntry other) {
+            return other != null && size == other.size && hash != null && hash.equals(other.hash);
+        }
+    }
+
+    private final File compilerDir;
+    private final Map<String, FileEntry> files = new LinkedHashMap<>();
+    private boolean complete;
+    private long packageVersion;
+    private long installStamp;
+    private long verifiedAt;
+    private final Set<String> deferredArchs = new TreeSet<>();
+    private final Set<String> deferredApiLevels = new TreeSet<>();
+    private OutputStream journal;
+
+    private InstallManifest(File compilerDir) {
+        this.compilerDir = compilerDir;
+    }
+
+    /**
+     * Lee el manifiesto instalado junto con el diario de una instalación
+     * interrumpida
+     * @return el manifiesto; vacío e incompleto si no hay instalación
+     */
+    public static InstallManifest load(File compilerDir) {
+        InstallManifest manifest = new InstallManifest(compilerDir);
+        File manifestFile = new File(compilerDir, MANIFEST_FILE);
+        if (manifestFile.exists()) {
+            try (BufferedReader reader = openReader(manifestFile)) {
+                String header = reader.readLine();
+                if (header != null && manifest.readHeader(header)) {
+                    manifest.readEntries(reader);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Manifiesto de instalación ilegible", e);
+                manifest.files.clear();
+                manifest.complete = false;
+            }
+        }
+
+        File journalFile = new File(compilerDir, JOURNAL_FILE);
+        if (journalFile.exists()) {
+            // Los archivos del diario se escribieron después que el manifiesto
+            try (BufferedReader reader = openReader(journalFile)) {
+                int before = manifest.files.size();
+                manifest.readEntries(reader);
+                manifest.complete = false;
+                Log.d(TAG, "Install journal found, " + (manifest.files.size() - before)
+                      + " new files");
+            } catch (IOException e) {
+                Log.w(TAG, "Diario de instalación ilegible", e);
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Solo el estado (primera línea), sin leer la lista de archivos
+     */
+    public static InstallManifest loadHeader(File compilerDir) {
+        InstallManifest manifest = new InstallManifest(compilerDir);
+        File manifestFile = new File(compilerDir, MANIFEST_FILE);
+        if (manifestFile.exists() && !new File(compilerDir, JOURNAL_FILE).exists()) {
+            try (BufferedReader reader = openReader(manifestFile)) {
+                String header = reader.readLine();
+                if (header != null) {
+                    manifest.readHeader(header);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Manifiesto de instalación ilegible", e);
+                manifest.complete = false;
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Lista de archivos que trae el APK
+     * @return la lista, o null si el APK no la incluye
+     */
+    public static InstallManifest loadPackaged(AssetManager assets, String abiDir) {
+        String text;
+        try (InputStream in = assets.open(abiDir + "/" + PACKAGED_FILE)) {
+            text = FileUtils.readText(in);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read packaged file list", e);
+            return null;
+        }
+
+        try {
+            JSONObject json = new JSONObject(text);
+            if (json.optInt("format") != FORMAT_VERSION) {
+                return null;
+            }
+            InstallManifest manifest = new InstallManifest(null);
+            JSONArray array = json.getJSONArray("files");
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject file = array.getJSONObject(i);
+                manifest.put(new FileEntry(file.getString("path"), file.getLong("size"),
+                    file.optString("sha256", null)));
+            }
+            manifest.complete = true;
+            return manifest;
+        } catch (JSONException e) {
+            Log.w(TAG, "Lista de archivos del APK dañada", e);
+            return null;
+        }
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Versión del APK (fecha de actualización del paquete) que instaló el toolchain
+     */
+    public long getPackageVersion() {
+        return packageVersion;
+    }
+
+    /**
+     * Identificador de la instalación; cambia solo cuando cambia algún archivo
+     */
+    public long getInstallStamp() {
+        return installStamp;
+    }
+
+    /**
+     * Fecha de la última verificación completa de hashes
+     */
+    public long getVerifiedAt() {
+        return verifiedAt;
+    }
+
+    /**
+     * Arquitecturas del sysroot con archivos que no se extrajeron al
+     * instalar y se extraen la primera vez que hacen falta
+     */
+    public synchronized Set<String> getDeferredArchs() {
+        return new TreeSet<>(deferredArchs);
+    }
+
+    public synchronized void setDeferredArchs(Set<String> archs) {
+        deferredArchs.clear();
+        deferredArchs.addAll(archs);
+    }
+
+    /**
+     * Niveles de API ("&lt;arch&gt;/&lt;api&gt;") cuyas librerías no se
+     * extrajeron al instalar
+     */
+    public synchronized Set<String> getDeferredApiLevels() {
+        return new TreeSet<>(deferredApiLevels);
+    }
+
+    public synchronized void setDeferredApiLevels(Set<String> apiLevels) {
+        deferredApiLevels.clear();
+        deferredApiLevels.addAll(apiLevels);
+    }
+
+    public synchronized FileEntry get(String path) {
+        return files.get(path);
+    }
+
+    public synchronized Collection<FileEntry> getFiles() {
+        return new ArrayList<>(files.values());
+    }
+
+    public synchronized int getFileCount() {
+        return files.size();
+    }
+
+    /**
+     * Comprueba que un archivo instalado siga coincidiendo con lo registrado
+     * (solo existencia y tamaño, sin leerlo)
+     */
+    public boolean isPresent(FileEntry entry) {
+        File file = new File(compilerDir, entry.path);
+        return file.isFile() && file.length() == entry.size;
+    }
+
+    public synchronized void remove(String path) {
+        files.remove(path);
+    }
+
+    /**
+     * Empieza una instalación: guarda el manifiesto actual como incompleto,
+     * con la nueva versión del APK, y abre un diario vacío
+     */
+    public synchronized void beginInstall(long packageVersion) throws IOException {
+        this.packageVersion = packageVersion;
+        this.complete = false;
+        save();
+        journal = new FileOutputStream(new File(compilerDir, JOURNAL_FILE), false);
+    }
+
+    /**
+     * Registra un archivo terminado. Se escribe en el diario enseguida para
+     * que sobreviva si el proceso muere.
+     */
+    public synchronized void record(String path, long size, String hash) throws IOException {
+        FileEntry entry = new FileEntry(path, size, hash);
+        put(entry);
+        if (journal != null) {
+            journal.write(formatEntry(entry).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Termina una instalación: incorpora el diario y marca la instalación completa
+     * @param changed Si se escribió o borró algún archivo (cambia el identificador)
+     */
+    public synchronized void finishInstall(boolean changed) throws IOException {
+        closeJournal();
+        if (changed || installStamp == 0) {
+            installStamp = System.currentTimeMillis();
+        }
+        complete = true;
+        save();
+        new File(compilerDir, JOURNAL_FILE).delete();
+    }
+
+    /**
+     * Cierra el diario de una instalación fallida; lo ya registrado se
+     * reutiliza en el próximo intento
+     */
+    public synchronized void abortInstall() {
+        closeJournal();
+    }
+
+    /**
+     * Marca como faltantes los archivos dañados, para que la próxima
+     * instalación los vuelva a copiar
+     */
+    public synchronized void markDamaged(List<String> paths) throws IOException {
+        for (String path : paths) {
+            files.remove(path);
+        }
+        complete = false;
+        save();
+    }
+
+    /**
+     * Registra una verificación completa sin problemas
+     */
+    public synchronized void markVerified() throws IOException {
+        verifiedAt = System.currentTimeMillis();
+        save();
+    }
+
+    /**
+     * Pide una verificación completa en el próximo inicio: hay archivos
+     * registrados con el hash del APK sin haberlos leído. Se guarda con la
+     * siguiente escritura de la cabecera.
+     */
+    public synchronized void clearVerified() {
+        verifiedAt = 0;
+    }
+
+    /**
+     * Comprueba existencia y tamaño de todos los archivos (rápido, sin leerlos)
+     * @return rutas de los archivos que faltan o cambiaron de tamaño
+     */
+    public List<String> checkSizes() {
+        List<String> damaged = new ArrayList<>();
+        for (FileEntry entry : getFiles()) {
+            if (!isPresent(entry)) {
+                damaged.add(entry.path);
+            }
+        }
+        return damaged;
+    }
+
+    /**
+     * Comprueba el SHA-256 de todos los archivos (lee el toolchain completo)
+     * @return rutas de los archivos dañados
+     */
+    public List<String> verifyHashes() {
+        List<String> damaged = new ArrayList<>();
+        for (FileEntry entry : getFiles()) {
+            if (!isPresent(entry)) {
+                damaged.add(entry.path);
+                continue;
+            }
+            if (entry.hash == null) {
+                continue;
+            }
+            try {
+                if (!entry.hash.equals(HashUtils.sha256Hex(new File(compilerDir, entry.path)))) {
+                    damaged.add(entry.path);
+                }
+            } catch (IOException e) {
+                damaged.add(entry.path);
+            }
+        }
+        return damaged;
+    }
+
+    private void put(FileEntry entry) {
+        files.put(entry.path, entry);
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing install journal", e);
+            }
+            journal = null;
+        }
+    }
+
+    private void save() throws IOException {
+        try {
+            JSONObject header = new JSONObject();
+            header.put("format", FORMAT_VERSION);
+            header.put("complete", complete);
+            header.put("packageVersion", packageVersion);
+            header.put("installStamp", installStamp);
+            header.put("verifiedAt", verifiedAt);
+            header.put("files", files.size());
+            header.put("deferred", new JSONArray(deferredArchs));
+            header.put("deferredApi", new JSONArray(deferredApiLevels));
+
+            StringBuilder content = new StringBuilder(header.toString()).append('\n');
+            for (FileEntry entry : files.values()) {
+                content.append(formatEntry(entry));
+            }
+            FileUtils.writeTextAtomic(new File(compilerDir, MANIFEST_FILE), content.toString());
+        } catch (JSONException e) {
+            throw new IOException("Error serializando el manifiesto", e);
+        }
+    }
+
+    private boolean readHeader(String line) {
+        try {
+            JSONObject header = new JSONObject(line);
+            if (header.optInt("format") != FORMAT_VERSION) {
+                return false;
+            }
+            complete = header.optBoolean("complete");
+            packageVersion = header.optLong("packageVersion");
+            installStamp = header.optLong("installStamp");
+            verifiedAt = header.optLong("verifiedAt");
+            JSONArray deferred = header.optJSONArray("deferred");
+            if (deferred != null) {
+                for (int i = 0; i < deferred.length(); i++) {
+                    deferredArchs.add(deferred.optString(i));
+                }
+            }
+            JSONArray deferredApi = header.optJSONArray("deferredApi");
+            if (deferredApi != null) {
+                for (int i = 0; i < deferredApi.length(); i++) {
+                    deferredApiLevels.add(deferredApi.optString(i));
+                }
+            }
+            return true;
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    private void readEntries(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            // Una línea cortada por la muerte del proceso no tiene los tres campos
+            String[] fields = line.split("\t", 3);
+            if (fields.length != 3) {
+                continue;
+            }
+            try {
+                put(new FileEntry(fields[2], Long.parseLong(fields[0]),
+                    fields[1].isEmpty() ? null : fields[1]));
+            } catch (NumberFormatException e) {
+                // Línea incompleta
+            }
+        }
+    }
+
+    private static String formatEntry(FileEntry entry) {
+        return entry.size + "\t" + (entry.hash != null ? entry.hash : "") + "\t" + entry.path + "\n";
+    }
+
+    private static BufferedReader openReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file),
+            StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,126 @@
+package com.mathsoft.cgraphicsapp;
+
+import java.util.Locale;
+
+/**
+ * Estado de una instalación del toolchain en un momento dado: archivos y
+ * bytes escritos, totales (si se conocen), velocidad y tiempo restante.
+ *
+ * Los hilos de copiado solo actualizan contadores; ClangCompilerManager
+ * toma una instantánea a intervalos fijos y la entrega al callback, de modo
+ * que la interfaz recibe unas pocas actualizaciones por segundo sin importar
+ * cuántos archivos se copien.
+ */
+public class InstallProgress {
+
+    private final int filesDone;
+    private final int totalFiles;
+    private final long bytesDone;
+    private final long totalBytes;
+    private final long elapsedMs;
+    private final String currentFile;
+
+    InstallProgress(int filesDone, int totalFiles, long bytesDone, long totalBytes,
+                    long elapsedMs, String currentFile) {
+        this.filesDone = filesDone;
+        this.totalFiles = totalFiles;
+        this.bytesDone = bytesDone;
+        this.totalBytes = totalBytes;
+        this.elapsedMs = elapsedMs;
+        this.currentFile = currentFile;
+    }
+
+    public int getFilesDone() {
+        return filesDone;
+    }
+
+    /**
+     * Total de archivos a escribir, o -1 si aún no se conoce
+     */
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    public long getBytesDone() {
+        return bytesDone;
+    }
+
+    /**
+     * Total de bytes a escribir, o -1 si no se conoce (árbol suelto sin lista del APK)
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    /**
+     * Último archivo terminado, o null si todavía no terminó ninguno
+     */
+    public String getCurrentFile() {
+        return currentFile;
+    }
+
+    /**
+     * Velocidad media desde el inicio, en bytes por segundo
+     */
+    public double getBytesPerSecond() {
+        return elapsedMs > 0 ? bytesDone * 1000.0 / elapsedMs : 0;
+    }
+
+    /**
+     * Fracción completada (0 a 1) por bytes o, si no se conocen, por archivos;
+     * -1 si no hay totales
+     */
+    public double getFraction() {
+        if (totalBytes > 0) {
+            return Math.min(1.0, (double) bytesDone / totalBytes);
+        }
+        if (totalFiles > 0) {
+            return Math.min(1.0, (double) filesDone / totalFiles);
+        }
+        return -1;
+    }
+
+    /**
+     * Tiempo restante estimado en milisegundos, o -1 si no se puede estimar
+     */
+    public long getEtaMs() {
+        double fraction = getFraction();
+        if (fraction <= 0 || elapsedMs <= 0) {
+            return -1;
+        }
+        return (long) (elapsedMs * (1 - fraction) / fraction);
+    }
+
+    /**
+     * Texto para la pantalla de instalación
+     */
+    public String format() {
+        StringBuilder text = new StringBuilder();
+        double fraction = getFraction();
+        if (fraction >= 0) {
+            text.append(String.format(Locale.US, "%.0f%% · ", fraction * 100));
+        }
+        text.append(filesDone);
+        if (totalFiles >= 0) {
+            text.append("/").append(totalFiles);
+        }
+        text.append(" archivos · ").append(formatMegabytes(bytesDone));
+        if (totalBytes >= 0) {
+            text.append("/").append(formatMegabytes(totalBytes));
+        }
+        text.append(" MB · ").append(formatMegabytes((long) getBytesPerSecond())).append(" MB/s");
+        long eta = getEtaMs();
+        if (eta >= 0) {
+            text.append(" · quedan ").append((eta + 999) / 1000).append(" s");
+        }
+        return text.toString();
+    }
+
+    private static String formatMegabytes(long bytes) {
+        return String.format(Locale.US, "%.1f", bytes / (1024.0 * 1024.0));
+    }
+}
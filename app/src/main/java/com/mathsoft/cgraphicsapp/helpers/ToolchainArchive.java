@@ -0,0 +1,237 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Toolchain empaquetado como archivos zip dentro de assets/&lt;abi&gt;/.
+ *
+ * En lugar del árbol suelto de assets (miles de entradas que AssetManager
+ * tiene que listar y abrir de a una), el compilador se empaqueta en unas
+ * pocas partes zip descritas por un manifiesto:
+ *
+ * <pre>
+ * assets/&lt;abi&gt;/clang.archive.json
+ * {
+ *   "format": 1,
+ *   "parts": [
+ *     { "name": "clang-bin.zip", "files": 12, "bytes": 123456789 },
+ *     { "name": "clang-sysroot.zip", "files": 4000, "bytes": 98765432 }
+ *   ]
+ * }
+ * </pre>
+ *
+ * Cada parte se lee de principio a fin en una sola pasada; las partes son
+ * independientes, así que se descomprimen en paralelo (una por hilo). Las
+ * rutas de las entradas son relativas al directorio del compilador, y las
+ * partes se listan en el orden en que conviene empezar a extraerlas.
+ * Los .zip se guardan sin recomprimir en el APK (están en la lista noCompress
+ * por defecto de aapt).
+ */
+public class ToolchainArchive {
+
+    private static final String TAG = "ToolchainArchive";
+    private static final String MANIFEST_NAME = "clang.archive.json";
+    private static final int FORMAT_VERSION = 1;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Una parte del toolchain (un zip en assets)
+     */
+    public static class Part {
+        final String assetPath;
+        final int fileCount;
+        final long bytes;
+
+        Part(String assetPath, int fileCount, long bytes) {
+            this.assetPath = assetPath;
+            this.fileCount = fileCount;
+            this.bytes = bytes;
+        }
+
+        public String getAssetPath() {
+            return assetPath;
+        }
+    }
+
+    /**
+     * Decide qué archivos se escriben (se llama desde el hilo que extrae)
+     */
+    public interface EntryFilter {
+        /**
+         * @param path Ruta relativa al directorio del compilador
+         */
+        boolean shouldExtract(String path);
+    }
+
+    /**
+     * Recibe cada archivo extraído, desde el hilo que lo extrajo
+     */
+    public interface EntryListener {
+        /**
+         * @param path Ruta relativa al directorio del compilador
+         * @param size Bytes escritos
+         * @param sha256 Hash del contenido en hexadecimal
+         */
+        void onEntryExtracted(String path, long size, String sha256) throws IOException;
+    }
+
+    private final List<Part> parts;
+    private final int fileCount;
+    private final long totalBytes;
+
+    private ToolchainArchive(List<Part> parts) {
+        this.parts = parts;
+        int files = 0;
+        long bytes = 0;
+        for (Part part : parts) {
+            files += part.fileCount;
+            bytes += part.bytes;
+        }
+        this.fileCount = files;
+        this.totalBytes = bytes;
+    }
+
+    /**
+     * Lee el manifiesto del toolchain empaquetado para una ABI
+     * @param abiDir Directorio de assets de la ABI
+     * @return el archivo, o null si el APK trae el árbol suelto (o el manifiesto no es válido)
+     */
+    public static ToolchainArchive open(AssetManager assets, String abiDir) {
+        String text;
+        try (InputStream in = assets.open(abiDir + "/" + MANIFEST_NAME)) {
+            text = FileUtils.readText(in);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read toolchain archive manifest", e);
+            return null;
+        }
+
+        try {
+            JSONObject json = new JSONObject(text);
+            if (json.optInt("format") != FORMAT_VERSION) {
+                Log.w(TAG, "Unsupported archive manifest format: " + json.optInt("format"));
+                return null;
+            }
+            JSONArray array = json.getJSONArray("parts");
+            List<Part> parts = new ArrayList<>();
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject part = array.getJSONObject(i);
+                parts.add(new Part(abiDir + "/" + part.getString("name"),
+                    part.optInt("files"), part.optLong("bytes")));
+            }
+            return parts.isEmpty() ? null : new ToolchainArchive(parts);
+        } catch (JSONException e) {
+            Log.w(TAG, "Manifiesto del toolchain dañado", e);
+            return null;
+        }
+    }
+
+    /**
+     * Partes en el orden en que conviene extraerlas
+     */
+    public List<Part> getParts() {
+        return Collections.unmodifiableList(parts);
+    }
+
+    /**
+     * Total de archivos según el manifiesto
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * Total de bytes sin comprimir según el manifiesto
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Extrae una parte en una sola pasada, descomprimiendo mientras lee
+     * @param buffer Buffer del hilo que extrae
+     * @param filter Archivos a escribir; el resto (ya instalados, o que se
+     *               extraen bajo demanda) se descarta
+     * @param progress Contador de bytes escritos para el progreso de la instalación, o null
+     * @return bytes escritos
+     */
+    public static long extractPart(AssetManager assets, Part part, File destDir, byte[] buffer,
+                                   EntryFilter filter, EntryListener listener, AtomicLong progress)
+            throws IOException {
+        long total = 0;
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(
+                assets.open(part.assetPath, AssetManager.ACCESS_STREAMING), STREAM_BUFFER_SIZE))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (!isSafeEntryName(name)) {
+                    throw new IOException("Entrada no válida en " + part.assetPath + ": " + name);
+                }
+
+                File target = new File(destDir, name);
+                if (entry.isDirectory()) {
+                    ensureDirectory(target);
+                    continue;
+                }
+                // Los directorios se crean aunque el archivo quede para después,
+                // así el árbol (triples, niveles de API) se ve completo
+                ensureDirectory(target.getParentFile());
+                if (!filter.shouldExtract(name)) {
+                    // getNextEntry descarta el contenido sin escribirlo
+                    continue;
+                }
+                // Un archivo nuevo: si el anterior era un enlace, el original no se toca
+                target.delete();
+
+                MessageDigest digest = HashUtils.newDigest();
+                long written = FileUtils.writeStream(zip, target, buffer, digest, progress);
+                total += written;
+                listener.onEntryExtracted(name, written, HashUtils.toHex(digest.digest()));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Rechaza rutas absolutas o que salgan del directorio del compilador
+     */
+    static boolean isSafeEntryName(String name) {
+        if (name.isEmpty() || name.startsWith("/") || name.contains("\\")) {
+            return false;
+        }
+        for (String segment : name.split("/")) {
+            if (segment.equals("..")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Crea un directorio; varias partes pueden crear el mismo a la vez
+     */
+    private static void ensureDirectory(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Failed to create directory: " + dir.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,517 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Descripción del toolchain instalado: binario de clang, versión, resource dir,
+ * sysroot, triples soportados y enlazador.
+ *
+ * Se construye una sola vez al instalar el compilador y se guarda como JSON
+ * junto a él, de modo que preparar una compilación no tenga que recorrer el
+ * disco buscando binarios. Al cargarla se comprueba que siga correspondiendo
+ * a la instalación actual.
+ *
+ * Los ejecutables pueden venir del APK como lib*.so que el sistema extrae a
+ * nativeLibraryDir (bin/ solo tiene enlaces a ellos). En ese caso clang no
+ * puede deducir sus directorios a partir de su propia ruta, y hay que
+ * indicarle el resource dir y dónde buscar el enlazador (ver getDriverFlags).
+ */
+public class ToolchainDescriptor {
+
+    private static final String TAG = "ToolchainDescriptor";
+    private static final int FORMAT_VERSION = 2;
+    private static final int DEFAULT_API_LEVEL = 21;
+    private static final Pattern VERSION_PATTERN = Pattern.compile("clang version (\\S+)");
+
+    // Nombres de clang en orden de preferencia
+    private static final String[] CLANG_NAMES = {
+        "clang-17",
+        "clang-18",
+        "clang-16",
+        "clang-15",
+        "clang"
+    };
+
+    // Nombres del enlazador en orden de preferencia
+    private static final String[] LINKER_NAMES = { "ld.lld", "lld", "ld" };
+
+    private final File compilerDir;
+    private File clangBinary;
+    private long clangSize;
+    private String clangVersion;
+    private File resourceDir;
+    private File sysrootDir;
+    private File libDir;
+    private File nativeLibraryDir;
+    private String linker;
+    private String abi;
+    private String targetTriple;
+    private List<String> supportedTriples = new ArrayList<>();
+    private long installStamp;
+
+    private ToolchainDescriptor(File compilerDir) {
+        this.compilerDir = compilerDir;
+    }
+
+    /**
+     * Examina el toolchain instalado. Puede ejecutar clang, así que no debe
+     * llamarse desde el hilo principal.
+     * @param compilerDir Directorio de instalación del compilador
+     * @param abi ABI del dispositivo
+     * @param installStamp Identificador de la instalación (ver ClangCompilerManager)
+     * @param nativeLibraryDir Directorio de librerías nativas de la app
+     * @return el descriptor, o null si no hay un binario de clang utilizable
+     */
+    public static ToolchainDescriptor probe(File compilerDir, String abi, long installStamp,
+                                            File nativeLibraryDir) {
+        ToolchainDescriptor descriptor = new ToolchainDescriptor(compilerDir);
+        descriptor.abi = abi;
+        descriptor.installStamp = installStamp;
+
+        File binDir = new File(compilerDir, "bin");
+        descriptor.clangBinary = findClangBinary(binDir);
+        if (descriptor.clangBinary == null) {
+            Log.e(TAG, "No clang binary found in " + binDir.getAbsolutePath());
+            return null;
+        }
+        descriptor.clangSize = descriptor.clangBinary.length();
+
+        File libDir = new File(compilerDir, "lib");
+        descriptor.libDir = libDir.isDirectory() ? libDir : null;
+        descriptor.sysrootDir = new File(compilerDir, "sysroot");
+        if (isInside(descriptor.clangBinary, nativeLibraryDir)) {
+            descriptor.nativeLibraryDir = nativeLibraryDir;
+        }
+
+        for (String name : LINKER_NAMES) {
+            File linker = new File(binDir, name);
+            if (linker.exists()) {
+                descriptor.linker = name;
+                break;
+            }
+        }
+
+        descriptor.clangVersion = descriptor.queryClang("--version");
+        if (descriptor.clangVersion != null) {
+            Matcher matcher = VERSION_PATTERN.matcher(descriptor.clangVersion);
+            descriptor.clangVersion = matcher.find() ? matcher.group(1) : null;
+        }
+
+        // Desde nativeLibraryDir clang informa un resource dir que no existe,
+        // y se usa el de lib/clang
+        String resourceDir = descriptor.queryClang("-print-resource-dir");
+        if (resourceDir != null && new File(resourceDir.trim()).isDirectory()) {
+            descriptor.resourceDir = new File(resourceDir.trim());
+        } else {
+            descriptor.resourceDir = findResourceDir(libDir);
+        }
+
+        descriptor.supportedTriples = findSupportedTriples(descriptor.sysrootDir);
+        descriptor.targetTriple = getTripleForAbi(abi, descriptor.supportedTriples);
+
+        Log.d(TAG, "Toolchain: " + descriptor);
+        return descriptor;
+    }
+
+    /**
+     * Lee un descriptor guardado y comprueba que siga siendo válido
+     * @return el descriptor, o null si no existe, está dañado o es de otra instalación
+     */
+    public static ToolchainDescriptor load(File file, File compilerDir, long installStamp) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(FileUtils.readText(file));
+            if (json.optInt("format") != FORMAT_VERSION) {
+                return null;
+            }
+
+            ToolchainDescriptor descriptor = new ToolchainDescriptor(compilerDir);
+            descriptor.installStamp = json.getLong("installStamp");
+            descriptor.clangBinary = new File(json.getString("clang"));
+            descriptor.clangSize = json.getLong("clangSize");
+            descriptor.clangVersion = json.optString("clangVersion", null);
+            descriptor.resourceDir = optFile(json, "resourceDir");
+            descriptor.sysrootDir = new File(json.getString("sysroot"));
+            descriptor.libDir = optFile(json, "libDir");
+            descriptor.nativeLibraryDir = optFile(json, "nativeLibraryDir");
+            descriptor.linker = json.optString("linker", null);
+            descriptor.abi = json.getString("abi");
+            descriptor.targetTriple = json.getString("targetTriple");
+
+            JSONArray triples = json.getJSONArray("supportedTriples");
+            for (int i = 0; i < triples.length(); i++) {
+                descriptor.supportedTriples.add(triples.getString(i));
+            }
+
+            if (!descriptor.isValidFor(compilerDir, installStamp)) {
+                Log.w(TAG, "Stale toolchain descriptor, probing again");
+                return null;
+            }
+            return descriptor;
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "No se pudo leer el descriptor del toolchain", e);
+            return null;
+        }
+    }
+
+    /**
+     * Guarda el descriptor como JSON
+     */
+    public void save(File file) throws IOException {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("format", FORMAT_VERSION);
+            json.put("installStamp", installStamp);
+            json.put("clang", clangBinary.getAbsolutePath());
+            json.put("clangSize", clangSize);
+            putOpt(json, "clangVersion", clangVersion);
+            putOpt(json, "resourceDir", resourceDir != null ? resourceDir.getAbsolutePath() : null);
+            json.put("sysroot", sysrootDir.getAbsolutePath());
+            putOpt(json, "libDir", libDir != null ? libDir.getAbsolutePath() : null);
+            putOpt(json, "nativeLibraryDir", 
+                nativeLibraryDir != null ? nativeLibraryDir.getAbsolutePath() : null);
+            putOpt(json, "linker", linker);
+            json.put("abi", abi);
+            json.put("targetTriple", targetTriple);
+            json.put("supportedTriples", new JSONArray(supportedTriples));
+            FileUtils.writeTextAtomic(file, json.toString(2));
+        } catch (JSONException e) {
+            throw new IOException("Error serializando el descriptor", e);
+        }
+    }
+
+    /**
+     * Comprobaciones de integridad: misma instalación, mismo directorio y el
+     * binario de clang intacto
+     */
+    private boolean isValidFor(File compilerDir, long installStamp) {
+        if (this.installStamp != installStamp) {
+            return false;
+        }
+        if (!clangBinary.getAbsolutePath().startsWith(compilerDir.getAbsolutePath() + File.separator)) {
+            return false;
+        }
+        // Una actualización de la app mueve nativeLibraryDir
+        if (nativeLibraryDir != null && !nativeLibraryDir.isDirectory()) {
+            return false;
+        }
+        return clangBinary.canExecute() && clangBinary.length() == clangSize
+            && sysrootDir.isDirectory();
+    }
+
+    public File getCompilerDir() {
+        return compilerDir;
+    }
+
+    public File getClangBinary() {
+        return clangBinary;
+    }
+
+    /**
+     * Versión de clang, o null si no se pudo determinar
+     */
+    public String getClangVersion() {
+        return clangVersion;
+    }
+
+    /**
+     * Directorio de recursos de clang (headers intrínsecos y runtime), puede ser null
+     */
+    public File getResourceDir() {
+        return resourceDir;
+    }
+
+    public File getSysrootDir() {
+        return sysrootDir;
+    }
+
+    /**
+     * Librerías del propio compilador para LD_LIBRARY_PATH, o null si no hay
+     */
+    public File getLibDir() {
+        return libDir;
+    }
+
+    /**
+     * Directorios para LD_LIBRARY_PATH: lib/ del compilador y, si los
+     * ejecutables vienen del APK, nativeLibraryDir (donde pueden estar
+     * también libLLVM y compañía)
+     * @return la ruta, o null si no hace falta
+     */
+    public String getLibraryPath() {
+        List<String> dirs = new ArrayList<>();
+        if (libDir != null) {
+            dirs.add(libDir.getAbsolutePath());
+        }
+        if (nativeLibraryDir != null) {
+            dirs.add(nativeLibraryDir.getAbsolutePath());
+        }
+        return dirs.isEmpty() ? null : TextUtils.join(":", dirs);
+    }
+
+    /**
+     * true si clang se ejecuta desde nativeLibraryDir
+     */
+    public boolean usesNativeExecutables() {
+        return nativeLibraryDir != null;
+    }
+
+    /**
+     * Flags que necesita el driver según dónde esté instalado. Ejecutado
+     * desde nativeLibraryDir, clang busca sus recursos y el enlazador junto
+     * al binario real; se le indican el resource dir y bin/ (con los nombres
+     * reales de las herramientas) explícitamente.
+     */
+    public List<String> getDriverFlags() {
+        List<String> flags = new ArrayList<>();
+        if (nativeLibraryDir == null) {
+            return flags;
+        }
+        if (resourceDir != null) {
+            flags.add("-resource-dir");
+            flags.add(resourceDir.getAbsolutePath());
+        }
+        flags.add("-B");
+        flags.add(new File(compilerDir, "bin").getAbsolutePath());
+        return flags;
+    }
+
+    /**
+     * Nombre del enlazador encontrado en bin, o null si se usa el predeterminado
+     */
+    public String getLinker() {
+        return linker;
+    }
+
+    public String getAbi() {
+        return abi;
+    }
+
+    /**
+     * Target triple para la ABI del dispositivo
+     */
+    public String getTargetTriple() {
+        return targetTriple;
+    }
+
+    /**
+     * Triples para los que el sysroot tiene librerías
+     */
+    public List<String> getSupportedTriples() {
+        return Collections.unmodifiableList(supportedTriples);
+    }
+
+    public long getInstallStamp() {
+        return installStamp;
+    }
+
+    /**
+     * Target triple para una ABI de Android
+     */
+    public static String getTripleForAbi(String abi, List<String> supportedTriples) {
+        String arch;
+        if (abi.startsWith("arm64") || abi.equals("aarch64")) {
+            arch = "aarch64-linux-android";
+        } else if (abi.startsWith("armeabi")) {
+            arch = "armv7a-linux-androideabi";
+        } else if (abi.equals("x86_64")) {
+            arch = "x86_64-linux-android";
+        } else if (abi.equals("x86")) {
+            arch = "i686-linux-android";
+        } else {
+            // Default
+            arch = "aarch64-linux-android";
+        }
+
+        // Usar el nivel de API que trae el sysroot, si se conoce
+        for (String triple : supportedTriples) {
+            if (triple.startsWith(arch) && triple.length() > arch.length()
+                    && Character.isDigit(triple.charAt(arch.length()))) {
+                return triple;
+            }
+        }
+        return arch + DEFAULT_API_LEVEL;
+    }
+
+    /**
+     * Nombre de ABI de Android (como en jniLibs) para un target triple
+     */
+    public static String getAbiForTriple(String triple) {
+        if (triple.startsWith("aarch64")) {
+            return "arm64-v8a";
+        } else if (triple.startsWith("armv7a") || triple.startsWith("arm")) {
+            return "armeabi-v7a";
+        } else if (triple.startsWith("x86_64")) {
+            return "x86_64";
+        } else if (triple.startsWith("i686")) {
+            return "x86";
+        }
+        return triple;
+    }
+
+    /**
+     * Busca el binario de clang en el directorio bin
+     */
+    private static File findClangBinary(File binDir) {
+        if (!binDir.exists() || !binDir.isDirectory()) {
+            Log.e(TAG, "Bin directory not found: " + binDir.getAbsolutePath());
+            return null;
+        }
+
+        for (String name : CLANG_NAMES) {
+            File binary = new File(binDir, name);
+            if (binary.exists() && binary.canExecute()) {
+                Log.d(TAG, "Found clang binary: " + name);
+                return binary;
+            }
+        }
+
+        // Intentar con cualquier archivo que contenga "clang"
+        File[] files = binDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Log.d(TAG, "  - " + file.getName() + " (executable: " + file.canExecute() + ")");
+                if (file.getName().contains("clang") && file.canExecute()) {
+                    Log.d(TAG, "Using fallback clang binary: " + file.getName());
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Busca lib/clang/&lt;versión&gt; cuando clang no pudo informarlo
+     */
+    private static File findResourceDir(File libDir) {
+        File[] versions = new File(libDir, "clang").listFiles(File::isDirectory);
+        if (versions == null || versions.length == 0) {
+            return null;
+        }
+        return versions[0];
+    }
+
+    /**
+     * Triples con librerías en sysroot/usr/lib/&lt;triple&gt;/&lt;api&gt;
+     */
+    private static List<String> findSupportedTriples(File sysrootDir) {
+        List<String> triples = new ArrayList<>();
+        File[] archDirs = new File(sysrootDir, "usr/lib").listFiles(File::isDirectory);
+        if (archDirs == null) {
+            return triples;
+        }
+
+        for (File archDir : archDirs) {
+            String arch = archDir.getName();
+            if (!arch.contains("-linux-android")) {
+                continue;
+            }
+            // El sysroot usa arm-linux-androideabi, clang espera armv7a
+            if (arch.startsWith("arm-")) {
+                arch = "armv7a-" + arch.substring("arm-".length());
+            }
+
+            int apiLevel = DEFAULT_API_LEVEL;
+            File[] apiDirs = archDir.listFiles(File::isDirectory);
+            if (apiDirs != null) {
+                int lowest = Integer.MAX_VALUE;
+                for (File apiDir : apiDirs) {
+                    try {
+                        int level = Integer.parseInt(apiDir.getName());
+                        if (level >= DEFAULT_API_LEVEL && level < lowest) {
+                            lowest = level;
+                        }
+                    } catch (NumberFormatException e) {
+                        // No es un directorio de nivel de API
+                    }
+                }
+                if (lowest != Integer.MAX_VALUE) {
+                    apiLevel = lowest;
+                }
+            }
+            triples.add(arch + apiLevel);
+        }
+        Collections.sort(triples);
+        return triples;
+    }
+
+    /**
+     * Ejecuta clang con un argumento y devuelve su salida, o null si falla
+     */
+    private String queryClang(String argument) {
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(clangBinary.getAbsolutePath(), argument);
+            processBuilder.redirectErrorStream(true);
+            String libraryPath = getLibraryPath();
+            if (libraryPath != null) {
+                processBuilder.environment().put("LD_LIBRARY_PATH", libraryPath);
+            }
+
+            Process process = processBuilder.start();
+            StringBuilder output = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.append(line).append("\n");
+                }
+            }
+
+            return process.waitFor() == 0 ? output.toString() : null;
+        } catch (IOException e) {
+            Log.w(TAG, "Error ejecutando clang " + argument, e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * true si el archivo (o el destino de su enlace) está dentro del directorio
+     */
+    private static boolean isInside(File file, File dir) {
+        if (dir == null) {
+            return false;
+        }
+        try {
+            return file.getCanonicalPath().startsWith(dir.getCanonicalPath() + File.separator);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static File optFile(JSONObject json, String key) {
+        String path = json.optString(key, null);
+        return path != null ? new File(path) : null;
+    }
+
+    private static void putOpt(JSONObject json, String key, String value) throws JSONException {
+        if (value != null) {
+            json.put(key, value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return clangBinary.getName() + " " + clangVersion + " (" + targetTriple + ", linker: "
+            + linker + ", triples: " + supportedTriples + ")";
+    }
+}
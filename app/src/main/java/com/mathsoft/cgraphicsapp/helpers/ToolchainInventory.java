@@ -0,0 +1,270 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Inventario del toolchain instalado: los dos primeros niveles del árbol con
+ * tamaños, cantidad de archivos y bit de ejecución, más los totales y la
+ * lista de ejecutables.
+ *
+ * Lo escribe el instalador a partir del manifiesto (sin recorrer el
+ * directorio), de modo que la pantalla principal y las verificaciones leen
+ * un archivo chico cuyo tamaño no depende de cuántos headers tenga el sysroot.
+ * Los directorios más profundos se resumen en su ancestro del segundo nivel.
+ *
+ * <pre>
+ * {"format": 1, "installStamp": 0, "files": 4000, "bytes": 300000000,
+ *  "executables": ["bin/clang", ...],
+ *  "root": {"name": "", "dir": true, "files": 4000, "size": 300000000,
+ *           "children": [{"name": "bin", "dir": true, ...}, ...]}}
+ * </pre>
+ */
+public class ToolchainInventory {
+
+    private static final String TAG = "ToolchainInventory";
+    static final String INVENTORY_FILE = ".inventory.json";
+    private static final int FORMAT_VERSION = 1;
+
+    // Niveles del árbol que se guardan (los mismos que muestra la pantalla principal)
+    private static final int MAX_DEPTH = 2;
+
+    /**
+     * Un archivo o directorio del inventario
+     */
+    public static class Node {
+        final String name;
+        final boolean directory;
+        final Map<String, Node> children = new TreeMap<>();
+        long size;
+        int fileCount;
+        boolean executable;
+
+        Node(String name, boolean directory) {
+            this.name = name;
+            this.directory = directory;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        /**
+         * Tamaño del archivo, o suma de los archivos del directorio (a cualquier profundidad)
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Archivos del directorio a cualquier profundidad (1 para un archivo)
+         */
+        public int getFileCount() {
+            return fileCount;
+        }
+
+        public boolean isExecutable() {
+            return executable;
+        }
+
+        /**
+         * Hijos en orden alfabético; vacío para archivos y para los
+         * directorios del último nivel guardado
+         */
+        public Collection<Node> getChildren() {
+            return Collections.unmodifiableCollection(children.values());
+        }
+    }
+
+    private final long installStamp;
+    private final Node root;
+    private final List<String> executables;
+
+    private ToolchainInventory(long installStamp, Node root, List<String> executables) {
+        this.installStamp = installStamp;
+        this.root = root;
+        this.executables = executables;
+    }
+
+    /**
+     * Arma el inventario a partir de los archivos registrados en el manifiesto.
+     * Solo se consulta el sistema de archivos para el bit de ejecución de bin/
+     * (el único directorio con ejecutables).
+     * @param compilerDir Directorio del compilador
+     * @param files Archivos instalados según el manifiesto
+     * @param linked Ejecutables enlazados desde nativeLibraryDir (ruta → destino),
+     *               que no figuran en el manifiesto
+     */
+    public static ToolchainInventory build(File compilerDir, long installStamp,
+                                           Collection<InstallManifest.FileEntry> files,
+                                           Map<String, File> linked) {
+        Node root = new Node("", true);
+        List<String> executables = new ArrayList<>();
+        for (InstallManifest.FileEntry entry : files) {
+            if (linked.containsKey(entry.getPath())) {
+                continue;
+            }
+            boolean executable = entry.getPath().startsWith("bin/")
+                && new File(compilerDir, entry.getPath()).canExecute();
+            add(root, entry.getPath(), entry.getSize(), executable);
+            if (executable) {
+                executables.add(entry.getPath());
+            }
+        }
+        for (Map.Entry<String, File> link : linked.entrySet()) {
+            add(root, link.getKey(), link.getValue().length(), true);
+            executables.add(link.getKey());
+        }
+        Collections.sort(executables);
+        return new ToolchainInventory(installStamp, root, executables);
+    }
+
+    /**
+     * Suma un archivo a sus directorios y lo agrega al árbol si está dentro
+     * de los niveles que se guardan
+     */
+    private static void add(Node root, String path, long size, boolean executable) {
+        String[] segments = path.split("/");
+        root.size += size;
+        root.fileCount++;
+
+        Node node = root;
+        for (int i = 0; i < segments.length && i < MAX_DEPTH; i++) {
+            boolean last = i == segments.length - 1;
+            Node child = node.children.get(segments[i]);
+            if (child == null) {
+                child = new Node(segments[i], !last);
+                node.children.put(segments[i], child);
+            }
+            child.size += size;
+            child.fileCount++;
+            if (last) {
+                child.executable = executable;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Lee el inventario guardado
+     * @return el inventario, o null si no existe o no es válido
+     */
+    public static ToolchainInventory load(File compilerDir) {
+        File file = new File(compilerDir, INVENTORY_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(FileUtils.readText(file));
+            if (json.optInt("format") != FORMAT_VERSION) {
+                return null;
+            }
+            List<String> executables = new ArrayList<>();
+            JSONArray array = json.optJSONArray("executables");
+            if (array != null) {
+                for (int i = 0; i < array.length(); i++) {
+                    executables.add(array.getString(i));
+                }
+            }
+            return new ToolchainInventory(json.optLong("installStamp"),
+                readNode(json.getJSONObject("root")), executables);
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Inventario del toolchain ilegible", e);
+            return null;
+        }
+    }
+
+    /**
+     * Guarda el inventario en el directorio del compilador
+     */
+    public void save(File compilerDir) throws IOException {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("format", FORMAT_VERSION);
+            json.put("installStamp", installStamp);
+            json.put("files", root.fileCount);
+            json.put("bytes", root.size);
+            json.put("executables", new JSONArray(executables));
+            json.put("root", writeNode(root));
+            FileUtils.writeTextAtomic(new File(compilerDir, INVENTORY_FILE), json.toString());
+        } catch (JSONException e) {
+            throw new IOException("Error serializando el inventario", e);
+        }
+    }
+
+    /**
+     * Identificador de la instalación que escribió el inventario
+     * (ver ClangCompilerManager.getInstallStamp)
+     */
+    public long getInstallStamp() {
+        return installStamp;
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    public int getFileCount() {
+        return root.fileCount;
+    }
+
+    public long getTotalBytes() {
+        return root.size;
+    }
+
+    /**
+     * Rutas de los archivos con permiso de ejecución, relativas al directorio del compilador
+     */
+    public List<String> getExecutables() {
+        return Collections.unmodifiableList(executables);
+    }
+
+    private static JSONObject writeNode(Node node) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("name", node.name);
+        json.put("size", node.size);
+        if (node.directory) {
+            json.put("dir", true);
+            json.put("files", node.fileCount);
+            JSONArray children = new JSONArray();
+            for (Node child : node.children.values()) {
+                children.put(writeNode(child));
+            }
+            json.put("children", children);
+        } else if (node.executable) {
+            json.put("exec", true);
+        }
+        return json;
+    }
+
+    private static Node readNode(JSONObject json) throws JSONException {
+        Node node = new Node(json.getString("name"), json.optBoolean("dir"));
+        node.size = json.optLong("size");
+        node.fileCount = node.directory ? json.optInt("files") : 1;
+        node.executable = json.optBoolean("exec");
+        JSONArray children = json.optJSONArray("children");
+        if (children != null) {
+            for (int i = 0; i < children.length(); i++) {
+                Node child = readNode(children.getJSONObject(i));
+                node.children.put(child.name, child);
+            }
+        }
+        return node;
+    }
+}
@@ -0,0 +1,419 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+
+/**
+ * Almacén de las librerías compiladas (files/compiled o /mis_so).
+ *
+ * Cada librería se guarda con el hash de su contenido en el nombre, de modo
+ * que dos compilaciones idénticas comparten archivo y una distinta nunca
+ * reutiliza la ruta de otra (System.load no vuelve a cargar una ruta ya
+ * cargada). Un índice JSON registra fuente, perfil, tamaño y último uso; al
+ * superar la cuota se eliminan las librerías usadas hace más tiempo, salvo
+ * las que ya se cargaron en este proceso.
+ *
+ * Solo se adoptan librerías con los nombres que genera la app (las de
+ * versiones anteriores, lib&lt;nombre&gt;_&lt;fecha&gt;.so, y las del almacén que
+ * faltan en el índice): /mis_so puede contener archivos del usuario. La
+ * adopción usa tamaño y fecha, sin leerlas; su hash se calcula después en
+ * segundo plano.
+ */
+public class ArtifactStore {
+
+    private static final String TAG = "ArtifactStore";
+    private static final String INDEX_FILE = "artifacts.json";
+    private static final String LIBRARY_EXT = ".so";
+    private static final int HASH_LENGTH = 12;
+
+    // Nombres con fecha de versiones anteriores, en la raíz del almacén
+    private static final Pattern LEGACY_NAME = Pattern.compile("lib.+_\\d{13}\\.so");
+    // Nombres con hash, en los directorios de perfil
+    private static final Pattern STORED_NAME =
+        Pattern.compile("lib.+_[0-9a-f]{" + HASH_LENGTH + "}\\.so");
+
+    // Cuota por defecto de cada almacén
+    public static final long DEFAULT_QUOTA_BYTES = 64L * 1024 * 1024;
+
+    // Un almacén por directorio, compartido por todas las compilaciones del proceso
+    private static final Map<String, ArtifactStore> stores = new HashMap<>();
+    // Librerías cargadas en este proceso: siguen mapeadas y no se eliminan
+    private static final Set<String> loadedPaths = new HashSet<>();
+
+    // Hash de las librerías adoptadas, con baja prioridad y fuera de las compilaciones
+    private static final ExecutorService HASH_EXECUTOR =
+        BackgroundExecutors.newSingleThreadExecutor("artifact-hash");
+
+    private final File rootDir;
+    private final File indexFile;
+    private final List<Entry> entries = new ArrayList<>();
+    private long quotaBytes = DEFAULT_QUOTA_BYTES;
+    private boolean loaded;
+
+    /**
+     * Una librería del almacén
+     */
+    private static class Entry {
+        String path;
+        // null hasta que se calcula (librerías adoptadas)
+        String hash;
+        String source;
+        String profile;
+        long size;
+        long lastUsed;
+    }
+
+    private ArtifactStore(File rootDir) {
+        this.rootDir = rootDir;
+        this.indexFile = new File(rootDir, INDEX_FILE);
+    }
+
+    /**
+     * Almacén para un directorio de salida
+     */
+    public static ArtifactStore forDirectory(File rootDir) {
+        synchronized (stores) {
+            String key = rootDir.getAbsolutePath();
+            ArtifactStore store = stores.get(key);
+            if (store == null) {
+                store = new ArtifactStore(rootDir);
+                stores.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Marca una librería que se va a cargar: no se elimina mientras viva el
+     * proceso, y cuenta como usada recientemente
+     */
+    public static void markLoaded(File library) {
+        String path = library.getAbsolutePath();
+        synchronized (loadedPaths) {
+            loadedPaths.add(path);
+        }
+
+        List<ArtifactStore> all;
+        synchronized (stores) {
+            all = new ArrayList<>(stores.values());
+        }
+        for (ArtifactStore store : all) {
+            store.markUsed(path);
+        }
+    }
+
+    private static boolean isLoaded(String path) {
+        synchronized (loadedPaths) {
+            return loadedPaths.contains(path);
+        }
+    }
+
+    public File getRootDirectory() {
+        return rootDir;
+    }
+
+    /**
+     * Cambia la cuota y elimina lo que sobre
+     */
+    public synchronized void setQuota(long bytes) {
+        this.quotaBytes = bytes;
+        ensureLoaded();
+        if (enforceQuota(null)) {
+            saveIndex();
+        }
+    }
+
+    /**
+     * Guarda una librería recién compilada. Si ya hay una con el mismo
+     * contenido se reutiliza y la nueva se descarta.
+     * @param library Librería generada (se mueve o se borra)
+     * @param baseName Nombre base (lib&lt;nombre&gt;.so) de la librería
+     * @param source Fuente o proyecto que la generó
+     * @return la librería dentro del almacén
+     */
+    public File add(File library, String baseName, String source, BuildProfile profile)
+            throws IOException {
+        // El hash se calcula antes de tomar el lock: la librería todavía no es del almacén
+        String hash = HashUtils.sha256Hex(library);
+        synchronized (this) {
+            return addHashed(library, hash, baseName, source, profile);
+        }
+    }
+
+    private File addHashed(File library, String hash, String baseName, String source,
+                           BuildProfile profile) throws IOException {
+        ensureLoaded();
+        for (Entry entry : entries) {
+            File existing = new File(entry.path);
+            if (hash.equals(entry.hash) && existing.exists()) {
+                Log.d(TAG, "Identical artifact, reusing: " + existing.getName());
+                library.delete();
+                entry.lastUsed = System.currentTimeMillis();
+                saveIndex();
+                return existing;
+            }
+        }
+
+        File profileDir = new File(rootDir, profile.getDirName());
+        if (!profileDir.exists() && !profileDir.mkdirs()) {
+            throw new IOException("No se pudo crear el directorio " + profileDir.getAbsolutePath());
+        }
+
+        String name = baseName.substring(0, baseName.length() - LIBRARY_EXT.length());
+        File stored = new File(profileDir, name + "_" + hash.substring(0, HASH_LENGTH) + LIBRARY_EXT);
+        if (!library.renameTo(stored)) {
+            // Otro sistema de archivos (almacenamiento externo): copiar
+            FileUtils.copyFileAtomic(library, stored);
+            library.delete();
+        }
+
+        Entry entry = new Entry();
+        entry.path = stored.getAbsolutePath();
+        entry.hash = hash;
+        entry.source = source;
+        entry.profile = profile.getDirName();
+        entry.size = stored.length();
+        entry.lastUsed = System.currentTimeMillis();
+        entries.add(entry);
+
+        enforceQuota(entry.path);
+        saveIndex();
+        return stored;
+    }
+
+    /**
+     * Guarda una copia de una librería que debe quedar en su sitio
+     * (por ejemplo una variante del directorio abi/)
+     */
+    public File addCopy(File library, String baseName, String source,
+                        BuildProfile profile) throws IOException {
+        if (!rootDir.exists() && !rootDir.mkdirs()) {
+            throw new IOException("No se pudo crear el directorio " + rootDir.getAbsolutePath());
+        }
+        // Nombre único: puede haber varias copias en curso con el mismo nombre base
+        File copy = File.createTempFile(baseName, ".tmp", rootDir);
+        try {
+            FileUtils.copyFile(library, copy);
+            return add(copy, baseName, source, profile);
+        } finally {
+            // add() la mueve o la borra; si falló antes, no debe quedar en el almacén
+            copy.delete();
+        }
+    }
+
+    /**
+     * Actualiza el último uso en memoria, sin escribir el índice (se llama
+     * desde el hilo principal); se persiste con la siguiente escritura
+     */
+    private synchronized void markUsed(String path) {
+        if (!loaded) {
+            return;
+        }
+        Entry entry = findEntry(path);
+        if (entry != null) {
+            entry.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Elimina las librerías menos usadas hasta respetar la cuota
+     * @param keepPath Librería recién agregada, que no se elimina (puede ser null)
+     * @return true si se eliminó algo
+     */
+    private boolean enforceQuota(String keepPath) {
+        long total = 0;
+        for (Entry entry : entries) {
+            total += entry.size;
+        }
+        if (total <= quotaBytes) {
+            return false;
+        }
+
+        List<Entry> candidates = new ArrayList<>(entries);
+        candidates.sort((a, b) -> Long.compare(a.lastUsed, b.lastUsed));
+
+        boolean removed = false;
+        for (Entry entry : candidates) {
+            if (total <= quotaBytes) {
+                break;
+            }
+            if (entry.path.equals(keepPath) || isLoaded(entry.path)) {
+                continue;
+            }
+            new File(entry.path).delete();
+            entries.remove(entry);
+            total -= entry.size;
+            removed = true;
+            Log.d(TAG, "Evicted artifact: " + entry.path);
+        }
+        return removed;
+    }
+
+    /**
+     * Carga el índice y adopta las librerías de la app que no figuran en él
+     * (las que dejaron versiones anteriores con nombres por fecha, o las del
+     * almacén si el índice se perdió), para que también cuenten en la cuota.
+     * La adopción solo usa tamaño y fecha; los hashes se calculan en segundo
+     * plano (ver hashPendingEntries).
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (indexFile.exists()) {
+            try {
+                JSONArray array = new JSONArray(FileUtils.readText(indexFile));
+                for (int i = 0; i < array.length(); i++) {
+                    JSONObject json = array.getJSONObject(i);
+                    Entry entry = new Entry();
+                    entry.path = json.getString("path");
+                    entry.hash = json.optString("hash", null);
+                    entry.source = json.optString("source");
+                    entry.profile = json.optString("profile");
+                    entry.size = json.optLong("size");
+                    entry.lastUsed = json.optLong("lastUsed");
+                    if (new File(entry.path).exists()) {
+                        entries.add(entry);
+                    }
+                }
+            } catch (IOException | JSONException e) {
+                Log.w(TAG, "Índice de artefactos dañado, se reconstruye", e);
+                entries.clear();
+            }
+        }
+
+        List<File> libraries = new ArrayList<>();
+        collectLibraries(libraries);
+        boolean adopted = false;
+        for (File library : libraries) {
+            if (findEntry(library.getAbsolutePath()) != null) {
+                continue;
+            }
+            Entry entry = new Entry();
+            entry.path = library.getAbsolutePath();
+            entry.source = "";
+            entry.profile = library.getParentFile().getName();
+            entry.size = library.length();
+            entry.lastUsed = library.lastModified();
+            entries.add(entry);
+            adopted = true;
+        }
+
+        if (adopted) {
+            Log.d(TAG, "Adopted existing libraries into " + rootDir.getAbsolutePath());
+            enforceQuota(null);
+            saveIndex();
+        }
+        for (Entry entry : entries) {
+            if (entry.hash == null) {
+                HASH_EXECUTOR.execute(this::hashPendingEntries);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Calcula el hash de las librerías adoptadas sin bloquear el almacén
+     * mientras se leen; hasta entonces no participan en la deduplicación
+     */
+    private void hashPendingEntries() {
+        List<Entry> pending = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : entries) {
+                if (entry.hash == null) {
+                    pending.add(entry);
+                }
+            }
+        }
+
+        for (Entry entry : pending) {
+            String hash;
+            try {
+                hash = HashUtils.sha256Hex(new File(entry.path));
+            } catch (IOException e) {
+                // Eliminada mientras tanto (cuota) o ilegible: queda sin hash
+                continue;
+            }
+            synchronized (this) {
+                entry.hash = hash;
+            }
+        }
+
+        synchronized (this) {
+            saveIndex();
+        }
+        Log.d(TAG, "Hashed " + pending.size() + " adopted libraries in " + rootDir.getAbsolutePath());
+    }
+
+    /**
+     * Librerías con nombre por fecha en el directorio raíz y con nombre por
+     * hash en los directorios de perfil. Los demás archivos no son de la app
+     * y no se tocan; las variantes por ABI (perfil/abi/) se sobrescriben en
+     * cada compilación y tampoco se indexan.
+     */
+    private void collectLibraries(List<File> libraries) {
+        collectMatching(rootDir, LEGACY_NAME, libraries);
+        for (BuildProfile profile : BuildProfile.values()) {
+            collectMatching(new File(rootDir, profile.getDirName()), STORED_NAME, libraries);
+        }
+    }
+
+    private static void collectMatching(File dir, Pattern name, List<File> libraries) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isFile() && name.matcher(file.getName()).matches()) {
+                libraries.add(file);
+            }
+        }
+    }
+
+    private Entry findEntry(String path) {
+        for (Entry entry : entries) {
+            if (entry.path.equals(path)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void saveIndex() {
+        JSONArray array = new JSONArray();
+        try {
+            for (Entry entry : entries) {
+                JSONObject json = new JSONObject();
+                json.put("path", entry.path);
+                json.put("hash", entry.hash);
+                json.put("source", entry.source);
+                json.put("profile", entry.profile);
+                json.put("size", entry.size);
+                json.put("lastUsed", entry.lastUsed);
+                array.put(json);
+            }
+            if (!rootDir.exists()) {
+                rootDir.mkdirs();
+            }
+            FileUtils.writeTextAtomic(indexFile, array.toString());
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Error guardando el índice de artefactos", e);
+        }
+    }
+}
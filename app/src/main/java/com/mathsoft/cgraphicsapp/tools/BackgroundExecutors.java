@@ -0,0 +1,41 @@
+package com.mathsoft.cgraphicsapp;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Hilos de baja prioridad para el trabajo que no espera el usuario
+ * (limpieza, hashes, exportación, verificación). Los procesos de clang
+ * lanzados desde estos hilos heredan su prioridad.
+ */
+public final class BackgroundExecutors {
+
+    private BackgroundExecutors() {
+    }
+
+    /**
+     * Fábrica de hilos con prioridad THREAD_PRIORITY_BACKGROUND
+     */
+    public static ThreadFactory threadFactory(String name) {
+        return runnable -> new Thread(() -> {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, name);
+    }
+
+    /**
+     * Executor de un solo hilo de baja prioridad
+     */
+    public static ExecutorService newSingleThreadExecutor(String name) {
+        return Executors.newSingleThreadExecutor(threadFactory(name));
+    }
+
+    /**
+     * Executor programable de un solo hilo de baja prioridad
+     */
+    public static ScheduledExecutorService newSingleThreadScheduledExecutor(String name) {
+        return Executors.newSingleThreadScheduledExecutor(threadFactory(name));
+    }
+}
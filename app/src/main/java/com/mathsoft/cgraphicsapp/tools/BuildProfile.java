@@ -0,0 +1,75 @@
+package com.mathsoft.cgraphicsapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Perfiles de compilación seleccionables desde CompilerActivity.
+ *
+ * FAST prioriza el ciclo editar-ejecutar (sin optimizaciones) y RELEASE el
+ * rendimiento del código generado. Cada perfil tiene su propio directorio de
+ * salida y su propio PCH; las entradas de cache se distinguen por los flags.
+ */
+public enum BuildProfile {
+
+    FAST("fast", "Rápido (-O0)",
+         new String[] { "-O0" },
+         new String[] {}),
+
+    RELEASE("release", "Release (-O3)",
+            new String[] { "-O3", "-fomit-frame-pointer", "-ffunction-sections", "-fdata-sections" },
+            new String[] { "-Wl,--gc-sections", "-Wl,-O2" });
+
+    private final String dirName;
+    private final String label;
+    private final String[] codegenFlags;
+    private final String[] linkFlags;
+
+    BuildProfile(String dirName, String label, String[] codegenFlags, String[] linkFlags) {
+        this.dirName = dirName;
+        this.label = label;
+        this.codegenFlags = codegenFlags;
+        this.linkFlags = linkFlags;
+    }
+
+    /**
+     * Nombre corto usado en directorios y claves
+     */
+    public String getDirName() {
+        return dirName;
+    }
+
+    /**
+     * Nombre para mostrar en la interfaz
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Flags de optimización de este perfil (el PCH se construye con los mismos)
+     */
+    public List<String> getCodegenFlags() {
+        return new ArrayList<>(Arrays.asList(codegenFlags));
+    }
+
+    /**
+     * Flags adicionales para el enlazado
+     */
+    public List<String> getLinkFlags() {
+        return new ArrayList<>(Arrays.asList(linkFlags));
+    }
+
+    /**
+     * Nombres para mostrar de todos los perfiles, en orden
+     */
+    public static String[] getLabels() {
+        BuildProfile[] profiles = values();
+        String[] labels = new String[profiles.length];
+        for (int i = 0; i < profiles.length; i++) {
+            labels[i] = profiles[i].label;
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,56 @@
+package com.mathsoft.cgraphicsapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Permite cancelar una compilación en curso destruyendo los procesos de clang
+ * que tenga abiertos. Una compilación de proyecto puede registrar varios
+ * procesos a la vez (uno por unidad de traducción).
+ */
+public class CancellationToken {
+
+    private final List<Process> processes = new ArrayList<>();
+    private boolean cancelled;
+
+    /**
+     * Cancela la compilación y destruye los procesos registrados
+     */
+    public void cancel() {
+        List<Process> running;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            running = new ArrayList<>(processes);
+            processes.clear();
+        }
+        for (Process process : running) {
+            process.destroy();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Registra un proceso en curso. Si ya se canceló, lo destruye de inmediato.
+     * @return false si la compilación ya estaba cancelada
+     */
+    public boolean register(Process process) {
+        synchronized (this) {
+            if (!cancelled) {
+                processes.add(process);
+                return true;
+            }
+        }
+        process.destroy();
+        return false;
+    }
+
+    public synchronized void unregister(Process process) {
+        processes.remove(process);
+    }
+}
@@ -1,12 +1,13 @@
 package com.mathsoft.cgraphicsapp;
 
 import android.content.Context;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 public class CompilationManager {
     private static final String TAG = "CompilationManager";
@@ -16,6 +17,19 @@ public class CompilationManager {
     private String lastCompiledSoPath;
     private String lastCompiledSoName;
     private boolean lastWasExternal;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CompileScheduler scheduler = new CompileScheduler();
+    private boolean timeTraceEnabled;
+    private BuildProfile buildProfile = BuildProfile.FAST;
+    private boolean backgroundReleaseEnabled;
+    private CompilationCallback backgroundReleaseCallback;
+    private SyntaxChecker syntaxChecker;
+
+    // Prefijo de clave del planificador para las compilaciones release en segundo plano
+    private static final String BACKGROUND_RELEASE_KEY = "release:";
+
+    // La salida de clang se entrega a la interfaz en bloques, como mucho una vez por intervalo
+    private static final long OUTPUT_FLUSH_INTERVAL_MS = 80;
 
     public interface CompilationCallback {
         void onCompilationComplete(CompilationResult result);
@@ -31,31 +45,305 @@ public class CompilationManager {
         this.compiler = new NativeCompiler(context);
     }
     
-    private String getUniqueLibraryName(String baseName) {
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        return baseName + "_" + timestamp;
-    }
-    
 
     public void compile(File sourceFile, boolean saveToExternal, CompilationCallback callback) {
-        new AsyncTask<Void, Void, NativeCompiler.CompilationResult>() {
-            @Override
-            protected NativeCompiler.CompilationResult doInBackground(Void... voids) {
-                String outputName = sourceFile.getName().replace(".c", "");
-                return compiler.compile(sourceFile, getUniqueLibraryName(outputName), saveToExternal);
+        compile(sourceFile, saveToExternal, null, callback);
+    }
+
+    /**
+     * Compila entregando la salida de clang en el hilo principal mientras se produce.
+     * Una nueva petición para el mismo fuente cancela la anterior y solo se
+     * entrega el resultado de la más reciente.
+     * @param outputListener Receptor de líneas y diagnósticos (puede ser null)
+     */
+    public void compile(File sourceFile, boolean saveToExternal, 
+                        CompilerOutput.Listener outputListener, CompilationCallback callback) {
+        compile(sourceFile, null, saveToExternal, outputListener, callback);
+    }
+
+    /**
+     * Compila el texto del editor sin esperar a que se guarde en disco.
+     * Arranca enseguida; una petición posterior cancela esta.
+     * @param sourceText Contenido a compilar, o null para leer el archivo
+     */
+    public void compile(File sourceFile, String sourceText, boolean saveToExternal, 
+                        CompilerOutput.Listener outputListener, CompilationCallback callback) {
+        compile(sourceFile, sourceText, saveToExternal, 0, outputListener, callback);
+    }
+
+    /**
+     * Reinicia la compilación en curso tras un cambio del archivo. Espera
+     * RESTART_DEBOUNCE_MS para agrupar varios cambios seguidos en un solo reinicio.
+     */
+    public void restartCompile(File sourceFile, String sourceText, boolean saveToExternal, 
+                               CompilerOutput.Listener outputListener, 
+                               CompilationCallback callback) {
+        compile(sourceFile, sourceText, saveToExternal, CompileScheduler.RESTART_DEBOUNCE_MS,
+                outputListener, callback);
+    }
+
+    private void compile(File sourceFile, String sourceText, boolean saveToExternal, 
+                         long debounceMs, CompilerOutput.Listener outputListener, 
+                         CompilationCallback callback) {
+        CancellationToken cancellation = new CancellationToken();
+        MainThreadListener listener = onMainThread(outputListener, cancellation);
+        String outputName = FileUtils.getBaseName(sourceFile);
+        BuildProfile profile = buildProfile;
+
+        // Una compilación release en segundo plano del mismo fuente ya quedó obsoleta
+        scheduler.cancel(BACKGROUND_RELEASE_KEY + sourceFile.getAbsolutePath());
+
+        scheduler.submit(sourceFile.getAbsolutePath(), debounceMs, cancellation,
+            token -> {
+                CompileOptions options = createOptions(listener, token, profile);
+                options.sourceText = sourceText;
+                return compiler.compile(sourceFile, outputName, saveToExternal, options);
+            },
+            result -> {
+                flush(listener);
+                callback.onCompilationComplete(toResult(result));
+                if (result.isSuccess() && profile != BuildProfile.RELEASE && backgroundReleaseEnabled) {
+                    scheduleBackgroundRelease(sourceFile, sourceText, outputName);
+                }
+            });
+    }
+
+    /**
+     * Compila la variante release en segundo plano y con baja prioridad, de modo
+     * que al cambiar al perfil release el resultado ya esté en el cache. Corre
+     * en el hilo de segundo plano del planificador: las compilaciones que espera
+     * el usuario no quedan detrás de ella.
+     */
+    private void scheduleBackgroundRelease(File sourceFile, String sourceText, String outputName) {
+        scheduler.submitBackground(BACKGROUND_RELEASE_KEY + sourceFile.getAbsolutePath(), 
+            new CancellationToken(),
+            token -> {
+                CompileOptions options = new CompileOptions(null, token);
+                options.profile = BuildProfile.RELEASE;
+                options.sourceText = sourceText;
+                return compiler.compile(sourceFile, outputName, false, options);
+            },
+            result -> {
+                Log.d(TAG, "Background release build finished: " + result.getMessage());
+                if (backgroundReleaseCallback != null) {
+                    backgroundReleaseCallback.onCompilationComplete(toResult(result));
+                }
+            });
+    }
+
+    /**
+     * Compila el fuente para todas las ABI soportadas en paralelo. Las librerías
+     * quedan en el directorio abi/ del perfil, con el nombre del fuente.
+     */
+    public void compileAllAbis(File sourceFile, String sourceText, boolean saveToExternal, 
+                               CompilerOutput.Listener outputListener, CompilationCallback callback) {
+        CancellationToken cancellation = new CancellationToken();
+        MainThreadListener listener = onMainThread(outputListener, cancellation);
+        String outputName = FileUtils.getBaseName(sourceFile);
+        BuildProfile profile = buildProfile;
+
+        scheduler.submit("abi:" + sourceFile.getAbsolutePath(), 0, cancellation,
+            token -> {
+                CompileOptions options = createOptions(listener, token, profile);
+                options.sourceText = sourceText;
+                return compiler.compileMultiAbi(sourceFile, outputName, saveToExternal, options);
+            },
+            result -> {
+                flush(listener);
+                callback.onCompilationComplete(toResult(result));
+            });
+    }
+
+    /**
+     * Compila un proyecto de varios archivos .c en una sola librería
+     */
+    public void compileProject(List<File> sourceFiles, String projectName, boolean saveToExternal, 
+                               CompilationCallback callback) {
+        compileProject(sourceFiles, projectName, saveToExternal, null, callback);
+    }
+
+    /**
+     * Compila un proyecto entregando la salida de clang en el hilo principal
+     */
+    public void compileProject(List<File> sourceFiles, String projectName, boolean saveToExternal, 
+                               CompilerOutput.Listener outputListener, CompilationCallback callback) {
+        CancellationToken cancellation = new CancellationToken();
+        MainThreadListener listener = onMainThread(outputListener, cancellation);
+
+        scheduler.submit("project:" + projectName, 0, cancellation,
+            token -> compiler.compileProject(sourceFiles, projectName, 
+                                             saveToExternal, createOptions(listener, token, buildProfile)),
+            result -> {
+                flush(listener);
+                callback.onCompilationComplete(toResult(result));
+            });
+    }
+
+    /**
+     * Habilita la medición de tiempos por fase con -ftime-trace
+     */
+    public void setTimeTraceEnabled(boolean enabled) {
+        this.timeTraceEnabled = enabled;
+    }
+
+    public boolean isTimeTraceEnabled() {
+        return timeTraceEnabled;
+    }
+
+    /**
+     * Selecciona el perfil de compilación de las próximas compilaciones
+     */
+    public void setBuildProfile(BuildProfile profile) {
+        this.buildProfile = profile;
+    }
+
+    public BuildProfile getBuildProfile() {
+        return buildProfile;
+    }
+
+    /**
+     * Habilita la compilación release en segundo plano tras cada compilación rápida
+     * @param callback Recibe el resultado de la compilación release (puede ser null)
+     */
+    public void setBackgroundReleaseEnabled(boolean enabled, CompilationCallback callback) {
+        this.backgroundReleaseEnabled = enabled;
+        this.backgroundReleaseCallback = callback;
+    }
+
+    private CompileOptions createOptions(CompilerOutput.Listener listener, CancellationToken token,
+                                         BuildProfile profile) {
+        CompileOptions options = new CompileOptions(listener, token);
+        options.timeTrace = timeTraceEnabled;
+        options.profile = profile;
+        return options;
+    }
+
+    /**
+     * Indica si hay una compilación pendiente o en curso para el fuente
+     */
+    public boolean isCompiling(File sourceFile) {
+        return scheduler.isActive(sourceFile.getAbsolutePath());
+    }
+
+    /**
+     * Revisa la sintaxis del texto del editor sin compilar ni guardar.
+     * Los #include locales se resuelven respecto al directorio del fuente.
+     */
+    public void checkSyntax(String text, File sourceFile, SyntaxChecker.SyntaxCallback callback) {
+        if (syntaxChecker == null) {
+            syntaxChecker = new SyntaxChecker(compiler);
+        }
+        syntaxChecker.check(text, sourceFile, callback);
+    }
+
+    /**
+     * Cancela las compilaciones pendientes y destruye los procesos de clang en curso
+     */
+    public void cancelAll() {
+        scheduler.cancelAll();
+        if (syntaxChecker != null) {
+            syntaxChecker.shutdown();
+            syntaxChecker = null;
+        }
+    }
+
+    /**
+     * Envuelve un listener para que reciba la salida en el hilo principal,
+     * descartando la de compilaciones ya canceladas
+     */
+    private MainThreadListener onMainThread(CompilerOutput.Listener listener, 
+                                            CancellationToken cancellation) {
+        return listener != null ? new MainThreadListener(listener, cancellation) : null;
+    }
+
+    /**
+     * Entrega lo que quedó acumulado antes de mostrar el resultado
+     */
+    private static void flush(MainThreadListener listener) {
+        if (listener != null) {
+            listener.flush();
+        }
+    }
+
+    /**
+     * Acumula las líneas y diagnósticos que produce el hilo lector y los
+     * entrega en el hilo principal cada OUTPUT_FLUSH_INTERVAL_MS: una ráfaga
+     * de errores cuesta unos pocos mensajes (y un solo append por bloque) en
+     * lugar de uno por línea. onOutputLine recibe varias líneas separadas por '\n'.
+     */
+    private class MainThreadListener implements CompilerOutput.Listener {
+        private final CompilerOutput.Listener listener;
+        private final CancellationToken cancellation;
+        private final StringBuilder lines = new StringBuilder();
+        private final List<Diagnostic> diagnostics = new ArrayList<>();
+        private final Runnable flushTask = this::flush;
+        private boolean flushScheduled;
+
+        MainThreadListener(CompilerOutput.Listener listener, CancellationToken cancellation) {
+            this.listener = listener;
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        public synchronized void onOutputLine(String line) {
+            if (lines.length() > 0) {
+                lines.append('\n');
             }
+            lines.append(line);
+            scheduleFlush();
+        }
 
-            @Override
-            protected void onPostExecute(NativeCompiler.CompilationResult result) {
-                CompilationResult res = new CompilationResult();
-                res.isSuccess = result.isSuccess();
-                res.message = result.getMessage();
-                res.output = result.getOutput();
-                res.outputPath = result.getOutputPath();
-                res.command = result.getCommand();
-                callback.onCompilationComplete(res);
+        @Override
+        public synchronized void onDiagnostic(Diagnostic diagnostic) {
+            diagnostics.add(diagnostic);
+            scheduleFlush();
+        }
+
+        private void scheduleFlush() {
+            if (!flushScheduled) {
+                flushScheduled = true;
+                mainHandler.postDelayed(flushTask, OUTPUT_FLUSH_INTERVAL_MS);
             }
-        }.execute();
+        }
+
+        /**
+         * Entrega lo acumulado (en el hilo principal)
+         */
+        void flush() {
+            String text;
+            List<Diagnostic> pending;
+            synchronized (this) {
+                mainHandler.removeCallbacks(flushTask);
+                flushScheduled = false;
+                text = lines.length() > 0 ? lines.toString() : null;
+                lines.setLength(0);
+                pending = new ArrayList<>(diagnostics);
+                diagnostics.clear();
+            }
+            if (cancellation.isCancelled()) {
+                return;
+            }
+            if (text != null) {
+                listener.onOutputLine(text);
+            }
+            for (Diagnostic diagnostic : pending) {
+                listener.onDiagnostic(diagnostic);
+            }
+        }
+    }
+
+    private CompilationResult toResult(NativeCompiler.CompilationResult result) {
+        CompilationResult res = new CompilationResult();
+        res.isSuccess = result.isSuccess();
+        res.message = result.getMessage();
+        res.output = result.getOutput();
+        res.outputPath = result.getOutputPath();
+        res.command = result.getCommand();
+        res.fromCache = result.isFromCache();
+        res.cacheStats = result.getCacheStats();
+        res.diagnostics = result.getDiagnostics();
+        res.timingReport = result.getTimingReport();
+        return res;
     }
 
     public void execute(ExecutionCallback callback) {
@@ -70,51 +358,12 @@ public class CompilationManager {
             return;
         }
 
-        if (lastWasExternal) {
-            new AsyncTask<Void, Void, String>() {
-                @Override
-                protected String doInBackground(Void... voids) {
-                    return copyExternalSoToCache(lastCompiledSoPath, lastCompiledSoName);
-                }
+        // Una librería cargada no se elimina del almacén mientras viva el proceso
+        ArtifactStore.markLoaded(soFile);
 
-                @Override
-                protected void onPostExecute(String tempSoPath) {
-                    if (tempSoPath != null) {
-                        callback.onExecutionReady(tempSoPath, lastCompiledSoName, true);
-                    } else {
-                        callback.onExecutionError("Error al copiar librería");
-                    }
-                }
-            }.execute();
-        } else {
-            callback.onExecutionReady(lastCompiledSoPath, lastCompiledSoName, false);
-        }
-    }
-
-    private String copyExternalSoToCache(String externalSoPath, String soName) {
-        try {
-            File sourceFile = new File(externalSoPath);
-            if (!sourceFile.exists()) return null;
-
-            File tempSoFile = new File(context.getCacheDir(), "temp_" + soName);
-            if (tempSoFile.exists()) tempSoFile.delete();
-
-            FileInputStream inputStream = new FileInputStream(sourceFile);
-            FileOutputStream outputStream = new FileOutputStream(tempSoFile);
-
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-            }
-
-            outputStream.close();
-            inputStream.close();
-            return tempSoFile.getAbsolutePath();
-        } catch (Exception e) {
-            Log.e(TAG, "Error copiando .so", e);
-            return null;
-        }
+        // Siempre se compila al almacenamiento interno (/mis_so/ solo recibe una
+        // copia exportada), así que la librería se carga sin copiarla
+        callback.onExecutionReady(lastCompiledSoPath, lastCompiledSoName, false);
     }
 
     public void setLastCompilation(String soPath, String soName, boolean wasExternal) {
@@ -1,9 +1,15 @@
 package com.mathsoft.cgraphicsapp;
 
+import java.util.List;
+
 public class CompilationResult {
     public boolean isSuccess;
     public String message;
     public String output;
     public String outputPath;
     public String command;
+    public boolean fromCache;
+    public String cacheStats;
+    public List<Diagnostic> diagnostics;
+    public String timingReport;
 }
\ No newline at end of file
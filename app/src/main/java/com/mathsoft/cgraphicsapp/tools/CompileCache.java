@@ -0,0 +1,352 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Cache persistente de artefactos compilados (.so u .o), direccionada por contenido.
+ *
+ * La clave es un SHA-256 de: bytes del código fuente, argumentos de clang
+ * (sin la ruta de salida), identidad del binario de clang y target triple.
+ * Cada entrada guarda el artefacto y la salida del compilador que lo produjo.
+ */
+public class CompileCache {
+
+    private static final String TAG = "CompileCache";
+    private static final String CACHE_DIR = "compile_cache";
+    private static final String OBJECT_CACHE_DIR = "object_cache";
+    private static final String STATS_FILE = ".stats";
+    private static final String LIBRARY_EXT = ".so";
+    private static final String OBJECT_EXT = ".o";
+    private static final String OUTPUT_EXT = ".log";
+    private static final String OUTPUT_PLACEHOLDER = "<output>";
+    private static final String DEPFILE_PLACEHOLDER = "<depfile>";
+    // Consultas entre escrituras del archivo de estadísticas
+    private static final int STATS_SAVE_INTERVAL = 16;
+
+    // Tamaño máximo por defecto del cache
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_OBJECT_MAX_BYTES = 128L * 1024 * 1024;
+
+    private final File cacheDir;
+    private final long maxBytes;
+    private final String artifactExt;
+    private int hits;
+    private int misses;
+    private int unsavedLookups;
+
+    public CompileCache(Context context) {
+        this(new File(context.getApplicationContext().getFilesDir(), CACHE_DIR), 
+             DEFAULT_MAX_BYTES, LIBRARY_EXT);
+    }
+
+    public CompileCache(File cacheDir, long maxBytes, String artifactExt) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+        this.artifactExt = artifactExt;
+        loadStats();
+    }
+
+    /**
+     * Crea el cache de archivos objeto (.o) usado por el modo proyecto
+     */
+    public static CompileCache forObjects(Context context) {
+        return new CompileCache(new File(context.getApplicationContext().getFilesDir(), OBJECT_CACHE_DIR),
+                                DEFAULT_OBJECT_MAX_BYTES, OBJECT_EXT);
+    }
+
+    /**
+     * Calcula la clave de cache de una compilación
+     * @param sourceBytes Contenido del archivo fuente
+     * @param command Comando completo de clang
+     * @param outputFile Archivo de salida (se excluye de la clave)
+     * @param clangBinary Binario de clang usado
+     * @param targetTriple Target triple de la compilación
+     * @param dependencyHash Hash de los headers de los que depende el fuente
+     */
+    public String computeKey(byte[] sourceBytes, List<String> command, File outputFile,
+                             File clangBinary, String targetTriple, String dependencyHash) {
+        MessageDigest md = HashUtils.newDigest();
+        md.update(sourceBytes);
+        md.update((byte) 0);
+        HashUtils.update(md, dependencyHash != null ? dependencyHash : "");
+
+        // Las rutas de salida y del depfile cambian entre compilaciones, no forman parte de la clave
+        String outputPath = outputFile != null ? outputFile.getAbsolutePath() : null;
+        boolean nextIsDepfile = false;
+        for (String arg : command) {
+            if (nextIsDepfile) {
+                HashUtils.update(md, DEPFILE_PLACEHOLDER);
+            } else {
+                HashUtils.update(md, arg.equals(outputPath) ? OUTPUT_PLACEHOLDER : arg);
+            }
+            nextIsDepfile = arg.equals("-MF");
+        }
+
+        // Identidad del binario: ruta, tamaño y fecha de modificación
+        HashUtils.update(md, clangBinary.getAbsolutePath());
+        HashUtils.update(md, String.valueOf(clangBinary.length()));
+        HashUtils.update(md, String.valueOf(clangBinary.lastModified()));
+        HashUtils.update(md, targetTriple);
+
+        return HashUtils.toHex(md.digest());
+    }
+
+    /**
+     * Busca una entrada en el cache y la copia al archivo de salida.
+     * La copia se hace fuera del lock: la clave depende del contenido,
+     * así que una entrada no cambia una vez escrita.
+     * @return la salida del compilador registrada, o null si no hay entrada
+     */
+    public String restore(String key, File outputFile) {
+        File library = new File(cacheDir, key + artifactExt);
+        File output = new File(cacheDir, key + OUTPUT_EXT);
+
+        if (!library.exists()) {
+            recordLookup(false);
+            return null;
+        }
+
+        try {
+            FileUtils.copyFile(library, outputFile);
+            String recordedOutput = output.exists() ? FileUtils.readText(output) : "";
+
+            // Marcar como usado recientemente (LRU)
+            long now = System.currentTimeMillis();
+            library.setLastModified(now);
+            output.setLastModified(now);
+
+            recordLookup(true);
+            Log.d(TAG, "Cache hit: " + key);
+            return recordedOutput;
+        } catch (IOException e) {
+            // También llega aquí si la entrada se desalojó entre exists() y la copia
+            Log.e(TAG, "Error restaurando entrada de cache: " + key, e);
+            outputFile.delete();
+            library.delete();
+            output.delete();
+            recordLookup(false);
+            return null;
+        }
+    }
+
+    /**
+     * Busca una entrada en el cache sin copiarla
+     * @return el artefacto cacheado, o null si no hay entrada
+     */
+    public File lookup(String key) {
+        File artifact = new File(cacheDir, key + artifactExt);
+        if (!artifact.exists()) {
+            recordLookup(false);
+            return null;
+        }
+
+        // Marcar como usado recientemente (LRU)
+        long now = System.currentTimeMillis();
+        artifact.setLastModified(now);
+        new File(cacheDir, key + OUTPUT_EXT).setLastModified(now);
+
+        recordLookup(true);
+        return artifact;
+    }
+
+    /**
+     * Cuenta un acierto o un fallo. Las estadísticas se escriben cada
+     * STATS_SAVE_INTERVAL consultas y al guardar o recortar el cache,
+     * no en cada consulta.
+     */
+    private synchronized void recordLookup(boolean hit) {
+        if (hit) {
+            hits++;
+        } else {
+            misses++;
+        }
+        if (++unsavedLookups >= STATS_SAVE_INTERVAL) {
+            saveStats();
+        }
+    }
+
+    /**
+     * Salida del compilador registrada para una entrada
+     */
+    public synchronized String getRecordedOutput(String key) {
+        File output = new File(cacheDir, key + OUTPUT_EXT);
+        try {
+            return output.exists() ? FileUtils.readText(output) : "";
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Guarda el resultado de una compilación exitosa en el cache
+     * y aplica el límite de tamaño
+     */
+    public synchronized void store(String key, File library, String compilerOutput) {
+        if (storeWithoutTrim(key, library, compilerOutput) != null) {
+            enforceSizeLimit();
+        }
+        flushStats();
+    }
+
+    /**
+     * Guarda una entrada sin aplicar el límite de tamaño. Útil cuando otras
+     * entradas siguen en uso (por ejemplo objetos pendientes de enlazar);
+     * el llamador debe invocar {@link #trim()} al terminar.
+     * @return el artefacto almacenado en el cache, o null si no se pudo guardar
+     */
+    public synchronized File storeWithoutTrim(String key, File library, String compilerOutput) {
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Log.e(TAG, "Failed to create cache directory: " + cacheDir.getAbsolutePath());
+            return null;
+        }
+
+        if (library.length() > maxBytes) {
+            Log.w(TAG, "Artefacto demasiado grande para el cache: " + library.length());
+            return null;
+        }
+
+        try {
+            FileUtils.writeTextAtomic(new File(cacheDir, key + OUTPUT_EXT),
+                compilerOutput != null ? compilerOutput : "");
+            FileUtils.copyFileAtomic(library, new File(cacheDir, key + artifactExt));
+            Log.d(TAG, "Cache store: " + key);
+        } catch (IOException e) {
+            Log.e(TAG, "Error guardando en cache: " + key, e);
+            new File(cacheDir, key + artifactExt).delete();
+            new File(cacheDir, key + OUTPUT_EXT).delete();
+            return null;
+        }
+        return new File(cacheDir, key + artifactExt);
+    }
+
+    /**
+     * Aplica el límite de tamaño del cache
+     */
+    public synchronized void trim() {
+        enforceSizeLimit();
+        flushStats();
+    }
+
+    /**
+     * Escribe las estadísticas si hay consultas sin guardar
+     */
+    public synchronized void flushStats() {
+        if (unsavedLookups > 0) {
+            saveStats();
+        }
+    }
+
+    /**
+     * Elimina las entradas menos usadas recientemente hasta respetar el tamaño máximo
+     */
+    private void enforceSizeLimit() {
+        File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(artifactExt));
+        if (files == null) {
+            return;
+        }
+
+        long total = 0;
+        for (File file : files) {
+            total += file.length() + outputFileFor(file).length();
+        }
+
+        if (total <= maxBytes) {
+            return;
+        }
+
+        List<File> entries = new ArrayList<>(Arrays.asList(files));
+        entries.sort(Comparator.comparingLong(File::lastModified));
+
+        for (File library : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            File output = outputFileFor(library);
+            total -= library.length() + output.length();
+            library.delete();
+            output.delete();
+            Log.d(TAG, "Evicted cache entry: " + library.getName());
+        }
+    }
+
+    private File outputFileFor(File library) {
+        String name = library.getName();
+        return new File(cacheDir, name.substring(0, name.length() - artifactExt.length()) + OUTPUT_EXT);
+    }
+
+    /**
+     * Directorio del cache (allí se guardan también los grafos de dependencias)
+     */
+    public File getDirectory() {
+        return cacheDir;
+    }
+
+    /**
+     * Resumen de aciertos/fallos para mostrar en la consola
+     */
+    public synchronized String getStatsSummary() {
+        int total = hits + misses;
+        int ratio = total > 0 ? (hits * 100) / total : 0;
+        return "aciertos " + hits + ", fallos " + misses + " (" + ratio + "%)";
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    private void loadStats() {
+        File statsFile = new File(cacheDir, STATS_FILE);
+        if (!statsFile.exists()) {
+            return;
+        }
+        Properties props = new Properties();
+        try {
+            FileInputStream in = new FileInputStream(statsFile);
+            try {
+                props.load(in);
+            } finally {
+                in.close();
+            }
+            hits = Integer.parseInt(props.getProperty("hits", "0"));
+            misses = Integer.parseInt(props.getProperty("misses", "0"));
+        } catch (IOException | NumberFormatException e) {
+            Log.w(TAG, "No se pudieron leer las estadísticas del cache", e);
+        }
+    }
+
+    private void saveStats() {
+        unsavedLookups = 0;
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            return;
+        }
+        Properties props = new Properties();
+        props.setProperty("hits", String.valueOf(hits));
+        props.setProperty("misses", String.valueOf(misses));
+        try {
+            FileOutputStream out = new FileOutputStream(new File(cacheDir, STATS_FILE));
+            try {
+                props.store(out, null);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudieron guardar las estadísticas del cache", e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.mathsoft.cgraphicsapp;
+
+/**
+ * Opciones de una compilación: receptor de la salida, cancelación,
+ * medición de tiempos, perfil y, opcionalmente, el texto a compilar
+ */
+public class CompileOptions {
+
+    /** Receptor de líneas y diagnósticos de clang (puede ser null) */
+    public CompilerOutput.Listener listener;
+
+    /** Cancelación de la compilación (puede ser null) */
+    public CancellationToken cancellation;
+
+    /** Pasar -ftime-trace a clang e informar el tiempo por fase (omite los caches) */
+    public boolean timeTrace;
+
+    /** Perfil de compilación (flags de optimización y directorio de salida) */
+    public BuildProfile profile = BuildProfile.FAST;
+
+    /**
+     * Contenido del editor. Si no es null se compila este texto, pasado a clang
+     * por stdin, en lugar de leer el archivo (que puede estar guardándose aún)
+     */
+    public String sourceText;
+
+    public CompileOptions() {
+    }
+
+    public CompileOptions(CompilerOutput.Listener listener, CancellationToken cancellation) {
+        this.listener = listener;
+        this.cancellation = cancellation;
+    }
+
+    boolean isCancelled() {
+        return cancellation != null && cancellation.isCancelled();
+    }
+}
@@ -0,0 +1,199 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Planificador de compilaciones donde gana la más reciente.
+ *
+ * Las peticiones se agrupan por clave (normalmente la ruta del fuente). Una
+ * petición nueva cancela la anterior de la misma clave: si aún esperaba el
+ * debounce se descarta, y si ya estaba compilando se destruye su proceso de
+ * clang. Solo el resultado de la última petición llega al callback.
+ *
+ * Todos los métodos públicos deben llamarse desde el hilo principal.
+ */
+public class CompileScheduler {
+
+    private static final String TAG = "CompileScheduler";
+
+    // Espera para agrupar reinicios por cambios de archivo seguidos. Una petición
+    // explícita arranca enseguida (sin espera): si llega otra, cancela la que corre.
+    public static final long RESTART_DEBOUNCE_MS = 250;
+
+    // Cada compilación usa su propio directorio temporal (ScratchSpace) y los caches
+    // son seguros entre hilos, así que claves distintas (otro fuente, multi-ABI,
+    // proyecto) corren a la vez. La misma clave nunca corre dos veces: la nueva
+    // petición cancela la anterior. Pool chico: multi-ABI y proyectos ya reparten
+    // su trabajo entre los núcleos. Fuera del executor serie de AsyncTask para no
+    // bloquear las cargas de archivos.
+    private static final int COMPILE_THREADS = 2;
+    private static final Executor COMPILE_EXECUTOR = Executors.newFixedThreadPool(COMPILE_THREADS,
+        runnable -> new Thread(runnable, "compile"));
+
+    // Trabajo en segundo plano (release -O3): su propio hilo de baja prioridad, para
+    // que nunca ocupe un hilo del pool ni retrase una compilación que espera el usuario.
+    // clang hereda la prioridad del hilo que lo lanza.
+    private static final Executor BACKGROUND_EXECUTOR = 
+        BackgroundExecutors.newSingleThreadExecutor("compile-background");
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Slot> slots = new HashMap<>();
+
+    /**
+     * Trabajo de compilación ejecutado en segundo plano
+     */
+    public interface CompileTask {
+        NativeCompiler.CompilationResult run(CancellationToken cancellation);
+    }
+
+    /**
+     * Recibe el resultado de la petición más reciente en el hilo principal
+     */
+    public interface ResultCallback {
+        void onResult(NativeCompiler.CompilationResult result);
+    }
+
+    /**
+     * Programa una compilación, cancelando la anterior con la misma clave
+     * @param key Identificador del fuente o proyecto
+     * @param debounceMs Espera antes de arrancar, para agrupar ráfagas (0: arrancar ya)
+     * @param cancellation Cancelación de esta petición; el planificador la activa al reemplazarla
+     */
+    public void submit(String key, long debounceMs, CancellationToken cancellation,
+                       CompileTask task, ResultCallback callback) {
+        submit(key, debounceMs, cancellation, task, callback, COMPILE_EXECUTOR);
+    }
+
+    /**
+     * Programa una compilación de segundo plano en el hilo de baja prioridad,
+     * con las mismas reglas de reemplazo por clave que submit
+     */
+    public void submitBackground(String key, CancellationToken cancellation, CompileTask task,
+                                 ResultCallback callback) {
+        submit(key, 0, cancellation, task, callback, BACKGROUND_EXECUTOR);
+    }
+
+    private void submit(String key, long debounceMs, CancellationToken cancellation,
+                        CompileTask task, ResultCallback callback, Executor executor) {
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            slot = new Slot();
+            slots.put(key, slot);
+        }
+
+        // Reemplazar la petición anterior: descartar el debounce o destruir el proceso
+        if (slot.pending != null) {
+            mainHandler.removeCallbacks(slot.pending);
+            slot.pending = null;
+        }
+        if (slot.cancellation != null) {
+            Log.d(TAG, "Cancelling superseded compile: " + key);
+            slot.cancellation.cancel();
+        }
+
+        final Slot target = slot;
+        final int generation = ++slot.generation;
+        slot.cancellation = cancellation;
+        slot.pending = () -> {
+            target.pending = null;
+            new CompileAsyncTask(key, target, generation, cancellation, task, callback)
+                .executeOnExecutor(executor);
+        };
+        if (debounceMs > 0) {
+            mainHandler.postDelayed(slot.pending, debounceMs);
+        } else {
+            slot.pending.run();
+        }
+    }
+
+    /**
+     * Indica si hay una compilación pendiente o en curso para la clave
+     */
+    public boolean isActive(String key) {
+        Slot slot = slots.get(key);
+        return slot != null && slot.cancellation != null;
+    }
+
+    /**
+     * Cancela la compilación pendiente o en curso de una clave
+     */
+    public void cancel(String key) {
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            return;
+        }
+        if (slot.pending != null) {
+            mainHandler.removeCallbacks(slot.pending);
+            slot.pending = null;
+        }
+        if (slot.cancellation != null) {
+            slot.cancellation.cancel();
+            slot.cancellation = null;
+        }
+        slot.generation++;
+    }
+
+    /**
+     * Cancela todas las compilaciones pendientes o en curso
+     */
+    public void cancelAll() {
+        for (String key : slots.keySet()) {
+            cancel(key);
+        }
+    }
+
+    /**
+     * Estado por clave: generación actual, petición en espera y cancelación activa
+     */
+    private static class Slot {
+        int generation;
+        Runnable pending;
+        CancellationToken cancellation;
+    }
+
+    private static class CompileAsyncTask extends AsyncTask<Void, Void, NativeCompiler.CompilationResult> {
+        private final String key;
+        private final Slot slot;
+        private final int generation;
+        private final CancellationToken cancellation;
+        private final CompileTask task;
+        private final ResultCallback callback;
+
+        CompileAsyncTask(String key, Slot slot, int generation, CancellationToken cancellation,
+                         CompileTask task, ResultCallback callback) {
+            this.key = key;
+            this.slot = slot;
+            this.generation = generation;
+            this.cancellation = cancellation;
+            this.task = task;
+            this.callback = callback;
+        }
+
+        @Override
+        protected NativeCompiler.CompilationResult doInBackground(Void... voids) {
+            if (cancellation.isCancelled()) {
+                return null;
+            }
+            return task.run(cancellation);
+        }
+
+        @Override
+        protected void onPostExecute(NativeCompiler.CompilationResult result) {
+            // Solo se entrega el resultado de la petición más reciente
+            if (slot.generation != generation || result == null || result.isCancelled()) {
+                Log.d(TAG, "Dropping stale compile result: " + key);
+                return;
+            }
+            slot.cancellation = null;
+            callback.onResult(result);
+        }
+    }
+}
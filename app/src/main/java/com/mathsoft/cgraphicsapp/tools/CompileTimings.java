@@ -0,0 +1,120 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Historial persistente de tiempos de compilación medidos con -ftime-trace.
+ *
+ * Cada compilación agrega una línea JSON a compile_timings.jsonl con los
+ * tiempos por fase, de modo que se puedan comparar ediciones y flags.
+ * Solo se conservan los registros más recientes.
+ */
+public class CompileTimings {
+
+    private static final String TAG = "CompileTimings";
+    private static final String TIMINGS_FILE = "compile_timings.jsonl";
+    private static final int MAX_RECORDS = 500;
+
+    private final File timingsFile;
+
+    public CompileTimings(Context context) {
+        this.timingsFile = new File(context.getApplicationContext().getFilesDir(), TIMINGS_FILE);
+    }
+
+    /**
+     * Agrega un registro y devuelve la comparación con el anterior del mismo fuente
+     * @param sourceName Nombre del fuente o proyecto
+     * @param sourceHash Hash del contenido compilado
+     * @param flags Flags de generación de código usados
+     * @return texto con la diferencia respecto al registro anterior, o null si no hay
+     */
+    public synchronized String record(String sourceName, String sourceHash, List<String> flags,
+                                      TimeTrace trace) {
+        List<String> lines = readLines();
+        JSONObject previous = findLast(lines, sourceName);
+
+        JSONObject record = new JSONObject();
+        try {
+            record.put("time", System.currentTimeMillis());
+            record.put("source", sourceName);
+            record.put("hash", sourceHash);
+            record.put("flags", TextUtils.join(" ", flags));
+            record.put("frontendMs", trace.getFrontendMs());
+            record.put("optimizerMs", trace.getOptimizerMs());
+            record.put("codegenMs", trace.getCodegenMs());
+            record.put("linkMs", trace.getLinkMs());
+            record.put("totalMs", trace.getWallMs());
+        } catch (JSONException e) {
+            Log.e(TAG, "Error creando registro de tiempos", e);
+            return null;
+        }
+
+        lines.add(record.toString());
+        if (lines.size() > MAX_RECORDS) {
+            lines = new ArrayList<>(lines.subList(lines.size() - MAX_RECORDS, lines.size()));
+        }
+
+        try {
+            FileUtils.writeTextAtomic(timingsFile, TextUtils.join("\n", lines) + "\n");
+        } catch (IOException e) {
+            Log.e(TAG, "Error guardando tiempos de compilación", e);
+        }
+
+        return previous != null ? formatDelta(previous, trace) : null;
+    }
+
+    private List<String> readLines() {
+        List<String> lines = new ArrayList<>();
+        if (!timingsFile.exists()) {
+            return lines;
+        }
+        try {
+            for (String line : FileUtils.readText(timingsFile).split("\n")) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudo leer el historial de tiempos", e);
+        }
+        return lines;
+    }
+
+    private JSONObject findLast(List<String> lines, String sourceName) {
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            try {
+                JSONObject record = new JSONObject(lines.get(i));
+                if (sourceName.equals(record.optString("source"))) {
+                    return record;
+                }
+            } catch (JSONException e) {
+                // Línea dañada: se ignora
+            }
+        }
+        return null;
+    }
+
+    private String formatDelta(JSONObject previous, TimeTrace trace) {
+        StringBuilder delta = new StringBuilder("Respecto a la compilación anterior:");
+        appendDelta(delta, "frontend", trace.getFrontendMs() - previous.optLong("frontendMs"));
+        appendDelta(delta, "optimización", trace.getOptimizerMs() - previous.optLong("optimizerMs"));
+        appendDelta(delta, "codegen", trace.getCodegenMs() - previous.optLong("codegenMs"));
+        appendDelta(delta, "total", trace.getWallMs() - previous.optLong("totalMs"));
+        return delta.append("\n").toString();
+    }
+
+    private void appendDelta(StringBuilder delta, String label, long millis) {
+        delta.append(" ").append(label).append(" ").append(millis >= 0 ? "+" : "")
+             .append(millis).append(" ms");
+    }
+}
@@ -0,0 +1,191 @@
+package com.mathsoft.cgraphicsapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Salida de clang leída línea a línea mientras el proceso sigue corriendo.
+ *
+ * Cada línea se entrega al listener en cuanto llega y se interpreta como
+ * {@link Diagnostic}. La memoria está acotada: se conservan las primeras
+ * líneas (donde están los primeros errores) y una ventana con las últimas;
+ * las intermedias solo se cuentan. Las líneas muy largas se truncan.
+ */
+public class CompilerOutput {
+
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final int MAX_HEAD_LINES = 1000;
+    private static final int MAX_TAIL_LINES = 200;
+    private static final int MAX_DIAGNOSTICS = 200;
+
+    private final Listener listener;
+    private final List<String> head = new ArrayList<>();
+    private final ArrayDeque<String> tail = new ArrayDeque<>();
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private long droppedLines;
+    private int errorCount;
+    private int warningCount;
+    private Diagnostic firstError;
+
+    /**
+     * @param listener Receptor de líneas y diagnósticos (puede ser null)
+     */
+    public CompilerOutput(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Lee un stream hasta el final, procesando cada línea al llegar
+     */
+    public void consume(InputStream stream) throws IOException {
+        Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8);
+        try {
+            char[] buffer = new char[8192];
+            StringBuilder line = new StringBuilder();
+            boolean truncated = false;
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    char c = buffer[i];
+                    if (c == '\n') {
+                        appendLine(finishLine(line, truncated));
+                        line.setLength(0);
+                        truncated = false;
+                    } else if (c != '\r') {
+                        if (line.length() < MAX_LINE_LENGTH) {
+                            line.append(c);
+                        } else {
+                            truncated = true;
+                        }
+                    }
+                }
+            }
+            if (line.length() > 0) {
+                appendLine(finishLine(line, truncated));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private String finishLine(StringBuilder line, boolean truncated) {
+        return truncated ? line.append(" …").toString() : line.toString();
+    }
+
+    /**
+     * Agrega una línea a la salida (por ejemplo mensajes propios del compilador de la app)
+     */
+    public void appendLine(String line) {
+        append(line, true);
+    }
+
+    /**
+     * Agrega una línea que ya se mostró con {@link #streamLine}: se registra
+     * y sus diagnósticos se entregan, pero la línea no se vuelve a enviar
+     */
+    void appendStreamedLine(String line) {
+        append(line, false);
+    }
+
+    /**
+     * Muestra una línea provisional sin registrarla ni interpretarla
+     * como diagnóstico (ver SysrootRetry)
+     */
+    void streamLine(String line) {
+        if (listener != null) {
+            listener.onOutputLine(line);
+        }
+    }
+
+    private void append(String line, boolean stream) {
+        Diagnostic diagnostic = Diagnostic.parse(line);
+        boolean streamed;
+
+        synchronized (this) {
+            if (head.size() < MAX_HEAD_LINES) {
+                head.add(line);
+                streamed = true;
+            } else {
+                tail.addLast(line);
+                if (tail.size() > MAX_TAIL_LINES) {
+                    tail.removeFirst();
+                    droppedLines++;
+                }
+                streamed = false;
+            }
+
+            if (diagnostic != null) {
+                if (diagnostic.isError()) {
+                    errorCount++;
+                    if (firstError == null) {
+                        firstError = diagnostic;
+                    }
+                } else if (diagnostic.severity == Diagnostic.Severity.WARNING) {
+                    warningCount++;
+                }
+                if (diagnostics.size() < MAX_DIAGNOSTICS) {
+                    diagnostics.add(diagnostic);
+                } else {
+                    diagnostic = null;
+                }
+            }
+        }
+
+        if (listener != null) {
+            if (streamed && stream) {
+                listener.onOutputLine(line);
+            }
+            if (diagnostic != null) {
+                listener.onDiagnostic(diagnostic);
+            }
+        }
+    }
+
+    /**
+     * Texto acumulado, con un marcador donde se omitieron líneas
+     */
+    public synchronized String getText() {
+        StringBuilder text = new StringBuilder();
+        for (String line : head) {
+            text.append(line).append("\n");
+        }
+        if (droppedLines > 0) {
+            text.append("… (").append(droppedLines).append(" líneas omitidas) …\n");
+        }
+        for (String line : tail) {
+            text.append(line).append("\n");
+        }
+        return text.toString();
+    }
+
+    public synchronized List<Diagnostic> getDiagnostics() {
+        return new ArrayList<>(diagnostics);
+    }
+
+    public synchronized Diagnostic getFirstError() {
+        return firstError;
+    }
+
+    public synchronized int getErrorCount() {
+        return errorCount;
+    }
+
+    public synchronized int getWarningCount() {
+        return warningCount;
+    }
+
+    /**
+     * Recibe la salida del compilador mientras se produce.
+     * Se invoca desde el hilo que lee el proceso.
+     */
+    public interface Listener {
+        void onOutputLine(String line);
+        void onDiagnostic(Diagnostic diagnostic);
+    }
+}
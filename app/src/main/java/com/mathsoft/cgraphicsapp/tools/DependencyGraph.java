@@ -0,0 +1,231 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Grafo persistente de dependencias de headers, construido a partir de los
+ * depfiles (-MD/-MF) que genera clang.
+ *
+ * Para cada archivo fuente guarda los headers que realmente incluyó en su
+ * última compilación. El hash de contenido de esos headers forma parte de la
+ * clave de los caches, de modo que editar un header local recompila
+ * exactamente los fuentes que dependen de él. Los headers del toolchain
+ * (sysroot, PCH) se ignoran: ya están cubiertos por la identidad de clang.
+ *
+ * Formato del archivo: una línea por fuente, rutas separadas por tabulador,
+ * la primera es el fuente y el resto sus headers.
+ */
+public class DependencyGraph {
+
+    private static final String TAG = "DependencyGraph";
+    private static final String GRAPH_FILE = "deps.graph";
+
+    private final File graphFile;
+    private final List<String> ignoredRoots;
+    private final Map<String, List<String>> dependencies = new HashMap<>();
+    private final Map<String, String> contentHashes = new HashMap<>();
+    private final Map<String, String> contentStamps = new HashMap<>();
+    private boolean dirty;
+
+    /**
+     * @param directory Directorio de los artefactos donde se guarda el grafo
+     * @param ignoredRoots Directorios cuyos headers no se rastrean
+     */
+    public DependencyGraph(File directory, List<File> ignoredRoots) {
+        this.graphFile = new File(directory, GRAPH_FILE);
+        this.ignoredRoots = new ArrayList<>();
+        for (File root : ignoredRoots) {
+            this.ignoredRoots.add(root.getAbsolutePath() + File.separator);
+        }
+        load();
+    }
+
+    /**
+     * Hash de contenido de los headers registrados para un fuente.
+     * Si un header ya no existe se incluye un marcador, lo que fuerza la recompilación.
+     */
+    public synchronized String hashDependencies(File sourceFile) {
+        MessageDigest md = HashUtils.newDigest();
+        List<String> headers = dependencies.get(sourceFile.getAbsolutePath());
+        if (headers != null) {
+            for (String header : headers) {
+                HashUtils.update(md, header);
+                HashUtils.update(md, contentHash(new File(header)));
+            }
+        }
+        return HashUtils.toHex(md.digest());
+    }
+
+    /**
+     * Registra los headers de un fuente a partir del depfile generado por clang
+     * @return true si se pudo leer el depfile
+     */
+    public synchronized boolean update(File sourceFile, File depFile) {
+        List<String> parsed;
+        try {
+            parsed = parseDepfile(FileUtils.readText(depFile));
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudo leer el depfile: " + depFile.getAbsolutePath(), e);
+            return false;
+        }
+
+        String sourcePath = sourceFile.getAbsolutePath();
+        List<String> headers = new ArrayList<>();
+        for (String dependency : parsed) {
+            String path = new File(dependency).getAbsolutePath();
+            if (!path.equals(sourcePath) && !isIgnored(path) && !headers.contains(path)) {
+                headers.add(path);
+            }
+        }
+        Collections.sort(headers);
+
+        List<String> previous = dependencies.put(sourcePath, headers);
+        if (!headers.equals(previous)) {
+            dirty = true;
+        }
+        return true;
+    }
+
+    /**
+     * Headers registrados para un fuente
+     */
+    public synchronized List<String> getHeaders(File sourceFile) {
+        List<String> headers = dependencies.get(sourceFile.getAbsolutePath());
+        return headers != null ? new ArrayList<>(headers) : new ArrayList<>();
+    }
+
+    /**
+     * Persiste el grafo si cambió
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, List<String>> entry : dependencies.entrySet()) {
+            content.append(entry.getKey());
+            for (String header : entry.getValue()) {
+                content.append('\t').append(header);
+            }
+            content.append('\n');
+        }
+
+        File dir = graphFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Failed to create graph directory: " + dir.getAbsolutePath());
+            return;
+        }
+
+        try {
+            FileUtils.writeTextAtomic(graphFile, content.toString());
+            dirty = false;
+        } catch (IOException e) {
+            Log.e(TAG, "Error guardando grafo de dependencias", e);
+        }
+    }
+
+    private void load() {
+        if (!graphFile.exists()) {
+            return;
+        }
+        try {
+            for (String line : FileUtils.readText(graphFile).split("\n")) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] parts = line.split("\t");
+                List<String> headers = new ArrayList<>();
+                for (int i = 1; i < parts.length; i++) {
+                    headers.add(parts[i]);
+                }
+                dependencies.put(parts[0], headers);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudo leer el grafo de dependencias", e);
+        }
+    }
+
+    private boolean isIgnored(String path) {
+        for (String root : ignoredRoots) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hash del contenido de un header, memorizado por tamaño y fecha de modificación
+     */
+    private String contentHash(File header) {
+        if (!header.exists()) {
+            return "missing";
+        }
+
+        String path = header.getAbsolutePath();
+        String stamp = header.length() + ":" + header.lastModified();
+        if (stamp.equals(contentStamps.get(path))) {
+            return contentHashes.get(path);
+        }
+
+        try {
+            String hash = HashUtils.sha256Hex(header);
+            contentHashes.put(path, hash);
+            contentStamps.put(path, stamp);
+            return hash;
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudo leer el header: " + path, e);
+            return "unreadable";
+        }
+    }
+
+    /**
+     * Extrae las dependencias de un depfile con sintaxis de Makefile
+     * ("objetivo: dep1 dep2 \" con espacios escapados como "\ ")
+     */
+    static List<String> parseDepfile(String content) {
+        List<String> result = new ArrayList<>();
+        String text = content.replace("\\\r\n", " ").replace("\\\n", " ");
+
+        int colon = text.indexOf(": ");
+        if (colon < 0) {
+            colon = text.indexOf(":\n");
+        }
+        if (colon < 0) {
+            return result;
+        }
+
+        StringBuilder current = new StringBuilder();
+        for (int i = colon + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length() && text.charAt(i + 1) == ' ') {
+                current.append(' ');
+                i++;
+            } else if (c == '$' && i + 1 < text.length() && text.charAt(i + 1) == '$') {
+                current.append('$');
+                i++;
+            } else if (Character.isWhitespace(c)) {
+                if (current.length() > 0) {
+                    result.add(current.toString());
+                    current.setLength(0);
+                }
+            } else {
+                current.append(c);
+            }
+        }
+        if (current.length() > 0) {
+            result.add(current.toString());
+        }
+        return result;
+    }
+}
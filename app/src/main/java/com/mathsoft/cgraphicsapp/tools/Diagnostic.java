@@ -0,0 +1,91 @@
+package com.mathsoft.cgraphicsapp;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Diagnóstico de clang (error, warning o nota) extraído de una línea de salida
+ * con el formato "archivo:línea:columna: severidad: mensaje"
+ */
+public class Diagnostic {
+
+    public enum Severity {
+        FATAL,
+        ERROR,
+        WARNING,
+        NOTE
+    }
+
+    private static final Pattern DIAGNOSTIC_PATTERN = Pattern.compile(
+        "^(.+?):(\\d+):(\\d+): (fatal error|error|warning|note): (.*)$");
+
+    public final String file;
+    public final int line;
+    public final int column;
+    public final Severity severity;
+    public final String message;
+
+    public Diagnostic(String file, int line, int column, Severity severity, String message) {
+        this.file = file;
+        this.line = line;
+        this.column = column;
+        this.severity = severity;
+        this.message = message;
+    }
+
+    /**
+     * Interpreta una línea de salida de clang
+     * @return el diagnóstico, o null si la línea no tiene formato de diagnóstico
+     */
+    public static Diagnostic parse(String outputLine) {
+        Matcher matcher = DIAGNOSTIC_PATTERN.matcher(outputLine);
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        int line;
+        int column;
+        try {
+            line = Integer.parseInt(matcher.group(2));
+            column = Integer.parseInt(matcher.group(3));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        return new Diagnostic(matcher.group(1), line, column,
+                              parseSeverity(matcher.group(4)), matcher.group(5));
+    }
+
+    private static Severity parseSeverity(String text) {
+        switch (text) {
+            case "fatal error":
+                return Severity.FATAL;
+            case "error":
+                return Severity.ERROR;
+            case "warning":
+                return Severity.WARNING;
+            default:
+                return Severity.NOTE;
+        }
+    }
+
+    /**
+     * Indica si el diagnóstico impide la compilación
+     */
+    public boolean isError() {
+        return severity == Severity.ERROR || severity == Severity.FATAL;
+    }
+
+    /**
+     * Nombre del archivo sin la ruta
+     */
+    public String getFileName() {
+        int slash = file.lastIndexOf('/');
+        return slash >= 0 ? file.substring(slash + 1) : file;
+    }
+
+    @Override
+    public String toString() {
+        return getFileName() + ":" + line + ":" + column + ": " + message;
+    }
+}
@@ -21,6 +21,8 @@ public class FileChangeDetector {
     private Uri monitoredUri;
     private ContentResolver contentResolver;
     private String lastHash;
+    // Hash del contenido que está escribiendo la propia app: no cuenta como cambio externo
+    private String expectedHash;
     private boolean isMonitoring;
     private Handler handler;
     private Runnable checkRunnable;
@@ -88,6 +90,20 @@ public class FileChangeDetector {
         contentResolver = null;
         listener = null;
         lastHash = null;
+        expectedHash = null;
+    }
+
+    /**
+     * Avisa que la app va a escribir este contenido en el archivo, para que
+     * al verlo cambiar no se lo reporte como una modificación externa
+     */
+    public void expectContent(byte[] content) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            expectedHash = toHex(md.digest(content));
+        } catch (Exception e) {
+            Log.e(TAG, "Error calculando MD5 del contenido guardado", e);
+        }
     }
 
     /**
@@ -108,6 +124,13 @@ public class FileChangeDetector {
             return;
         }
         
+        // La escritura de la propia app: se adopta el hash sin notificar
+        if (currentHash.equals(expectedHash)) {
+            lastHash = currentHash;
+            expectedHash = null;
+            return;
+        }
+
         // Comparar con hash anterior
         if (!currentHash.equals(lastHash)) {
             Log.d(TAG, "Hash cambió de " + lastHash + " a " + currentHash);
@@ -150,19 +173,7 @@ public class FileChangeDetector {
                 md.update(buffer, 0, bytesRead);
             }
             
-            // Convertir hash a hexadecimal
-            byte[] digest = md.digest();
-            StringBuilder hexString = new StringBuilder();
-            
-            for (byte b : digest) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-            
-            return hexString.toString();
+            return toHex(md.digest());
             
         } catch (Exception e) {
             Log.e(TAG, "Error calculando MD5 para URI: " + uri, e);
@@ -178,6 +189,21 @@ public class FileChangeDetector {
         }
     }
 
+    /**
+     * Convierte un hash a hexadecimal
+     */
+    private static String toHex(byte[] digest) {
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : digest) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) {
+                hexString.append('0');
+            }
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+
     /**
      * Obtiene el URI actualmente monitoreado
      */
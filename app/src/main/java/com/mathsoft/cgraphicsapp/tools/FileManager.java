@@ -13,10 +13,17 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class FileManager {
     private static final String TAG = "FileManager";
     private static final int REQUEST_CODE_PICK_FILE = 200;
+    public static final int REQUEST_CODE_PICK_PROJECT = 201;
+    private static final String PROJECT_DIR = "project";
 
     private Activity activity;
     private File selectedSourceFile;
@@ -24,6 +31,12 @@ public class FileManager {
     private String selectedFileName;
     private boolean fileHasChanged;
 
+    // Proyecto cargado: se recompila sin volver a elegir los archivos
+    private List<Uri> projectUris;
+    private String projectName;
+    // Tamaño y fecha de cada archivo del proyecto cuando se copió (por URI)
+    private final Map<String, String> projectSignatures = new HashMap<>();
+
     public interface FileLoadCallback {
         void onFileLoaded(File file, String content);
         void onFileLoadError(String error);
@@ -33,6 +46,16 @@ public class FileManager {
         void onFileSaved(boolean success);
     }
 
+    public interface ProjectLoadCallback {
+        /**
+         * @param sourceFiles Los .c del proyecto
+         * @param copiedFiles Archivos que se copiaron (todos al cargar; al
+         *                    recompilar, solo los que cambiaron)
+         */
+        void onProjectLoaded(List<File> sourceFiles, int copiedFiles);
+        void onProjectLoadError(String error);
+    }
+
     public FileManager(Activity activity) {
         this.activity = activity;
     }
@@ -46,6 +69,160 @@ public class FileManager {
         activity.startActivityForResult(intent, REQUEST_CODE_PICK_FILE);
     }
 
+    /**
+     * Abre el selector para elegir varios archivos (.c y .h) de un proyecto
+     */
+    public void openProjectPicker() {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        String[] mimeTypes = {"text/plain", "text/x-c", "text/x-csrc", "text/x-chdr"};
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, mimeTypes);
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+        activity.startActivityForResult(intent, REQUEST_CODE_PICK_PROJECT);
+    }
+
+    /**
+     * Copia los archivos del proyecto a un directorio del cache, de modo que
+     * los #include "..." entre ellos se resuelvan, y devuelve los .c.
+     * El proyecto queda seleccionado para recompilarlo con reloadProject.
+     */
+    public void loadProject(List<Uri> uris, ProjectLoadCallback callback) {
+        setProjectUris(new ArrayList<>(uris));
+        projectSignatures.clear();
+        syncProject(true, callback);
+    }
+
+    /**
+     * Vuelve a copiar solo los archivos del proyecto que cambiaron desde la
+     * última copia (por tamaño y fecha de modificación), sin abrir el selector
+     */
+    public void reloadProject(ProjectLoadCallback callback) {
+        if (projectUris == null) {
+            callback.onProjectLoadError("No hay ningún proyecto cargado");
+            return;
+        }
+        syncProject(false, callback);
+    }
+
+    private void syncProject(boolean fullCopy, ProjectLoadCallback callback) {
+        List<Uri> uris = new ArrayList<>(projectUris);
+        String name = projectName;
+        Map<String, String> previous = new HashMap<>(projectSignatures);
+        new AsyncTask<Void, Void, List<File>>() {
+            private final Map<String, String> signatures = new HashMap<>();
+            private int copied;
+
+            @Override
+            protected List<File> doInBackground(Void... voids) {
+                // Un directorio por proyecto: otro proyecto no pisa sus archivos
+                File projectDir = new File(new File(activity.getCacheDir(), PROJECT_DIR), name);
+                if (projectDir.exists()) {
+                    if (fullCopy) {
+                        File[] old = projectDir.listFiles();
+                        if (old != null) {
+                            for (File file : old) file.delete();
+                        }
+                    }
+                } else if (!projectDir.mkdirs()) {
+                    return null;
+                }
+
+                List<File> sources = new ArrayList<>();
+                for (Uri uri : uris) {
+                    String key = uri.toString();
+                    String signature = getSignature(uri);
+                    File file = new File(projectDir, getFileNameFromUri(uri));
+                    // Sin tamaño ni fecha (proveedor que no los informa) siempre se copia
+                    if (fullCopy || signature == null || !file.exists()
+                            || !signature.equals(previous.get(key))) {
+                        file = copyUriToDir(uri, projectDir);
+                        if (file == null) return null;
+                        copied++;
+                    }
+                    if (signature != null) {
+                        signatures.put(key, signature);
+                    }
+                    if (file.getName().endsWith(".c")) sources.add(file);
+                }
+                Collections.sort(sources);
+                Log.d(TAG, "Project sync: " + copied + " of " + uris.size() + " files copied");
+                return sources;
+            }
+
+            @Override
+            protected void onPostExecute(List<File> sources) {
+                if (sources == null) {
+                    callback.onProjectLoadError("Error copiando archivos del proyecto");
+                } else if (sources.isEmpty()) {
+                    callback.onProjectLoadError("El proyecto no contiene archivos .c");
+                } else {
+                    projectSignatures.putAll(signatures);
+                    callback.onProjectLoaded(sources, copied);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Nombre del proyecto: el directorio de los archivos elegidos según el id
+     * del documento ("primary:src/demo/main.c" → "demo"). Si el proveedor no
+     * usa rutas, un nombre derivado de los URI. Solo letras, números, '_' y
+     * '-', porque se usa en el nombre de la librería y en el del directorio.
+     */
+    private static String getProjectName(List<Uri> uris) {
+        for (Uri uri : uris) {
+            String documentId = uri.getLastPathSegment();
+            if (documentId == null) continue;
+            int slash = documentId.lastIndexOf('/');
+            if (slash <= 0) continue;
+            String dir = documentId.substring(0, slash);
+            dir = dir.substring(Math.max(dir.lastIndexOf('/'), dir.lastIndexOf(':')) + 1);
+            String name = dir.replaceAll("[^A-Za-z0-9_-]", "_");
+            if (!name.isEmpty()) {
+                return name;
+            }
+        }
+        List<String> keys = new ArrayList<>();
+        for (Uri uri : uris) {
+            keys.add(uri.toString());
+        }
+        Collections.sort(keys);
+        return "project_" + Integer.toHexString(keys.hashCode());
+    }
+
+    /**
+     * Tamaño y fecha de modificación de un documento, o null si el proveedor no los informa
+     */
+    private String getSignature(Uri uri) {
+        String[] projection = {
+            android.provider.OpenableColumns.SIZE,
+            android.provider.DocumentsContract.Document.COLUMN_LAST_MODIFIED
+        };
+        android.database.Cursor cursor = null;
+        try {
+            cursor = activity.getContentResolver().query(uri, projection, null, null, null);
+            if (cursor == null || !cursor.moveToFirst()) {
+                return null;
+            }
+            int sizeIndex = cursor.getColumnIndex(android.provider.OpenableColumns.SIZE);
+            int modifiedIndex = cursor.getColumnIndex(
+                android.provider.DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+            if (sizeIndex < 0 || modifiedIndex < 0 || cursor.isNull(sizeIndex) 
+                    || cursor.isNull(modifiedIndex)) {
+                return null;
+            }
+            return cursor.getLong(sizeIndex) + ":" + cursor.getLong(modifiedIndex);
+        } catch (Exception e) {
+            Log.w(TAG, "No se pudo consultar el documento: " + uri, e);
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
     public void loadFile(Uri uri, FileLoadCallback callback) {
         selectedSourceUri = uri;
         
@@ -136,7 +313,7 @@ public class FileManager {
      * Guarda el contenido tanto en el archivo de cache como en el almacenamiento externo
      */
     public void saveContent(String content, FileSaveCallback callback) {
-        if (selectedSourceFile == null || selectedSourceUri == null) {
+        if (!canSaveContent()) {
             callback.onFileSaved(false);
             return;
         }
@@ -211,12 +388,16 @@ public class FileManager {
     }
 
     private File copyUriToCache(Uri uri) {
+        return copyUriToDir(uri, activity.getCacheDir());
+    }
+
+    private File copyUriToDir(Uri uri, File dir) {
         try {
             InputStream inputStream = activity.getContentResolver().openInputStream(uri);
             if (inputStream == null) return null;
 
             String fileName = getFileNameFromUri(uri);
-            File tempFile = new File(activity.getCacheDir(), fileName);
+            File tempFile = new File(dir, fileName);
             OutputStream outputStream = new FileOutputStream(tempFile);
 
             byte[] buffer = new byte[8192];
@@ -288,11 +469,19 @@ public class FileManager {
     public Uri getSelectedSourceUri() { return selectedSourceUri; }
     public String getSelectedFileName() { return selectedFileName; }
     public boolean hasFileChanged() { return fileHasChanged; }
+    public boolean hasProject() { return projectUris != null; }
+    // saveContent solo escribe si hay un archivo abierto con su URI
+    public boolean canSaveContent() { return selectedSourceFile != null && selectedSourceUri != null; }
+    public List<Uri> getProjectUris() { return projectUris; }
     
     // Setters (para restaurar estado después de rotación)
     public void setSelectedSourceUri(Uri uri) { this.selectedSourceUri = uri; }
     public void setSelectedFileName(String name) { this.selectedFileName = name; }
     public void setFileChanged(boolean changed) { this.fileHasChanged = changed; }
+    public void setProjectUris(List<Uri> uris) {
+        this.projectUris = uris;
+        this.projectName = getProjectName(uris);
+    }
     public void resetChangeFlag() { this.fileHasChanged = false; }
 
     private static class LoadResult {
@@ -0,0 +1,257 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.content.res.AssetFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Operaciones de archivos compartidas por el compilador y sus caches
+ */
+public final class FileUtils {
+
+    // transferTo por tramos, para que el progreso avance durante los archivos grandes
+    private static final long TRANSFER_CHUNK_SIZE = 8L * 1024 * 1024;
+
+    private FileUtils() {
+    }
+
+    /**
+     * Copia un archivo usando FileChannel (sin buffers intermedios en Java)
+     */
+    public static void copyFile(File source, File dest) throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(dest);
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = out.getChannel();
+            long size = inChannel.size();
+            long position = 0;
+            while (position < size) {
+                position += inChannel.transferTo(position, size - position, outChannel);
+            }
+        } finally {
+            in.close();
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Copia un archivo a un temporal junto al destino y lo renombra,
+     * de modo que los lectores nunca vean un archivo a medio escribir
+     */
+    public static void copyFileAtomic(File source, File dest) throws IOException {
+        File tmp = createTempSibling(dest);
+        try {
+            copyFile(source, tmp);
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(dest)) {
+            tmp.delete();
+            throw new IOException("No se pudo renombrar " + tmp + " a " + dest);
+        }
+    }
+
+    /**
+     * Temporal con nombre único junto al destino: dos escritores del mismo
+     * archivo (por ejemplo dos instancias del cache) no se pisan el temporal
+     */
+    private static File createTempSibling(File dest) throws IOException {
+        // createTempFile exige un prefijo de al menos 3 caracteres
+        String prefix = dest.getName().length() >= 3 ? dest.getName() : dest.getName() + "___";
+        return File.createTempFile(prefix, ".tmp", dest.getParentFile());
+    }
+
+    /**
+     * Crea un hard link al archivo, o una copia si el sistema de archivos no lo
+     * permite. El destino sigue existiendo aunque se borre el original.
+     */
+    public static void linkOrCopy(File source, File dest) throws IOException {
+        try {
+            Os.link(source.getAbsolutePath(), dest.getAbsolutePath());
+        } catch (ErrnoException e) {
+            copyFile(source, dest);
+        }
+    }
+
+    /**
+     * Escribe el resto de un stream en un archivo (sin cerrar el stream)
+     * @param buffer Buffer del hilo que escribe
+     * @param digest Digest que se actualiza con el contenido escrito, o null
+     * @param progress Contador de bytes que se incrementa a medida que se escribe, o null
+     * @return bytes escritos
+     */
+    public static long writeStream(InputStream in, File dest, byte[] buffer, MessageDigest digest,
+                                   AtomicLong progress) throws IOException {
+        long total = 0;
+        FileOutputStream out = new FileOutputStream(dest);
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                if (digest != null) {
+                    digest.update(buffer, 0, read);
+                }
+                if (progress != null) {
+                    progress.addAndGet(read);
+                }
+                total += read;
+            }
+        } finally {
+            out.close();
+        }
+        return total;
+    }
+
+    /**
+     * Copia un asset guardado sin comprimir en el APK con FileChannel.transferTo:
+     * el kernel copia del APK al destino sin pasar por buffers en Java
+     * @param asset Descriptor de AssetManager.openFd (se cierra al terminar)
+     * @param progress Contador de bytes que se incrementa a medida que se escribe, o null
+     * @return bytes escritos
+     */
+    public static long writeAsset(AssetFileDescriptor asset, File dest, AtomicLong progress)
+            throws IOException {
+        try {
+            // Canal sobre el descriptor del APK completo, no asset.createInputStream():
+            // desde API 34 ese canal ya suma el desplazamiento de inicio
+            return writeRange(asset.getFileDescriptor(), asset.getStartOffset(), asset.getLength(),
+                              dest, progress);
+        } finally {
+            asset.close();
+        }
+    }
+
+    /**
+     * Copia un tramo de un archivo abierto con transferTo
+     * @param start Posición absoluta del primer byte dentro del archivo
+     */
+    static long writeRange(FileDescriptor source, long start, long length, File dest,
+                           AtomicLong progress) throws IOException {
+        // El descriptor es del llamador: cerrar este stream no lo cierra en Android
+        FileInputStream in = new FileInputStream(source);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(dest);
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = out.getChannel();
+            long position = 0;
+            while (position < length) {
+                long count = inChannel.transferTo(start + position,
+                    Math.min(TRANSFER_CHUNK_SIZE, length - position), outChannel);
+                if (count <= 0) {
+                    throw new IOException("Copia incompleta de " + dest.getName());
+                }
+                position += count;
+                if (progress != null) {
+                    progress.addAndGet(count);
+                }
+            }
+            return position;
+        } finally {
+            in.close();
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Nombre de un fuente sin la extensión .c final ("my.core.c" → "my.core");
+     * otros nombres se devuelven tal cual
+     */
+    public static String getBaseName(File sourceFile) {
+        String name = sourceFile.getName();
+        return name.endsWith(".c") ? name.substring(0, name.lastIndexOf('.')) : name;
+    }
+
+    /**
+     * Lee un archivo de texto completo en UTF-8
+     */
+    public static String readText(File file) throws IOException {
+        return new String(readBytes(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lee un archivo completo en memoria
+     */
+    public static byte[] readBytes(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return readBytes(in, (int) Math.max(0, file.length()));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Lee un stream completo en UTF-8 (no lo cierra)
+     */
+    public static String readText(InputStream in) throws IOException {
+        return new String(readBytes(in, 0), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(InputStream in, int sizeHint) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, sizeHint));
+        byte[] buffer = new byte[65536];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Elimina recursivamente un directorio y su contenido
+     * @return true si se eliminó el archivo o directorio raíz
+     */
+    public static boolean deleteRecursive(File fileOrDirectory) {
+        if (fileOrDirectory.isDirectory()) {
+            File[] children = fileOrDirectory.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    deleteRecursive(child);
+                }
+            }
+        }
+        return fileOrDirectory.delete();
+    }
+
+    /**
+     * Escribe un archivo de texto en UTF-8 de forma atómica (temporal + rename)
+     */
+    public static void writeTextAtomic(File file, String content) throws IOException {
+        File tmp = createTempSibling(file);
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(content.getBytes(StandardCharsets.UTF_8));
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("No se pudo renombrar " + tmp + " a " + file);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.mathsoft.cgraphicsapp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utilidades de hashing (SHA-256) para caches e índices del compilador
+ */
+public final class HashUtils {
+
+    private HashUtils() {
+    }
+
+    /**
+     * Crea un MessageDigest SHA-256
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 está garantizado en todas las versiones de Android
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * Actualiza el digest con un String y un separador, para que
+     * ("ab", "c") y ("a", "bc") no produzcan el mismo hash
+     */
+    public static void update(MessageDigest md, String value) {
+        md.update(value.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+    }
+
+    /**
+     * Actualiza el digest con el contenido de un archivo
+     */
+    public static void update(MessageDigest md, File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * SHA-256 de un arreglo de bytes en hexadecimal
+     */
+    public static String sha256Hex(byte[] data) {
+        MessageDigest md = newDigest();
+        md.update(data);
+        return toHex(md.digest());
+    }
+
+    /**
+     * SHA-256 del contenido de un archivo en hexadecimal
+     */
+    public static String sha256Hex(File file) throws IOException {
+        MessageDigest md = newDigest();
+        update(md, file);
+        return toHex(md.digest());
+    }
+
+    /**
+     * Convierte un digest a hexadecimal
+     */
+    public static String toHex(byte[] digest) {
+        StringBuilder hexString = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) {
+                hexString.append('0');
+            }
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+}
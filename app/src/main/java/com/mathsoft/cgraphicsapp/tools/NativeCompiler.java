@@ -1,186 +1,946 @@
 package com.mathsoft.cgraphicsapp;
 
 import android.content.Context;
-import android.os.Build;
 import android.os.Environment;
+import android.text.TextUtils;
 import android.util.Log;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class NativeCompiler {
 
     private static final String TAG = "NativeCompiler";
+    private static ExecutorService compilePool;
+
+    // Exportación a /mis_so/ con baja prioridad, fuera del camino de ejecución
+    private static final ExecutorService EXPORT_EXECUTOR = 
+        BackgroundExecutors.newSingleThreadExecutor("artifact-export");
+
     private final Context context;
     private final ClangCompilerManager compilerManager;
+    private final CompileCache compileCache;
+    private final CompileCache objectCache;
+    private final PrecompiledHeader precompiledHeader;
+    private final DependencyGraph dependencyGraph;
+    private final DependencyGraph objectDependencyGraph;
+    private final CompileTimings compileTimings;
+    private final ScratchSpace scratchSpace;
+    private boolean usePrecompiledHeader = true;
 
     public NativeCompiler(Context context) {
         this.context = context.getApplicationContext();
         this.compilerManager = new ClangCompilerManager(context);
+        this.compileCache = new CompileCache(context);
+        this.objectCache = CompileCache.forObjects(context);
+        this.precompiledHeader = new PrecompiledHeader(context);
+
+        // Los headers del toolchain y del PCH no se rastrean en los grafos
+        List<File> ignoredRoots = new ArrayList<>();
+        ignoredRoots.add(compilerManager.getCompilerDirectory());
+        ignoredRoots.add(precompiledHeader.getRootDirectory());
+        this.dependencyGraph = new DependencyGraph(compileCache.getDirectory(), ignoredRoots);
+        this.objectDependencyGraph = new DependencyGraph(objectCache.getDirectory(), ignoredRoots);
+        this.compileTimings = new CompileTimings(context);
+        this.scratchSpace = new ScratchSpace(context);
+    }
+
+    /**
+     * Habilita o deshabilita la inyección automática del encabezado precompilado
+     */
+    public void setPrecompiledHeaderEnabled(boolean enabled) {
+        this.usePrecompiledHeader = enabled;
+    }
+
+    /**
+     * Copia una librería del almacén interno a /mis_so/ sin bloquear la compilación
+     */
+    private void exportInBackground(File library, String source, BuildProfile profile) {
+        EXPORT_EXECUTOR.execute(() -> {
+            ArtifactStore external = getArtifactStore(true);
+            if (external == null) {
+                return;
+            }
+            try {
+                File exported = external.addCopy(library, getExportName(library), source, profile);
+                Log.d(TAG, "Exported artifact: " + exported.getAbsolutePath());
+            } catch (IOException e) {
+                Log.e(TAG, "Error exporting artifact to external storage", e);
+            }
+        });
+    }
+
+    /**
+     * Nombre base de una librería del almacén, sin el sufijo del hash
+     */
+    private String getExportName(File library) {
+        String name = library.getName();
+        int suffix = name.lastIndexOf('_');
+        return suffix > 0 ? name.substring(0, suffix) + ".so" : name;
+    }
+
+    /**
+     * Cambia la cuota de tamaño del almacén de librerías
+     * @param saveToExternalStorage true para el almacén de /mis_so/
+     */
+    public void setArtifactQuota(boolean saveToExternalStorage, long bytes) {
+        ArtifactStore store = getArtifactStore(saveToExternalStorage);
+        if (store != null) {
+            store.setQuota(bytes);
+        }
     }
 
     /**
      * Compila un archivo .c a .so usando Clang
      */
     public CompilationResult compile(File sourceFile, String outputName, boolean saveToExternalStorage) {
-        if (!compilerManager.isCompilerInstalled()) {
-            return new CompilationResult(false, "Compilador no instalado", "", null);
+        return compile(sourceFile, outputName, saveToExternalStorage, new CompileOptions());
+    }
+
+    /**
+     * Compila un archivo .c a .so entregando la salida de clang mientras se produce
+     * @param options Receptor de la salida y cancelación
+     */
+    public CompilationResult compile(File sourceFile, String outputName, boolean saveToExternalStorage,
+                                     CompileOptions options) {
+        CompileSetup setup = new CompileSetup();
+        // Medición del efecto de la precarga: el estado se toma antes de compilar
+        String prewarmState = ToolchainPrewarmer.getCompileStartState();
+        long start = System.currentTimeMillis();
+        try {
+            CompilationResult result = compile(sourceFile, outputName, saveToExternalStorage, 
+                                               options, setup);
+            if (result.isSuccess() && !result.isFromCache()) {
+                ToolchainPrewarmer.recordFirstCompile(context, System.currentTimeMillis() - start,
+                    prewarmState);
+            }
+            return storeArtifact(result, saveToExternalStorage, sourceFile.getAbsolutePath(), 
+                                 options.profile);
+        } finally {
+            // El directorio del trabajo se borra en segundo plano
+            scratchSpace.release(setup.tmpDir);
         }
+    }
 
-        if (!sourceFile.exists() || !sourceFile.canRead()) {
+    private CompilationResult compile(File sourceFile, String outputName, boolean saveToExternalStorage,
+                                      CompileOptions options, CompileSetup setup) {
+        boolean fromBuffer = options.sourceText != null;
+        if (!fromBuffer && (!sourceFile.exists() || !sourceFile.canRead())) {
             return new CompilationResult(false, "No se puede leer el archivo fuente", "", null);
         }
 
-        File compilerDir = compilerManager.getCompilerDirectory();
-        
-        // Buscar el binario correcto de clang
-        File clangBinary = findClangBinary(compilerDir);
-        
-        if (clangBinary == null || !clangBinary.exists()) {
-            String error = "Binario clang no encontrado en: " + 
-                          new File(compilerDir, "bin").getAbsolutePath();
-            return new CompilationResult(false, error, "", null);
+        CompilationResult error = prepareCompilation(outputName, saveToExternalStorage, 
+                                                     options.profile, setup);
+        if (error != null) {
+            return error;
         }
 
-        Log.d(TAG, "Using clang binary: " + clangBinary.getAbsolutePath());
+        File compilerDir = setup.compilerDir;
+        File clangBinary = setup.clangBinary;
+        File tmpDir = setup.tmpDir;
+        File outputFile = setup.outputFile;
 
-        // Preparar directorio temporal
-        File tmpDir = prepareTempDirectory();
-        if (tmpDir == null) {
-            return new CompilationResult(false, "No se pudo crear directorio temporal", "", null);
+        byte[] sourceBytes;
+        if (fromBuffer) {
+            sourceBytes = options.sourceText.getBytes(StandardCharsets.UTF_8);
+        } else {
+            try {
+                sourceBytes = FileUtils.readBytes(sourceFile);
+            } catch (IOException e) {
+                return new CompilationResult(false, "No se puede leer el archivo fuente", 
+                    e.getMessage(), null);
+            }
         }
 
-        // Preparar archivo de salida
-        File outputFile = prepareOutputFile(outputName, saveToExternalStorage);
-        
-        if (outputFile == null) {
-            return new CompilationResult(false, 
-                "No se pudo crear el directorio de salida. " +
-                "Verifica los permisos de almacenamiento.", "", null);
-        }
+        // Encabezado precompilado de GLES/EGL/android (solo si el fuente los usa)
+        File pchFile = obtainPrecompiledHeader(setup, sourceBytes, options.cancellation);
 
-        // IMPORTANTE: Eliminar archivo .so anterior si existe
-        if (outputFile.exists()) {
-            Log.d(TAG, "Eliminando .so anterior: " + outputFile.getAbsolutePath());
-            if (outputFile.delete()) {
-                Log.d(TAG, "Archivo anterior eliminado exitosamente");
-            } else {
-                Log.w(TAG, "No se pudo eliminar el archivo anterior");
-            }
-        }
+        // Depfile con los headers incluidos
+        File depFile = prepareDepFile(tmpDir, "library.d");
 
         // Construir comando de compilación
-        List<String> command = buildCompileCommand(clangBinary, compilerDir, sourceFile, outputFile);
+        List<String> command = buildCompileCommand(clangBinary, compilerDir, sourceFile, 
+                                                   outputFile, pchFile, depFile, setup.profile,
+                                                   setup.targetTriple);
+
+        // Texto del editor: clang lo lee por stdin, sin esperar a que se guarde
+        if (fromBuffer) {
+            setup.stdin = useStdinSource(command, sourceFile, sourceBytes);
+            sourceBytes = setup.stdin;
+        }
+
+        // Traza de tiempos: se mide una compilación real, sin pasar por el cache
+        File traceDir = options.timeTrace ? prepareTraceDirectory(tmpDir, "trace") : null;
+        if (traceDir != null) {
+            addTimeTraceFlags(command, traceDir);
+            return compileWithTimeTrace(sourceFile, sourceBytes, command, setup, traceDir, 
+                                        depFile, options);
+        }
 
         Log.d(TAG, "Compile command: " + command.toString());
         Log.d(TAG, "TMPDIR: " + tmpDir.getAbsolutePath());
         Log.d(TAG, "Output file: " + outputFile.getAbsolutePath());
 
+        CompilationResult result = compileCached(sourceFile, sourceBytes, command, setup, 
+                                                 depFile, options);
+        if (!result.isCancelled()) {
+            result.setCacheInfo(result.isFromCache(), compileCache.getStatsSummary());
+        }
+        return result;
+    }
+
+    /**
+     * Compila un fuente a .so pasando por el cache: si hay una entrada la restaura
+     * y reproduce su salida; si no, ejecuta clang, registra los headers del depfile
+     * y guarda el resultado con la clave que los incluye. El resumen del cache lo
+     * agrega el llamador.
+     */
+    private CompilationResult compileCached(File sourceFile, byte[] sourceBytes, List<String> command,
+                                            CompileSetup setup, File depFile, 
+                                            CompileOptions options) {
+        File outputFile = setup.outputFile;
+
+        // Consultar el cache antes de invocar a clang
+        String cacheKey = compileCache.computeKey(sourceBytes, command, outputFile,
+            setup.clangBinary, setup.targetTriple, dependencyGraph.hashDependencies(sourceFile));
+        String cachedOutput = compileCache.restore(cacheKey, outputFile);
+        if (cachedOutput != null) {
+            Log.d(TAG, "Using cached library for: " + sourceFile.getName());
+            CompilerOutput replayed = replayOutput(cachedOutput, options.listener);
+            CompilationResult cached = new CompilationResult(true, "Compilación exitosa (cache)",
+                replayed.getText(), outputFile.getAbsolutePath(), command);
+            cached.setCacheInfo(true, null);
+            cached.setDiagnostics(replayed.getDiagnostics());
+            return cached;
+        }
+
+        if (options.isCancelled()) {
+            return CompilationResult.cancelled();
+        }
+
         // Ejecutar compilación con variables de entorno
-        return executeCompilation(command, outputFile, compilerDir, tmpDir);
+        CompilationResult result = executeCompilation(command, outputFile, setup.compilerDir, 
+            setup.tmpDir, new CompilerOutput(options.listener), options.cancellation, setup.stdin);
+        if (result.isSuccess()) {
+            // Registrar los headers reales y guardar con la clave que los incluye
+            if (depFile != null && dependencyGraph.update(sourceFile, depFile)) {
+                dependencyGraph.save();
+                cacheKey = compileCache.computeKey(sourceBytes, command, outputFile,
+                    setup.clangBinary, setup.targetTriple, dependencyGraph.hashDependencies(sourceFile));
+            }
+            compileCache.store(cacheKey, outputFile, result.getOutput());
+        }
+        return result;
     }
 
     /**
-     * Prepara el directorio temporal para clang
+     * Analiza el código con -fsyntax-only, sin generar código ni escribir archivos.
+     * El fuente se pasa por stdin, de modo que se puede revisar el buffer del editor
+     * sin guardarlo. Los headers que incluye se registran en el grafo de dependencias.
+     * @param sourceFile Archivo del buffer; sus #include "..." se resuelven respecto
+     *                   a su directorio (puede ser null)
+     * @return los diagnósticos, o null si el toolchain no está disponible o se canceló
      */
-    private File prepareTempDirectory() {
-        // Crear directorio tmp en el cache de la app
-        File tmpDir = new File(context.getCacheDir(), "clang_tmp");
-        
-        if (!tmpDir.exists()) {
-            if (!tmpDir.mkdirs()) {
-                Log.e(TAG, "Failed to create temp directory: " + tmpDir.getAbsolutePath());
-                return null;
+    public List<Diagnostic> checkSyntax(String source, File sourceFile, 
+                                        CancellationToken cancellation) {
+        // No detiene la precarga (corre al abrir cada archivo), pero trae clang a memoria
+        ToolchainPrewarmer.recordSyntaxCheck();
+        ToolchainDescriptor toolchain = compilerManager.getToolchain();
+        if (toolchain == null) {
+            return null;
+        }
+        File compilerDir = toolchain.getCompilerDir();
+        File clangBinary = toolchain.getClangBinary();
+
+        File tmpDir = scratchSpace.createJobDirectory("syntax");
+        if (tmpDir == null) {
+            return null;
+        }
+
+        CompileSetup setup = new CompileSetup();
+        setup.compilerDir = compilerDir;
+        setup.clangBinary = clangBinary;
+        setup.tmpDir = tmpDir;
+        setup.targetTriple = toolchain.getTargetTriple();
+        setup.profile = BuildProfile.FAST;
+
+        byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+        File pchFile = obtainPrecompiledHeader(setup, sourceBytes, cancellation);
+        File includeDir = sourceFile != null ? sourceFile.getParentFile() : null;
+        File depFile = sourceFile != null ? prepareDepFile(tmpDir, "syntax.d") : null;
+        List<String> command = buildSyntaxCheckCommand(clangBinary, compilerDir, pchFile, 
+                                                       includeDir, depFile, setup.profile,
+                                                       setup.targetTriple);
+
+        CompilerOutput output = new CompilerOutput(null);
+        try {
+            runClang(command, compilerDir, tmpDir, output, cancellation, sourceBytes);
+            if (depFile != null && depFile.exists() && dependencyGraph.update(sourceFile, depFile)) {
+                dependencyGraph.save();
             }
+        } catch (IOException e) {
+            Log.w(TAG, "Syntax check failed", e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (CancellationException e) {
+            return null;
+        } finally {
+            scratchSpace.release(tmpDir);
         }
+        return output.getDiagnostics();
+    }
 
-        // Limpiar archivos temporales antiguos
-        cleanTempDirectory(tmpDir);
+    /**
+     * Hash de los headers registrados para un fuente, el mismo que usa el cache de compilación
+     */
+    public String hashDependencies(File sourceFile) {
+        return dependencyGraph.hashDependencies(sourceFile);
+    }
+
+    /**
+     * Compila con -ftime-trace y agrega al resultado el informe de tiempos por fase.
+     * El artefacto no se guarda en el cache porque el comando incluye la traza.
+     */
+    private CompilationResult compileWithTimeTrace(File sourceFile, byte[] sourceBytes, 
+                                                   List<String> command, CompileSetup setup,
+                                                   File traceDir, File depFile, 
+                                                   CompileOptions options) {
+        Log.d(TAG, "Compile command (time trace): " + command.toString());
+
+        long start = System.currentTimeMillis();
+        CompilationResult result = executeCompilation(command, setup.outputFile, setup.compilerDir,
+            setup.tmpDir, new CompilerOutput(options.listener), options.cancellation, setup.stdin);
+        long elapsed = System.currentTimeMillis() - start;
+        if (result.isCancelled()) {
+            return result;
+        }
 
-        Log.d(TAG, "Temp directory ready: " + tmpDir.getAbsolutePath());
-        return tmpDir;
+        if (result.isSuccess() && depFile != null && dependencyGraph.update(sourceFile, depFile)) {
+            dependencyGraph.save();
+        }
+
+        TimeTrace trace = new TimeTrace();
+        trace.addTraces(traceDir);
+        trace.setWallTime(elapsed);
+        if (!trace.isEmpty()) {
+            // En una sola invocación, lo que queda fuera de cc1 es driver + enlazador
+            trace.setLinkTime(Math.max(0, elapsed - trace.getCompilerMs()));
+        }
+
+        result.setTimingReport(buildTimingReport(sourceFile.getName(), 
+            HashUtils.sha256Hex(sourceBytes), setup.profile, trace));
+        result.setCacheInfo(false, compileCache.getStatsSummary());
+        return result;
     }
 
     /**
-     * Limpia archivos temporales antiguos
+     * Informe de tiempos para la consola; si hubo traza, la registra en el historial
      */
-    private void cleanTempDirectory(File tmpDir) {
-        if (tmpDir.exists() && tmpDir.isDirectory()) {
-            File[] files = tmpDir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile()) {
-                        file.delete();
-                    }
+    private String buildTimingReport(String sourceName, String sourceHash, BuildProfile profile,
+                                     TimeTrace trace) {
+        ToolchainDescriptor toolchain = compilerManager.getToolchain();
+        trace.setClangVersion(toolchain != null ? toolchain.getClangVersion() : null);
+        String report = trace.formatReport();
+        if (!trace.isEmpty()) {
+            String delta = compileTimings.record(sourceName, sourceHash, getCodegenFlags(profile), trace);
+            if (delta != null) {
+                report += "\n" + delta;
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Compila un proyecto de varios archivos .c a un único .so.
+     *
+     * Cada unidad de traducción se compila a su propio .o en paralelo (un hilo
+     * por núcleo). Los objetos cuyo fuente y flags no cambiaron se reutilizan
+     * del cache de objetos, de modo que solo se recompila lo modificado y
+     * siempre se ejecuta el enlazado final.
+     */
+    public CompilationResult compileProject(List<File> sourceFiles, String outputName, 
+                                            boolean saveToExternalStorage) {
+        return compileProject(sourceFiles, outputName, saveToExternalStorage, new CompileOptions());
+    }
+
+    /**
+     * Compila un proyecto entregando la salida de cada unidad mientras se produce
+     * @param options Receptor de la salida y cancelación; el listener se invoca
+     *                desde varios hilos del pool de compilación
+     */
+    public CompilationResult compileProject(List<File> sourceFiles, String outputName, 
+                                            boolean saveToExternalStorage,
+                                            CompileOptions options) {
+        CompileSetup setup = new CompileSetup();
+        try {
+            CompilationResult result = compileProject(sourceFiles, outputName, saveToExternalStorage,
+                                                      options, setup);
+            return storeArtifact(result, saveToExternalStorage, getProjectName(sourceFiles), 
+                                 options.profile);
+        } finally {
+            scratchSpace.release(setup.tmpDir);
+        }
+    }
+
+    private CompilationResult compileProject(List<File> sourceFiles, String outputName, 
+                                             boolean saveToExternalStorage,
+                                             CompileOptions options, CompileSetup setup) {
+        if (sourceFiles == null || sourceFiles.isEmpty()) {
+            return new CompilationResult(false, "El proyecto no tiene archivos fuente", "", null);
+        }
+
+        for (File sourceFile : sourceFiles) {
+            if (!sourceFile.exists() || !sourceFile.canRead()) {
+                return new CompilationResult(false, 
+                    "No se puede leer el archivo fuente: " + sourceFile.getName(), "", null);
+            }
+        }
+
+        CompilationResult error = prepareCompilation(outputName, saveToExternalStorage, 
+                                                     options.profile, setup);
+        if (error != null) {
+            return error;
+        }
+
+        File objectDir = new File(setup.tmpDir, "objs");
+        if (!objectDir.exists() && !objectDir.mkdirs()) {
+            return new CompilationResult(false, "No se pudo crear directorio temporal", "", null);
+        }
+
+        long start = System.currentTimeMillis();
+        File traceRoot = options.timeTrace ? prepareTraceDirectory(setup.tmpDir, "trace") : null;
+
+        // Compilar cada unidad de traducción en paralelo
+        List<Future<ObjectResult>> futures = new ArrayList<>();
+        for (int i = 0; i < sourceFiles.size(); i++) {
+            final File sourceFile = sourceFiles.get(i);
+            final int index = i;
+            futures.add(getCompilePool().submit(
+                () -> compileObject(sourceFile, index, setup, objectDir, traceRoot, options)));
+        }
+
+        List<ObjectResult> objects = new ArrayList<>();
+        for (Future<ObjectResult> future : futures) {
+            try {
+                objects.add(future.get());
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Error compilando unidad de traducción", e);
+                ObjectResult failed = new ObjectResult("?");
+                failed.output = "Error interno: " + e.getCause();
+                objects.add(failed);
+            } catch (InterruptedException e) {
+                for (Future<ObjectResult> pending : futures) {
+                    pending.cancel(true);
                 }
+                Thread.currentThread().interrupt();
+                return new CompilationResult(false, "Compilación interrumpida", "", null);
+            }
+        }
+
+        if (options.isCancelled()) {
+            objectDependencyGraph.save();
+            return CompilationResult.cancelled();
+        }
+
+        StringBuilder output = new StringBuilder();
+        int compiled = 0;
+        int reused = 0;
+        boolean allSucceeded = true;
+        List<File> objectFiles = new ArrayList<>();
+        List<Diagnostic> diagnostics = new ArrayList<>();
+
+        for (ObjectResult object : objects) {
+            diagnostics.addAll(object.diagnostics);
+            output.append("── ").append(object.sourceName)
+                  .append(object.fromCache ? " (cache)" : "").append(" ──\n");
+            if (object.output != null && !object.output.isEmpty()) {
+                output.append(object.output);
+                if (!object.output.endsWith("\n")) {
+                    output.append("\n");
+                }
+            }
+            if (!object.success) {
+                allSucceeded = false;
+            } else if (object.fromCache) {
+                reused++;
+                objectFiles.add(object.objectFile);
+            } else {
+                compiled++;
+                objectFiles.add(object.objectFile);
+            }
+        }
+
+        output.append("\nObjetos: ").append(compiled).append(" compilados, ")
+              .append(reused).append(" reutilizados (")
+              .append(System.currentTimeMillis() - start).append(" ms)\n");
+
+        TimeTrace trace = null;
+        if (traceRoot != null) {
+            trace = new TimeTrace();
+            for (int i = 0; i < sourceFiles.size(); i++) {
+                File objectTraceDir = new File(traceRoot, String.valueOf(i));
+                trace.addTraces(objectTraceDir);
+                objectTraceDir.delete();
             }
         }
+
+        if (!allSucceeded) {
+            objectDependencyGraph.save();
+            CompilationResult failed = new CompilationResult(false, "Error de compilación", 
+                output.toString(), null);
+            failed.setDiagnostics(diagnostics);
+            return failed;
+        }
+
+        // Enlazado final (siempre se ejecuta)
+        List<String> linkCommand = buildLinkCommand(setup.clangBinary, setup.compilerDir, 
+                                                    objectFiles, setup.outputFile, setup.profile,
+                                                    setup.targetTriple);
+        Log.d(TAG, "Link command: " + linkCommand.toString());
+
+        long linkStart = System.currentTimeMillis();
+        CompilationResult linkResult = executeCompilation(linkCommand, setup.outputFile, 
+            setup.compilerDir, setup.tmpDir, new CompilerOutput(options.listener), options.cancellation);
+        long linkElapsed = System.currentTimeMillis() - linkStart;
+        diagnostics.addAll(linkResult.getDiagnostics());
+        objectCache.trim();
+        objectDependencyGraph.save();
+
+        if (linkResult.isCancelled()) {
+            return linkResult;
+        }
+
+        if (!linkResult.getOutput().isEmpty()) {
+            output.append("── enlazado ──\n").append(linkResult.getOutput());
+        }
+
+        CompilationResult result = new CompilationResult(linkResult.isSuccess(), 
+            linkResult.isSuccess() ? "Compilación exitosa" : "Error de enlazado", 
+            output.toString(), linkResult.getOutputPath(), linkCommand);
+        result.setCacheInfo(compiled == 0, objectCache.getStatsSummary());
+        result.setDiagnostics(diagnostics);
+
+        if (trace != null) {
+            trace.setLinkTime(linkElapsed);
+            trace.setWallTime(System.currentTimeMillis() - start);
+            result.setTimingReport(buildTimingReport(getProjectName(sourceFiles), 
+                hashSources(sourceFiles), setup.profile, trace));
+        }
+        return result;
     }
 
     /**
-     * Busca el binario de clang en el directorio bin
+     * Compila un mismo fuente para todas las ABI que soporta el sysroot
+     * (aarch64, armv7a, x86_64, i686) y deja cada .so en output/abi/&lt;ABI&gt;/.
+     *
+     * Las variantes se compilan en paralelo en el pool de compilación, de modo
+     * que el tiempo total se acerca al de la variante más lenta. Cada una pasa
+     * por el cache como una compilación normal (el triple forma parte de la clave).
+     * @return resultado con el informe de tiempos y tamaños por ABI; la ruta de
+     *         salida es la variante de la ABI del dispositivo
      */
-    private File findClangBinary(File compilerDir) {
-        File binDir = new File(compilerDir, "bin");
-        
-        if (!binDir.exists() || !binDir.isDirectory()) {
-            Log.e(TAG, "Bin directory not found: " + binDir.getAbsolutePath());
-            return null;
+    public CompilationResult compileMultiAbi(File sourceFile, String outputName, 
+                                             boolean saveToExternalStorage, CompileOptions options) {
+        if (options.sourceText == null && (!sourceFile.exists() || !sourceFile.canRead())) {
+            return new CompilationResult(false, "No se puede leer el archivo fuente", "", null);
+        }
+
+        ToolchainPrewarmer.cancel();
+        ToolchainDescriptor toolchain = compilerManager.getToolchain();
+        if (toolchain == null) {
+            return new CompilationResult(false, "Compilador no instalado", "", null);
         }
 
-        // Buscar diferentes versiones de clang
-        String[] possibleNames = {
-            "clang-17",
-            "clang-18",
-            "clang-16",
-            "clang-15",
-            "clang"
-        };
+        List<String> triples = new ArrayList<>(toolchain.getSupportedTriples());
+        if (triples.isEmpty()) {
+            triples.add(toolchain.getTargetTriple());
+        }
 
-        for (String name : possibleNames) {
-            File binary = new File(binDir, name);
-            if (binary.exists() && binary.canExecute()) {
-                Log.d(TAG, "Found clang binary: " + name);
-                return binary;
+        ArtifactStore store = getArtifactStore(saveToExternalStorage);
+        if (store == null) {
+            return new CompilationResult(false, 
+                "No se pudo crear el directorio de salida. " +
+                "Verifica los permisos de almacenamiento.", "", null);
+        }
+        // Las variantes se exportan con nombre fijo; solo la del dispositivo entra al almacén
+        File abiRoot = new File(new File(store.getRootDirectory(), options.profile.getDirName()), "abi");
+        String libraryName = getLibraryFileName(outputName);
+
+        byte[] sourceBytes;
+        if (options.sourceText != null) {
+            sourceBytes = options.sourceText.getBytes(StandardCharsets.UTF_8);
+        } else {
+            try {
+                sourceBytes = FileUtils.readBytes(sourceFile);
+            } catch (IOException e) {
+                return new CompilationResult(false, "No se puede leer el archivo fuente", 
+                    e.getMessage(), null);
             }
         }
 
-        // Si no encontramos ninguno, listar los archivos disponibles
-        File[] files = binDir.listFiles();
-        if (files != null) {
-            Log.d(TAG, "Available files in bin directory:");
-            for (File file : files) {
-                Log.d(TAG, "  - " + file.getName() + 
-                     " (executable: " + file.canExecute() + ")");
-                
-                // Intentar con cualquier archivo que contenga "clang"
-                if (file.getName().contains("clang") && file.canExecute()) {
-                    Log.d(TAG, "Using fallback clang binary: " + file.getName());
-                    return file;
+        long start = System.currentTimeMillis();
+        List<Future<AbiResult>> futures = new ArrayList<>();
+        for (String triple : triples) {
+            File abiOutput = new File(new File(abiRoot, ToolchainDescriptor.getAbiForTriple(triple)), 
+                                      libraryName);
+            futures.add(getCompilePool().submit(
+                () -> compileForTriple(sourceFile, sourceBytes, triple, abiOutput, toolchain, options)));
+        }
+
+        List<AbiResult> abiResults = new ArrayList<>();
+        for (Future<AbiResult> future : futures) {
+            try {
+                abiResults.add(future.get());
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Error compilando variante de ABI", e);
+                AbiResult failed = new AbiResult("?", "?");
+                failed.result = new CompilationResult(false, "Error interno", 
+                    String.valueOf(e.getCause()), null);
+                abiResults.add(failed);
+            } catch (InterruptedException e) {
+                for (Future<AbiResult> pending : futures) {
+                    pending.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                return new CompilationResult(false, "Compilación interrumpida", "", null);
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        if (options.isCancelled()) {
+            return CompilationResult.cancelled();
+        }
+
+        StringBuilder report = new StringBuilder();
+        StringBuilder output = new StringBuilder();
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        boolean allSucceeded = true;
+        long sumMs = 0;
+        String devicePath = null;
+        List<String> deviceCommand = null;
+
+        for (AbiResult abi : abiResults) {
+            CompilationResult result = abi.result;
+            sumMs += abi.elapsedMs;
+            diagnostics.addAll(result.getDiagnostics());
+
+            report.append(String.format("%-12s", abi.abi));
+            if (result.isSuccess()) {
+                report.append(String.format("%6d ms  %8d B", abi.elapsedMs, 
+                                            new File(result.getOutputPath()).length()));
+                if (result.isFromCache()) {
+                    report.append("  (cache)");
+                }
+            } else {
+                report.append("  ✗ ").append(result.getMessage());
+                allSucceeded = false;
+            }
+            report.append("\n");
+
+            if (!result.getOutput().isEmpty()) {
+                output.append("── ").append(abi.abi).append(" ──\n").append(result.getOutput());
+                if (!result.getOutput().endsWith("\n")) {
+                    output.append("\n");
                 }
             }
+
+            if (abi.triple.equals(toolchain.getTargetTriple()) && result.isSuccess()) {
+                devicePath = result.getOutputPath();
+                deviceCommand = abi.command;
+            }
+        }
+
+        report.append("Total: ").append(elapsed).append(" ms en paralelo (")
+              .append(sumMs).append(" ms sumando las ABI)\n");
+        report.append("Directorio: ").append(abiRoot.getAbsolutePath()).append("\n");
+
+        // La variante del dispositivo es la que se puede ejecutar
+        if (allSucceeded && devicePath != null) {
+            try {
+                ArtifactStore internal = getArtifactStore(false);
+                if (internal == null) {
+                    throw new IOException("Almacén no disponible");
+                }
+                devicePath = internal.addCopy(new File(devicePath), libraryName, 
+                    sourceFile.getAbsolutePath(), options.profile).getAbsolutePath();
+            } catch (IOException e) {
+                Log.e(TAG, "Error storing device variant", e);
+                devicePath = null;
+            }
+        }
+        boolean success = allSucceeded && devicePath != null;
+        CompilationResult result = new CompilationResult(success, 
+            success ? "Compilación exitosa (" + abiResults.size() + " ABI)" 
+                         : "Error de compilación en alguna ABI",
+            report + "\n" + output, devicePath, deviceCommand);
+        result.setCacheInfo(false, compileCache.getStatsSummary());
+        result.setDiagnostics(diagnostics);
+        return result;
+    }
+
+    /**
+     * Compila el fuente para un triple concreto, con su propio directorio de trabajo
+     */
+    private AbiResult compileForTriple(File sourceFile, byte[] sourceBytes, String triple, 
+                                       File outputFile, ToolchainDescriptor toolchain,
+                                       CompileOptions options) {
+        AbiResult abi = new AbiResult(ToolchainDescriptor.getAbiForTriple(triple), triple);
+        long start = System.currentTimeMillis();
+
+        CompileSetup setup = new CompileSetup();
+        setup.compilerDir = toolchain.getCompilerDir();
+        setup.clangBinary = toolchain.getClangBinary();
+        setup.targetTriple = triple;
+        setup.profile = options.profile;
+        setup.outputFile = outputFile;
+        setup.tmpDir = scratchSpace.createJobDirectory(abi.abi);
+
+        try {
+            File outputDir = outputFile.getParentFile();
+            if (setup.tmpDir == null || (!outputDir.isDirectory() && !outputDir.mkdirs())) {
+                abi.result = new CompilationResult(false, "No se pudo crear directorio temporal", 
+                                                   "", null);
+                return abi;
+            }
+            outputFile.delete();
+
+            File pchFile = obtainPrecompiledHeader(setup, sourceBytes, options.cancellation);
+            File depFile = prepareDepFile(setup.tmpDir, "library.d");
+            List<String> command = buildCompileCommand(setup.clangBinary, setup.compilerDir, 
+                sourceFile, outputFile, pchFile, depFile, setup.profile, triple);
+            abi.command = command;
+
+            if (options.sourceText != null) {
+                setup.stdin = useStdinSource(command, sourceFile, sourceBytes);
+                sourceBytes = setup.stdin;
+            }
+
+            abi.result = compileCached(sourceFile, sourceBytes, command, setup, depFile, options);
+            return abi;
+        } finally {
+            abi.elapsedMs = System.currentTimeMillis() - start;
+            scratchSpace.release(setup.tmpDir);
+        }
+    }
+
+    /**
+     * Compila una unidad de traducción a .o, reutilizando el cache de objetos
+     */
+    private ObjectResult compileObject(File sourceFile, int index, CompileSetup setup, File objectDir,
+                                       File traceRoot, CompileOptions options) {
+        ObjectResult result = new ObjectResult(sourceFile.getName());
+        CompilerOutput.Listener listener = options.listener;
+
+        byte[] sourceBytes;
+        try {
+            sourceBytes = FileUtils.readBytes(sourceFile);
+        } catch (IOException e) {
+            result.output = "No se puede leer el archivo fuente: " + e.getMessage();
+            return result;
+        }
+
+        String baseName = FileUtils.getBaseName(sourceFile);
+        File objectFile = new File(objectDir, index + "_" + baseName + ".o");
+        File depFile = new File(objectDir, index + "_" + baseName + ".d");
+        File pchFile = obtainPrecompiledHeader(setup, sourceBytes, options.cancellation);
+        List<String> command = buildObjectCommand(setup.clangBinary, setup.compilerDir, 
+                                                  sourceFile, objectFile, pchFile, depFile,
+                                                  setup.profile, setup.targetTriple);
+
+        // Con traza de tiempos siempre se compila, y el objeto no se guarda en el cache
+        File traceDir = null;
+        if (traceRoot != null) {
+            traceDir = new File(traceRoot, String.valueOf(index));
+            if (traceDir.mkdirs() || traceDir.isDirectory()) {
+                addTimeTraceFlags(command, traceDir);
+            } else {
+                traceDir = null;
+            }
+        }
+
+        String cacheKey = objectCache.computeKey(sourceBytes, command, objectFile,
+            setup.clangBinary, setup.targetTriple, objectDependencyGraph.hashDependencies(sourceFile));
+        File cached = traceDir == null ? objectCache.lookup(cacheKey) : null;
+        if (cached != null) {
+            // El enlazado usa un enlace propio en el directorio del trabajo: una
+            // compilación concurrente puede recortar el cache antes de enlazar
+            try {
+                FileUtils.linkOrCopy(cached, objectFile);
+                result.success = true;
+                result.fromCache = true;
+                result.objectFile = objectFile;
+                CompilerOutput replayed = replayOutput(objectCache.getRecordedOutput(cacheKey), listener);
+                result.output = replayed.getText();
+                result.diagnostics = replayed.getDiagnostics();
+                return result;
+            } catch (IOException e) {
+                // Desalojado entre la búsqueda y el enlace: se compila
+                Log.d(TAG, "Cached object evicted before linking: " + cached.getName());
+                objectFile.delete();
+            }
+        }
+
+        CompilerOutput output = new CompilerOutput(listener);
+        try {
+            int exitCode = runClang(command, setup.compilerDir, setup.tmpDir, output, 
+                                    options.cancellation);
+            result.success = exitCode == 0 && objectFile.exists();
+            if (!result.success) {
+                output.appendLine("Código de salida: " + exitCode);
+            }
+        } catch (IOException e) {
+            output.appendLine("Error de IO: " + e.getMessage());
+            Log.e(TAG, "IO Error compiling " + sourceFile.getName(), e);
+        } catch (InterruptedException e) {
+            output.appendLine("Compilación interrumpida");
+            Thread.currentThread().interrupt();
+        } catch (CancellationException e) {
+            output.appendLine("Compilación cancelada");
+        }
+
+        result.output = output.getText();
+        result.diagnostics = output.getDiagnostics();
+        if (result.success) {
+            if (objectDependencyGraph.update(sourceFile, depFile)) {
+                cacheKey = objectCache.computeKey(sourceBytes, command, objectFile,
+                    setup.clangBinary, setup.targetTriple, 
+                    objectDependencyGraph.hashDependencies(sourceFile));
+            }
+            // Se enlaza la salida de clang, no la copia del cache (que se puede desalojar)
+            if (traceDir == null) {
+                objectCache.storeWithoutTrim(cacheKey, objectFile, result.output);
+            }
+            result.objectFile = objectFile;
+        }
+        return result;
+    }
+
+    /**
+     * Obtiene el PCH si el fuente incluye los headers comunes
+     * @param cancellation Cancelación de la compilación; también detiene la construcción del PCH
+     */
+    private File obtainPrecompiledHeader(CompileSetup setup, byte[] sourceBytes, 
+                                         CancellationToken cancellation) {
+        if (!usePrecompiledHeader || !PrecompiledHeader.usesCommonHeaders(new String(sourceBytes))) {
+            return null;
+        }
+        ToolchainDescriptor toolchain = compilerManager.getToolchain();
+        List<String> flags = new ArrayList<>(toolchain.getDriverFlags());
+        flags.addAll(getCodegenFlags(setup.profile));
+        return precompiledHeader.obtain(setup.clangBinary, toolchain.getSysrootDir(),
+            setup.targetTriple, setup.profile.getDirName(), flags, 
+            toolchain.getInstallStamp(),
+            processBuilder -> configureEnvironment(processBuilder, setup.compilerDir, setup.tmpDir),
+            cancellation);
+    }
+
+    /**
+     * Prepara el toolchain, el directorio temporal y el archivo de salida
+     * @return un resultado de error, o null si todo está listo
+     */
+    private CompilationResult prepareCompilation(String outputName, boolean saveToExternalStorage,
+                                                 BuildProfile profile, CompileSetup setup) {
+        // Una compilación real tiene prioridad sobre la precarga del toolchain
+        ToolchainPrewarmer.cancel();
+
+        // Descriptor creado al instalar: sin buscar binarios en cada compilación
+        ToolchainDescriptor toolchain = compilerManager.getToolchain();
+        if (toolchain == null) {
+            if (!compilerManager.isCompilerInstalled()) {
+                return new CompilationResult(false, "Compilador no instalado", "", null);
+            }
+            String error = "Binario clang no encontrado en: " + 
+                          new File(compilerManager.getCompilerDirectory(), "bin").getAbsolutePath();
+            return new CompilationResult(false, error, "", null);
         }
 
+        File compilerDir = toolchain.getCompilerDir();
+        File clangBinary = toolchain.getClangBinary();
+
+        Log.d(TAG, "Using clang binary: " + clangBinary.getAbsolutePath());
+
+        // Directorio temporal exclusivo de este trabajo
+        File tmpDir = scratchSpace.createJobDirectory(profile.getDirName());
+        if (tmpDir == null) {
+            return new CompilationResult(false, "No se pudo crear directorio temporal", "", null);
+        }
+
+        // El .so se genera en el directorio del trabajo y luego pasa al almacén
+        if (getArtifactStore(saveToExternalStorage) == null) {
+            return new CompilationResult(false, 
+                "No se pudo crear el directorio de salida. " +
+                "Verifica los permisos de almacenamiento.", "", null);
+        }
+        File outputFile = prepareOutputFile(outputName, tmpDir);
+        if (outputFile == null) {
+            return new CompilationResult(false, "No se pudo crear directorio temporal", "", null);
+        }
+
+        setup.compilerDir = compilerDir;
+        setup.clangBinary = clangBinary;
+        setup.tmpDir = tmpDir;
+        setup.outputFile = outputFile;
+        setup.targetTriple = toolchain.getTargetTriple();
+        setup.profile = profile;
         return null;
     }
 
     /**
-     * Prepara el archivo de salida en el directorio correcto
+     * Pool compartido para compilar unidades de traducción, dimensionado a los núcleos
      */
-    private File prepareOutputFile(String outputName, boolean saveToExternalStorage) {
+    private static synchronized ExecutorService getCompilePool() {
+        if (compilePool == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+            compilePool = Executors.newFixedThreadPool(threads);
+        }
+        return compilePool;
+    }
+
+    /**
+     * Archivo de salida dentro del directorio del trabajo
+     */
+    private File prepareOutputFile(String outputName, File tmpDir) {
+        File outputDir = new File(tmpDir, "out");
+        if (!outputDir.exists() && !outputDir.mkdirs()) {
+            Log.e(TAG, "Failed to create output directory: " + outputDir.getAbsolutePath());
+            return null;
+        }
+        return new File(outputDir, getLibraryFileName(outputName));
+    }
+
+    /**
+     * Nombre lib&lt;nombre&gt;.so de la librería
+     */
+    private String getLibraryFileName(String outputName) {
         String outputFileName = outputName;
         
         // Agregar prefijo lib al nombre del fichero de salida
         if (!outputFileName.startsWith("lib")) outputFileName = "lib" + outputFileName;
         // Agregar la extensión .so al nombre del fichero de salida
         if (!outputFileName.endsWith(".so")) outputFileName = outputFileName + ".so";
+        return outputFileName;
+    }
 
+    /**
+     * Almacén de librerías en el directorio interno o en /mis_so/
+     * @return el almacén, o null si no se pudo crear su directorio
+     */
+    private ArtifactStore getArtifactStore(boolean saveToExternalStorage) {
         File outputDir = saveToExternalStorage ? 
             new File(Environment.getExternalStorageDirectory(), "mis_so") 
             : 
@@ -192,45 +952,75 @@ public class NativeCompiler {
             else Log.e(TAG, "Failed to create compiled directory: " + outputDir.getAbsolutePath());
             return null;
         }
-            
-        Log.d(
-            TAG, 
-            "Output directory " + 
-            (saveToExternalStorage 
-                ? "(external)" : "(internal)" 
-            ) + 
-            ": " 
-            + outputDir.getAbsolutePath()
-        );
+        return ArtifactStore.forDirectory(outputDir);
+    }
 
-        return new File(outputDir, outputFileName);
+    /**
+     * Mueve la librería generada al almacén interno (o reutiliza una idéntica)
+     * y devuelve el resultado con la ruta definitiva. La librería se ejecuta
+     * siempre desde el almacenamiento interno; si se pidió /mis_so/, allí se
+     * exporta una copia en segundo plano.
+     */
+    private CompilationResult storeArtifact(CompilationResult result, boolean saveToExternalStorage,
+                                            String source, BuildProfile profile) {
+        if (!result.isSuccess() || result.getOutputPath() == null || result.getOutputPath().isEmpty()) {
+            return result;
+        }
+        ArtifactStore store = getArtifactStore(false);
+        File built = new File(result.getOutputPath());
+        try {
+            if (store == null) {
+                throw new IOException("Almacén no disponible");
+            }
+            File stored = store.add(built, built.getName(), source, profile);
+            Log.d(TAG, "Stored artifact: " + stored.getAbsolutePath());
+            if (saveToExternalStorage) {
+                exportInBackground(stored, source, profile);
+            }
+            return result.withOutputPath(stored.getAbsolutePath());
+        } catch (IOException e) {
+            Log.e(TAG, "Error storing artifact", e);
+            return new CompilationResult(false, "No se pudo guardar la librería: " + e.getMessage(),
+                result.getOutput(), null);
+        }
     }
 
     /**
      * Construye el comando de compilación para Clang
      */
     private List<String> buildCompileCommand(File clangBinary, File compilerDir, 
-                                             File sourceFile, File outputFile) {
+                                             File sourceFile, File outputFile, File pchFile,
+                                             File depFile, BuildProfile profile,
+                                             String targetTriple) {
         List<String> command = new ArrayList<>();
         
         command.add(clangBinary.getAbsolutePath());
         
-        // Target según ABI del dispositivo
-        String target = getTargetTriple();
-        command.add("--target=" + target);
+        // Target: la ABI del dispositivo, o la variante pedida en modo multi-ABI
+        command.add("--target=" + targetTriple);
         
         // Sysroot
         File sysroot = new File(compilerDir, "sysroot");
         command.add("--sysroot=" + sysroot.getAbsolutePath());
+        command.addAll(getDriverFlags());
         
         // Flags de compilación
         command.add("-shared");
-        command.add("-fPIC");
+        command.addAll(getCodegenFlags(profile));
+        command.addAll(profile.getLinkFlags());
         command.add("-lm");
-        command.add("-O3"); // Optimización
         
         // Suprimir warnings comunes
         command.add("-w"); // Deshabilitar warnings
+
+        // Headers comunes precompilados
+        if (pchFile != null) {
+            command.add("-include-pch");
+            command.add(pchFile.getAbsolutePath());
+        }
+
+        // Depfile con los headers incluidos
+        addDepFileFlags(command, depFile);
         
         // Archivo fuente
         command.add(sourceFile.getAbsolutePath());
@@ -240,55 +1030,240 @@ public class NativeCompiler {
         command.add(outputFile.getAbsolutePath());
         
         // Librerías
-        command.add("-lEGL");
-        command.add("-lGLESv2");
-        command.add("-landroid");
-        command.add("-llog");
+        addLinkLibraries(command);
         
         return command;
     }
 
     /**
-     * Obtiene el target triple según la ABI del dispositivo
+     * Construye el comando de -fsyntax-only que lee el fuente desde stdin
      */
-    private String getTargetTriple() {
-        String abi = getDeviceABI();
-        
-        // Mapear ABI a target triple
-        if (abi.startsWith("arm64") || abi.equals("aarch64")) {
-            return "aarch64-linux-android21";
-        } else if (abi.startsWith("armeabi")) {
-            return "armv7a-linux-androideabi21";
-        } else if (abi.equals("x86_64")) {
-            return "x86_64-linux-android21";
-        } else if (abi.equals("x86")) {
-            return "i686-linux-android21";
-        } else {
-            // Default
-            return "aarch64-linux-android21";
+    private List<String> buildSyntaxCheckCommand(File clangBinary, File compilerDir, File pchFile,
+                                                 File includeDir, File depFile, 
+                                                 BuildProfile profile, String targetTriple) {
+        List<String> command = new ArrayList<>();
+
+        command.add(clangBinary.getAbsolutePath());
+        command.add("--target=" + targetTriple);
+        command.add("--sysroot=" + new File(compilerDir, "sysroot").getAbsolutePath());
+        command.addAll(getDriverFlags());
+
+        command.add("-fsyntax-only");
+        // Mismos flags que el PCH para poder reutilizarlo
+        command.addAll(getCodegenFlags(profile));
+        command.add("-fno-caret-diagnostics");
+        command.add("-fno-color-diagnostics");
+
+        if (pchFile != null) {
+            command.add("-include-pch");
+            command.add(pchFile.getAbsolutePath());
+        }
+
+        if (includeDir != null) {
+            command.add("-I");
+            command.add(includeDir.getAbsolutePath());
         }
+
+        addDepFileFlags(command, depFile);
+
+        command.add("-x");
+        command.add("c");
+        command.add("-");
+
+        return command;
     }
 
     /**
-     * Obtiene la ABI del dispositivo
+     * Construye el comando para compilar una unidad de traducción a .o
      */
-    private String getDeviceABI() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            return Build.SUPPORTED_ABIS[0];
-        } else {
-            return Build.CPU_ABI;
+    private List<String> buildObjectCommand(File clangBinary, File compilerDir,
+                                            File sourceFile, File objectFile, File pchFile,
+                                            File depFile, BuildProfile profile,
+                                            String targetTriple) {
+        List<String> command = new ArrayList<>();
+
+        command.add(clangBinary.getAbsolutePath());
+        command.add("--target=" + targetTriple);
+        command.add("--sysroot=" + new File(compilerDir, "sysroot").getAbsolutePath());
+        command.addAll(getDriverFlags());
+
+        command.add("-c");
+        command.addAll(getCodegenFlags(profile));
+        command.add("-w");
+
+        if (pchFile != null) {
+            command.add("-include-pch");
+            command.add(pchFile.getAbsolutePath());
         }
+
+        addDepFileFlags(command, depFile);
+
+        command.add(sourceFile.getAbsolutePath());
+        command.add("-o");
+        command.add(objectFile.getAbsolutePath());
+
+        return command;
     }
 
     /**
-     * Ejecuta el comando de compilación con variables de entorno
+     * Construye el comando para enlazar los objetos del proyecto en un .so
      */
-    private CompilationResult executeCompilation(List<String> command, File outputFile, 
-                                                 File compilerDir, File tmpDir) {
-        ProcessBuilder processBuilder = new ProcessBuilder(command);
-        processBuilder.redirectErrorStream(true);
+    private List<String> buildLinkCommand(File clangBinary, File compilerDir,
+                                          List<File> objectFiles, File outputFile,
+                                          BuildProfile profile, String targetTriple) {
+        List<String> command = new ArrayList<>();
+
+        command.add(clangBinary.getAbsolutePath());
+        command.add("--target=" + targetTriple);
+        command.add("--sysroot=" + new File(compilerDir, "sysroot").getAbsolutePath());
+        command.addAll(getDriverFlags());
+        command.add("-shared");
+        command.add("-fPIC");
+        command.addAll(profile.getLinkFlags());
+
+        for (File objectFile : objectFiles) {
+            command.add(objectFile.getAbsolutePath());
+        }
+
+        command.add("-o");
+        command.add(outputFile.getAbsolutePath());
+        command.add("-lm");
+        addLinkLibraries(command);
+
+        return command;
+    }
 
-        // Configurar variables de entorno
+    /**
+     * Cambia la ruta del fuente en el comando por stdin (-x c -). Se agrega el
+     * directorio del fuente a la búsqueda de #include "..." y una marca de línea
+     * para que los diagnósticos sigan mostrando el nombre y las líneas del archivo.
+     * @return los bytes a escribir en stdin
+     */
+    private byte[] useStdinSource(List<String> command, File sourceFile, byte[] sourceBytes) {
+        int index = command.indexOf(sourceFile.getAbsolutePath());
+        command.remove(index);
+        command.add(index, "-");
+        command.add(index, "c");
+        command.add(index, "-x");
+        File sourceDir = sourceFile.getParentFile();
+        if (sourceDir != null) {
+            command.add(index, sourceDir.getAbsolutePath());
+            command.add(index, "-I");
+        }
+
+        String path = sourceFile.getAbsolutePath().replace("\\", "\\\\").replace("\"", "\\\"");
+        byte[] lineMarker = ("# 1 \"" + path + "\"\n").getBytes(StandardCharsets.UTF_8);
+        byte[] input = new byte[lineMarker.length + sourceBytes.length];
+        System.arraycopy(lineMarker, 0, input, 0, lineMarker.length);
+        System.arraycopy(sourceBytes, 0, input, lineMarker.length, sourceBytes.length);
+        return input;
+    }
+
+    /**
+     * Pide a clang que escriba el depfile con los headers incluidos
+     */
+    private void addDepFileFlags(List<String> command, File depFile) {
+        if (depFile != null) {
+            command.add("-MD");
+            command.add("-MF");
+            command.add(depFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Pide a clang que escriba la traza de tiempos (JSON) en el directorio indicado
+     */
+    private void addTimeTraceFlags(List<String> command, File traceDir) {
+        command.add("-ftime-trace=" + traceDir.getAbsolutePath() + File.separator);
+    }
+
+    /**
+     * Prepara un directorio vacío para las trazas de -ftime-trace
+     * @return el directorio, o null si no se pudo crear
+     */
+    private File prepareTraceDirectory(File tmpDir, String name) {
+        File traceDir = new File(tmpDir, name);
+        FileUtils.deleteRecursive(traceDir);
+        if (!traceDir.mkdirs()) {
+            Log.w(TAG, "Failed to create trace directory: " + traceDir.getAbsolutePath());
+            return null;
+        }
+        return traceDir;
+    }
+
+    /**
+     * Nombre con el que se registra un proyecto en el historial de tiempos
+     */
+    private String getProjectName(List<File> sourceFiles) {
+        List<String> names = new ArrayList<>();
+        for (File sourceFile : sourceFiles) {
+            names.add(sourceFile.getName());
+        }
+        Collections.sort(names);
+        return "proyecto:" + TextUtils.join(",", names);
+    }
+
+    /**
+     * Hash del contenido de todos los fuentes de un proyecto
+     */
+    private String hashSources(List<File> sourceFiles) {
+        MessageDigest md = HashUtils.newDigest();
+        for (File sourceFile : sourceFiles) {
+            try {
+                HashUtils.update(md, sourceFile);
+            } catch (IOException e) {
+                HashUtils.update(md, "unreadable");
+            }
+        }
+        return HashUtils.toHex(md.digest());
+    }
+
+    /**
+     * Prepara la ruta de un depfile en el subdirectorio deps del directorio temporal
+     * @return el archivo, o null si no se pudo crear el directorio
+     */
+    private File prepareDepFile(File tmpDir, String name) {
+        File depDir = new File(tmpDir, "deps");
+        if (!depDir.exists() && !depDir.mkdirs()) {
+            Log.w(TAG, "Failed to create depfile directory: " + depDir.getAbsolutePath());
+            return null;
+        }
+        File depFile = new File(depDir, name);
+        depFile.delete();
+        return depFile;
+    }
+
+    /**
+     * Librerías del sistema enlazadas en todas las compilaciones
+     */
+    private void addLinkLibraries(List<String> command) {
+        command.add("-lEGL");
+        command.add("-lGLESv2");
+        command.add("-landroid");
+        command.add("-llog");
+    }
+
+    /**
+     * Flags de generación de código; el PCH debe construirse con los mismos
+     */
+    private List<String> getCodegenFlags(BuildProfile profile) {
+        List<String> flags = new ArrayList<>();
+        flags.add("-fPIC");
+        flags.addAll(profile.getCodegenFlags()); // Optimización según el perfil
+        return flags;
+    }
+
+    /**
+     * Flags del driver según dónde esté instalado el toolchain
+     */
+    private List<String> getDriverFlags() {
+        return compilerManager.getToolchain().getDriverFlags();
+    }
+
+    /**
+     * Configura las variables de entorno necesarias para ejecutar clang
+     */
+    private void configureEnvironment(ProcessBuilder processBuilder, File compilerDir, File tmpDir) {
         Map<String, String> env = processBuilder.environment();
         
         // TMPDIR: Directorio temporal para archivos intermedios
@@ -308,9 +1283,10 @@ public class NativeCompiler {
         env.put("HOME", compilerDir.getAbsolutePath());
         
         // LD_LIBRARY_PATH: Librerías del compilador
-        File libDir = new File(compilerDir, "lib");
-        if (libDir.exists()) {
-            env.put("LD_LIBRARY_PATH", libDir.getAbsolutePath());
+        ToolchainDescriptor toolchain = compilerManager.getToolchain();
+        String libraryPath = toolchain != null ? toolchain.getLibraryPath() : null;
+        if (libraryPath != null) {
+            env.put("LD_LIBRARY_PATH", libraryPath);
         }
 
         // Log de variables de entorno
@@ -318,52 +1294,224 @@ public class NativeCompiler {
         Log.d(TAG, "  TMPDIR: " + env.get("TMPDIR"));
         Log.d(TAG, "  PATH: " + env.get("PATH"));
         Log.d(TAG, "  HOME: " + env.get("HOME"));
+    }
 
-        StringBuilder output = new StringBuilder();
-        boolean success = false;
+    /**
+     * Ejecuta clang entregando su salida línea a línea mientras corre
+     * @param cancellation Cancelación que puede destruir el proceso (puede ser null)
+     * @return el código de salida del proceso
+     * @throws CancellationException si la compilación se canceló
+     */
+    private int runClang(List<String> command, File compilerDir, File tmpDir, 
+                         CompilerOutput output, CancellationToken cancellation) 
+            throws IOException, InterruptedException {
+        return runClang(command, compilerDir, tmpDir, output, cancellation, null);
+    }
+
+    /**
+     * Ejecuta clang escribiendo antes el contenido indicado en su stdin. Si
+     * falla porque falta un header o una librería del sysroot del target que
+     * quedó sin extraer al instalar, la extrae y repite la compilación una vez.
+     * Las líneas del primer intento se muestran mientras llegan, pero si hay
+     * reintento sus errores no quedan en la salida (ver SysrootRetry).
+     * @param stdin Bytes para la entrada estándar de clang (puede ser null)
+     */
+    private int runClang(List<String> command, File compilerDir, File tmpDir, 
+                         CompilerOutput output, CancellationToken cancellation, byte[] stdin) 
+            throws IOException, InterruptedException {
+        String targetTriple = getCommandTarget(command);
+        if (targetTriple == null || !compilerManager.hasDeferredFiles(targetTriple)) {
+            return runClangOnce(command, compilerDir, tmpDir, output, cancellation, stdin);
+        }
 
+        return SysrootRetry.run(output,
+            attempt -> runClangOnce(command, compilerDir, tmpDir, attempt, cancellation, stdin),
+            missing -> {
+                boolean extracted = compilerManager.materializeDeferred(targetTriple, missing);
+                if (extracted) {
+                    Log.d(TAG, "Retrying after extracting sysroot files for " + targetTriple);
+                }
+                return extracted;
+            },
+            "Archivos del sysroot para " + targetTriple + " extraídos, compilando de nuevo...");
+    }
+
+    /**
+     * Target triple (--target=) de un comando de clang, o null si no lo tiene
+     */
+    private static String getCommandTarget(List<String> command) {
+        for (String argument : command) {
+            if (argument.startsWith("--target=")) {
+                return argument.substring("--target=".length());
+            }
+        }
+        return null;
+    }
+
+    private int runClangOnce(List<String> command, File compilerDir, File tmpDir, 
+                             CompilerOutput output, CancellationToken cancellation, byte[] stdin) 
+            throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.redirectErrorStream(true);
+        configureEnvironment(processBuilder, compilerDir, tmpDir);
+
+        if (cancellation != null && cancellation.isCancelled()) {
+            throw new CancellationException();
+        }
+
+        Process process = processBuilder.start();
+        if (cancellation != null && !cancellation.register(process)) {
+            throw new CancellationException();
+        }
+
+        int exitCode;
         try {
-            Process process = processBuilder.start();
+            // clang lee todo el fuente antes de emitir diagnósticos
+            if (stdin != null) {
+                OutputStream processInput = process.getOutputStream();
+                try {
+                    processInput.write(stdin);
+                } finally {
+                    processInput.close();
+                }
+            }
+
+            // Leer salida del proceso a medida que llega
+            output.consume(process.getInputStream());
+            exitCode = process.waitFor();
+        } catch (IOException e) {
+            // Al destruir el proceso se cierra su salida
+            if (cancellation != null && cancellation.isCancelled()) {
+                throw new CancellationException();
+            }
+            throw e;
+        } finally {
+            if (cancellation != null) {
+                cancellation.unregister(process);
+            }
+        }
+
+        if (cancellation != null && cancellation.isCancelled()) {
+            Log.d(TAG, "Clang process destroyed by cancellation");
+            throw new CancellationException();
+        }
+        Log.d(TAG, "Clang exit code " + exitCode + ": " + output.getErrorCount() + " errors, " 
+              + output.getWarningCount() + " warnings");
+        return exitCode;
+    }
 
-            // Leer salida del proceso
-            BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getInputStream()));
-            
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-                Log.d(TAG, "Clang output: " + line);
+    /**
+     * Vuelve a entregar la salida registrada de una entrada de cache
+     */
+    private CompilerOutput replayOutput(String recordedOutput, CompilerOutput.Listener listener) {
+        CompilerOutput output = new CompilerOutput(listener);
+        if (recordedOutput != null && !recordedOutput.isEmpty()) {
+            for (String line : recordedOutput.split("\n")) {
+                output.appendLine(line);
             }
+        }
+        return output;
+    }
+
+    /**
+     * Ejecuta el comando de compilación con variables de entorno
+     */
+    private CompilationResult executeCompilation(List<String> command, File outputFile, 
+                                                 File compilerDir, File tmpDir, 
+                                                 CompilerOutput output, 
+                                                 CancellationToken cancellation) {
+        return executeCompilation(command, outputFile, compilerDir, tmpDir, output, cancellation, null);
+    }
 
-            int exitCode = process.waitFor();
+    /**
+     * Ejecuta la compilación escribiendo antes el fuente en el stdin de clang
+     * @param stdin Fuente para clang, o null si el comando lee un archivo
+     */
+    private CompilationResult executeCompilation(List<String> command, File outputFile, 
+                                                 File compilerDir, File tmpDir, 
+                                                 CompilerOutput output, 
+                                                 CancellationToken cancellation, byte[] stdin) {
+        boolean success = false;
+
+        try {
+            int exitCode = runClang(command, compilerDir, tmpDir, output, cancellation, stdin);
             success = (exitCode == 0 && outputFile.exists());
 
             if (!success) {
-                output.append("\nCódigo de salida: ").append(exitCode);
+                output.appendLine("");
+                output.appendLine("Código de salida: " + exitCode);
                 
                 if (!outputFile.exists()) {
-                    output.append("\nEl archivo de salida no fue creado");
+                    output.appendLine("El archivo de salida no fue creado");
                 }
             } else {
                 Log.d(TAG, "Compilation successful. Output: " + outputFile.getAbsolutePath());
             }
 
-            // Limpiar archivos temporales después de compilar
-            cleanTempDirectory(tmpDir);
-
         } catch (IOException e) {
-            output.append("Error de IO: ").append(e.getMessage()).append("\n");
-            output.append("Stack trace: ").append(Log.getStackTraceString(e));
+            output.appendLine("Error de IO: " + e.getMessage());
+            output.appendLine("Stack trace: " + Log.getStackTraceString(e));
             Log.e(TAG, "IO Error during compilation", e);
         } catch (InterruptedException e) {
-            output.append("Compilación interrumpida: ").append(e.getMessage());
+            output.appendLine("Compilación interrumpida: " + e.getMessage());
             Log.e(TAG, "Compilation interrupted", e);
             Thread.currentThread().interrupt();
+        } catch (CancellationException e) {
+            Log.d(TAG, "Compilation cancelled");
+            outputFile.delete();
+            return CompilationResult.cancelled();
         }
 
         String message = success ? "Compilación exitosa" : "Error de compilación";
-        return new CompilationResult(success, message, output.toString(), 
+        CompilationResult result = new CompilationResult(success, message, output.getText(), 
                                     success ? outputFile.getAbsolutePath() : null, command);
+        result.setDiagnostics(output.getDiagnostics());
+        return result;
+    }
+
+    /**
+     * Estado común de una compilación: toolchain, directorios y salida
+     */
+    private static class CompileSetup {
+        File compilerDir;
+        File clangBinary;
+        File tmpDir;
+        File outputFile;
+        String targetTriple;
+        BuildProfile profile;
+        byte[] stdin;
+    }
+
+    /**
+     * Resultado de compilar el fuente para una ABI
+     */
+    private static class AbiResult {
+        final String abi;
+        final String triple;
+        long elapsedMs;
+        List<String> command;
+        CompilationResult result;
+
+        AbiResult(String abi, String triple) {
+            this.abi = abi;
+            this.triple = triple;
+        }
+    }
+
+    /**
+     * Resultado de compilar una unidad de traducción del proyecto
+     */
+    private static class ObjectResult {
+        final String sourceName;
+        boolean success;
+        boolean fromCache;
+        File objectFile;
+        String output;
+        List<Diagnostic> diagnostics = new ArrayList<>();
+
+        ObjectResult(String sourceName) {
+            this.sourceName = sourceName;
+        }
     }
 
     /**
@@ -375,6 +1523,11 @@ public class NativeCompiler {
         private final String output;
         private final String outputPath;
         private final List<String> command;
+        private boolean fromCache;
+        private String cacheStats;
+        private List<Diagnostic> diagnostics = new ArrayList<>();
+        private boolean cancelled;
+        private String timingReport;
 
         public CompilationResult(boolean success, String message, String output, List<String> command) {
             this.success = success;
@@ -392,10 +1545,36 @@ public class NativeCompiler {
             this.command = command;
         }
 
+        /**
+         * Copia del resultado con otra ruta de salida (la definitiva en el almacén)
+         */
+        CompilationResult withOutputPath(String path) {
+            CompilationResult result = new CompilationResult(success, message, output, path, command);
+            result.fromCache = fromCache;
+            result.cacheStats = cacheStats;
+            result.diagnostics = diagnostics;
+            result.cancelled = cancelled;
+            result.timingReport = timingReport;
+            return result;
+        }
+
+        /**
+         * Resultado de una compilación cancelada (reemplazada por otra más reciente)
+         */
+        static CompilationResult cancelled() {
+            CompilationResult result = new CompilationResult(false, "Compilación cancelada", "", null);
+            result.cancelled = true;
+            return result;
+        }
+
         public boolean isSuccess() {
             return success;
         }
 
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
         public String getMessage() {
             return message;
         }
@@ -408,7 +1587,42 @@ public class NativeCompiler {
             return outputPath;
         }
 
+        void setCacheInfo(boolean fromCache, String cacheStats) {
+            this.fromCache = fromCache;
+            this.cacheStats = cacheStats;
+        }
+
+        public boolean isFromCache() {
+            return fromCache;
+        }
+
+        public String getCacheStats() {
+            return cacheStats;
+        }
+
+        void setTimingReport(String timingReport) {
+            this.timingReport = timingReport;
+        }
+
+        /**
+         * Informe de -ftime-trace, o null si no se pidió
+         */
+        public String getTimingReport() {
+            return timingReport;
+        }
+
+        void setDiagnostics(List<Diagnostic> diagnostics) {
+            this.diagnostics = diagnostics;
+        }
+
+        public List<Diagnostic> getDiagnostics() {
+            return diagnostics;
+        }
+
         public String getCommand() {
+            if (command == null) {
+                return "";
+            }
             String out = "";
             for( String arg : command ) {
                 out += arg + " ";
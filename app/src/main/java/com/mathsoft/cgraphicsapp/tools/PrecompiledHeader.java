@@ -0,0 +1,262 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encabezado precompilado (PCH) con los headers de GLES/EGL/android más usados.
+ *
+ * Se construye una vez por sysroot, target triple y perfil, y se reconstruye cuando
+ * cambian el binario de clang, la instalación del toolchain o los flags de
+ * generación de código (clang rechaza un PCH construido con otras opciones).
+ * Cada reconstrucción escribe un archivo temporal y lo renombra al terminar,
+ * así que las compilaciones en curso nunca leen un PCH incompleto.
+ */
+public class PrecompiledHeader {
+
+    private static final String TAG = "PrecompiledHeader";
+    private static final String PCH_DIR = "pch";
+    private static final String HEADER_NAME = "cgraphics_common.h";
+    private static final String PCH_NAME = "cgraphics_common.h.pch";
+    private static final String STAMP_NAME = ".stamp";
+    private static final String TEMP_EXT = ".tmp";
+
+    /**
+     * Headers incluidos en el PCH
+     */
+    public static final String[] COMMON_HEADERS = {
+        "GLES2/gl2.h",
+        "EGL/egl.h",
+        "android/native_window_jni.h",
+        "android/log.h"
+    };
+
+    // Un lock por directorio de PCH (target y perfil), compartido por todas las
+    // instancias: targets distintos se construyen en paralelo
+    private static final Map<String, Object> buildLocks = new HashMap<>();
+
+    private final File rootDir;
+
+    public PrecompiledHeader(Context context) {
+        this.rootDir = new File(context.getApplicationContext().getFilesDir(), PCH_DIR);
+    }
+
+    /**
+     * Indica si el código fuente incluye alguno de los headers comunes.
+     * Solo en ese caso conviene inyectar el PCH.
+     */
+    public static boolean usesCommonHeaders(String source) {
+        for (String header : COMMON_HEADERS) {
+            if (source.contains("<" + header + ">")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Obtiene el PCH para el target indicado, construyéndolo si no existe o está obsoleto
+     * @param clangBinary Binario de clang
+     * @param sysroot Directorio sysroot del toolchain
+     * @param targetTriple Target triple de la compilación
+     * @param variant Nombre del perfil de compilación (cada uno tiene su propio PCH)
+     * @param codegenFlags Flags que deben coincidir entre el PCH y la compilación
+     * @param installStamp Identificador de la instalación actual del toolchain
+     * @param environment Variables de entorno para ejecutar clang
+     * @param cancellation Cancelación de la compilación que pide el PCH; destruye
+     *                     el clang que lo construye
+     * @return el archivo .pch, o null si no se pudo construir o se canceló
+     */
+    public File obtain(File clangBinary, File sysroot, String targetTriple,
+                       String variant, List<String> codegenFlags, long installStamp,
+                       EnvironmentConfigurator environment, CancellationToken cancellation) {
+        File targetDir = new File(new File(rootDir, targetTriple), variant);
+        synchronized (getBuildLock(targetDir)) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                return null;
+            }
+            return obtainLocked(targetDir, clangBinary, sysroot, targetTriple, variant,
+                codegenFlags, installStamp, environment, cancellation);
+        }
+    }
+
+    private static Object getBuildLock(File targetDir) {
+        synchronized (buildLocks) {
+            String key = targetDir.getAbsolutePath();
+            Object lock = buildLocks.get(key);
+            if (lock == null) {
+                lock = new Object();
+                buildLocks.put(key, lock);
+            }
+            return lock;
+        }
+    }
+
+    private File obtainLocked(File targetDir, File clangBinary, File sysroot, String targetTriple,
+                              String variant, List<String> codegenFlags, long installStamp,
+                              EnvironmentConfigurator environment, CancellationToken cancellation) {
+        File pchFile = new File(targetDir, PCH_NAME);
+        File stampFile = new File(targetDir, STAMP_NAME);
+
+        String stamp = computeStamp(clangBinary, sysroot, targetTriple, codegenFlags, installStamp);
+
+        try {
+            if (pchFile.exists() && stampFile.exists()
+                    && stamp.equals(FileUtils.readText(stampFile))) {
+                return pchFile;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudo leer el stamp del PCH", e);
+        }
+
+        Log.d(TAG, "Construyendo PCH para " + targetTriple + " (" + variant + ")");
+        long start = System.currentTimeMillis();
+
+        if (!targetDir.exists() && !targetDir.mkdirs()) {
+            Log.e(TAG, "Failed to create PCH directory: " + targetDir.getAbsolutePath());
+            return null;
+        }
+        // Restos de construcciones interrumpidas (nadie más construye: se tiene el lock)
+        File[] leftovers = targetDir.listFiles((dir, name) -> name.endsWith(TEMP_EXT));
+        if (leftovers != null) {
+            for (File leftover : leftovers) {
+                leftover.delete();
+            }
+        }
+
+        // El PCH anterior sigue en su sitio hasta que el nuevo está completo: una
+        // compilación que ya pasó -include-pch con esta ruta nunca ve un archivo a medias
+        File tempPch = null;
+        try {
+            File header = new File(targetDir, HEADER_NAME);
+            StringBuilder content = new StringBuilder();
+            content.append("/* Generado automáticamente: headers comunes precompilados */\n");
+            for (String common : COMMON_HEADERS) {
+                content.append("#include <").append(common).append(">\n");
+            }
+            // Reescribir el header cambiaría su fecha, y clang rechaza el PCH en uso
+            if (!header.exists() || !content.toString().equals(FileUtils.readText(header))) {
+                FileUtils.writeTextAtomic(header, content.toString());
+            }
+
+            tempPch = File.createTempFile(PCH_NAME, TEMP_EXT, targetDir);
+
+            List<String> command = new ArrayList<>();
+            command.add(clangBinary.getAbsolutePath());
+            command.add("--target=" + targetTriple);
+            command.add("--sysroot=" + sysroot.getAbsolutePath());
+            command.add("-x");
+            command.add("c-header");
+            command.addAll(codegenFlags);
+            command.add("-w");
+            command.add(header.getAbsolutePath());
+            command.add("-o");
+            command.add(tempPch.getAbsolutePath());
+
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
+            processBuilder.redirectErrorStream(true);
+            environment.configure(processBuilder);
+
+            Process process = processBuilder.start();
+            if (cancellation != null && !cancellation.register(process)) {
+                tempPch.delete();
+                return null;
+            }
+            StringBuilder output = new StringBuilder();
+            int exitCode;
+            try {
+                BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream()));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.append(line).append("\n");
+                }
+                reader.close();
+                exitCode = process.waitFor();
+            } finally {
+                if (cancellation != null) {
+                    cancellation.unregister(process);
+                }
+            }
+
+            if (cancellation != null && cancellation.isCancelled()) {
+                Log.d(TAG, "Construcción de PCH cancelada: " + targetTriple + " (" + variant + ")");
+                tempPch.delete();
+                return null;
+            }
+            if (exitCode != 0 || tempPch.length() == 0) {
+                Log.w(TAG, "Fallo al construir el PCH (" + exitCode + "): " + output);
+                tempPch.delete();
+                return null;
+            }
+
+            // rename reemplaza el PCH anterior de forma atómica; quien lo tenga
+            // abierto sigue leyendo el archivo viejo
+            if (!tempPch.renameTo(pchFile)) {
+                Log.e(TAG, "No se pudo mover el PCH a " + pchFile.getAbsolutePath());
+                tempPch.delete();
+                return null;
+            }
+            FileUtils.writeTextAtomic(stampFile, stamp);
+            Log.d(TAG, "PCH listo en " + (System.currentTimeMillis() - start) + " ms: "
+                + pchFile.getAbsolutePath());
+            return pchFile;
+
+        } catch (IOException e) {
+            Log.e(TAG, "Error construyendo PCH", e);
+        } catch (InterruptedException e) {
+            Log.e(TAG, "Construcción de PCH interrumpida", e);
+            Thread.currentThread().interrupt();
+        }
+        if (tempPch != null) {
+            tempPch.delete();
+        }
+        return null;
+    }
+
+    /**
+     * Directorio raíz de los PCH
+     */
+    public File getRootDirectory() {
+        return rootDir;
+    }
+
+    /**
+     * Elimina todos los PCH (por ejemplo al desinstalar el toolchain)
+     */
+    public void clear() {
+        FileUtils.deleteRecursive(rootDir);
+    }
+
+    private String computeStamp(File clangBinary, File sysroot, String targetTriple,
+                                List<String> codegenFlags, long installStamp) {
+        MessageDigest md = HashUtils.newDigest();
+        HashUtils.update(md, clangBinary.getAbsolutePath());
+        HashUtils.update(md, String.valueOf(clangBinary.length()));
+        HashUtils.update(md, String.valueOf(clangBinary.lastModified()));
+        HashUtils.update(md, sysroot.getAbsolutePath());
+        HashUtils.update(md, targetTriple);
+        HashUtils.update(md, String.valueOf(installStamp));
+        for (String flag : codegenFlags) {
+            HashUtils.update(md, flag);
+        }
+        return HashUtils.toHex(md.digest());
+    }
+
+    /**
+     * Configura las variables de entorno del proceso de clang
+     */
+    public interface EnvironmentConfigurator {
+        void configure(ProcessBuilder processBuilder);
+    }
+}
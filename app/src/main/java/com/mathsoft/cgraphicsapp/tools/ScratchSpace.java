@@ -0,0 +1,98 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Directorios temporales aislados para cada compilación.
+ *
+ * Cada trabajo (compilación, revisión de sintaxis, release en segundo plano)
+ * recibe su propio directorio bajo cache/clang_jobs, de modo que varios clang
+ * pueden correr a la vez sin pisarse los archivos. Al terminar, el directorio
+ * se renombra y se borra en un hilo de baja prioridad, fuera del camino de la
+ * compilación. Los restos de procesos anteriores se barren una vez por proceso.
+ */
+public class ScratchSpace {
+
+    private static final String TAG = "ScratchSpace";
+    private static final String ROOT_DIR = "clang_jobs";
+    private static final String TRASH_PREFIX = "trash-";
+
+    // Directorios del esquema anterior, compartidos por todas las compilaciones
+    private static final String[] LEGACY_DIRS = { "clang_tmp", "clang_syntax_tmp" };
+
+    private static final AtomicLong nextJobId = new AtomicLong();
+    private static final String processPrefix = android.os.Process.myPid() + "-";
+    private static boolean staleSwept;
+
+    private static final ExecutorService SWEEPER = 
+        BackgroundExecutors.newSingleThreadExecutor("scratch-sweeper");
+
+    private final File cacheDir;
+    private final File rootDir;
+
+    public ScratchSpace(Context context) {
+        this.cacheDir = context.getApplicationContext().getCacheDir();
+        this.rootDir = new File(cacheDir, ROOT_DIR);
+        sweepStale();
+    }
+
+    /**
+     * Crea un directorio nuevo y exclusivo para un trabajo
+     * @param kind Tipo de trabajo, solo para identificarlo en el nombre
+     * @return el directorio, o null si no se pudo crear
+     */
+    public File createJobDirectory(String kind) {
+        File jobDir = new File(rootDir, processPrefix + nextJobId.incrementAndGet() + "-" + kind);
+        if (!jobDir.mkdirs()) {
+            Log.e(TAG, "Failed to create job directory: " + jobDir.getAbsolutePath());
+            return null;
+        }
+        return jobDir;
+    }
+
+    /**
+     * Libera el directorio de un trabajo terminado. El renombrado es inmediato;
+     * el borrado del contenido se hace en segundo plano.
+     */
+    public void release(File jobDir) {
+        if (jobDir == null) {
+            return;
+        }
+        File trash = new File(rootDir, TRASH_PREFIX + jobDir.getName());
+        File target = jobDir.renameTo(trash) ? trash : jobDir;
+        SWEEPER.execute(() -> FileUtils.deleteRecursive(target));
+    }
+
+    /**
+     * Borra, en segundo plano, los directorios de procesos anteriores y los
+     * del esquema con un único directorio compartido
+     */
+    private void sweepStale() {
+        synchronized (ScratchSpace.class) {
+            if (staleSwept) {
+                return;
+            }
+            staleSwept = true;
+        }
+
+        SWEEPER.execute(() -> {
+            File[] entries = rootDir.listFiles();
+            if (entries != null) {
+                for (File entry : entries) {
+                    // Los trabajos de este proceso se liberan por su cuenta
+                    if (!entry.getName().startsWith(processPrefix)) {
+                        FileUtils.deleteRecursive(entry);
+                    }
+                }
+            }
+            for (String legacy : LEGACY_DIRS) {
+                FileUtils.deleteRecursive(new File(cacheDir, legacy));
+            }
+        });
+    }
+}
@@ -0,0 +1,132 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Revisión de sintaxis en segundo plano mientras se escribe.
+ *
+ * Ejecuta clang -fsyntax-only sobre el buffer del editor con baja prioridad.
+ * Una revisión nueva cancela la que esté en curso, y los resultados se
+ * guardan por hash de contenido (del buffer y de los headers locales que
+ * incluye) para que volver a un estado ya revisado (por ejemplo al deshacer)
+ * no cueste nada.
+ */
+public class SyntaxChecker {
+
+    private static final String TAG = "SyntaxChecker";
+    private static final int MAX_CACHED_RESULTS = 32;
+
+    private final NativeCompiler compiler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor;
+    private final Map<String, List<Diagnostic>> results;
+    private CancellationToken currentCheck;
+    private int generation;
+
+    /**
+     * Recibe los diagnósticos en el hilo principal
+     */
+    public interface SyntaxCallback {
+        void onSyntaxChecked(List<Diagnostic> diagnostics);
+    }
+
+    public SyntaxChecker(NativeCompiler compiler) {
+        this.compiler = compiler;
+
+        // clang hereda la prioridad del hilo que lo lanza
+        this.executor = BackgroundExecutors.newSingleThreadExecutor("syntax-checker");
+
+        // LRU por orden de acceso
+        this.results = new LinkedHashMap<String, List<Diagnostic>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<Diagnostic>> eldest) {
+                return size() > MAX_CACHED_RESULTS;
+            }
+        };
+    }
+
+    /**
+     * Revisa el código; solo se entrega el resultado de la última petición.
+     * Debe llamarse desde el hilo principal.
+     * @param sourceFile Archivo del buffer, para resolver los #include "..." locales
+     *                   y los headers de los que depende (puede ser null)
+     */
+    public void check(String source, File sourceFile, SyntaxCallback callback) {
+        if (currentCheck != null) {
+            currentCheck.cancel();
+            currentCheck = null;
+        }
+
+        final int checkGeneration = ++generation;
+        final CancellationToken cancellation = new CancellationToken();
+        currentCheck = cancellation;
+
+        executor.execute(() -> {
+            if (cancellation.isCancelled()) {
+                return;
+            }
+
+            // La clave incluye los headers locales: editar uno invalida el resultado
+            String key = computeKey(source, sourceFile);
+            List<Diagnostic> cached;
+            synchronized (results) {
+                cached = results.get(key);
+            }
+
+            List<Diagnostic> diagnostics = cached;
+            if (diagnostics == null) {
+                long start = System.currentTimeMillis();
+                diagnostics = compiler.checkSyntax(source, sourceFile, cancellation);
+                if (diagnostics == null) {
+                    return;
+                }
+                Log.d(TAG, "Syntax check: " + diagnostics.size() + " diagnostics in "
+                      + (System.currentTimeMillis() - start) + " ms");
+
+                // Con los headers recién registrados la clave puede haber cambiado
+                synchronized (results) {
+                    results.put(computeKey(source, sourceFile), diagnostics);
+                }
+            }
+
+            final List<Diagnostic> delivered = diagnostics;
+            mainHandler.post(() -> {
+                if (checkGeneration == generation) {
+                    currentCheck = null;
+                    callback.onSyntaxChecked(delivered);
+                }
+            });
+        });
+    }
+
+    /**
+     * Cancela la revisión en curso y libera el hilo de trabajo
+     */
+    public void shutdown() {
+        if (currentCheck != null) {
+            currentCheck.cancel();
+            currentCheck = null;
+        }
+        generation++;
+        executor.shutdown();
+    }
+
+    private String computeKey(String source, File sourceFile) {
+        MessageDigest md = HashUtils.newDigest();
+        md.update(source.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+        HashUtils.update(md, sourceFile != null ? sourceFile.getAbsolutePath() : "");
+        HashUtils.update(md, sourceFile != null ? compiler.hashDependencies(sourceFile) : "");
+        return HashUtils.toHex(md.digest());
+    }
+}
@@ -0,0 +1,136 @@
+package com.mathsoft.cgraphicsapp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compilación con un reintento cuando faltan archivos del sysroot que
+ * quedaron sin extraer al instalar (ver ClangCompilerManager.materializeDeferred).
+ *
+ * Las líneas del primer intento se muestran mientras llegan, pero no pasan
+ * a la salida real hasta saber si hay reintento: si lo hay, sus errores
+ * ("file not found") se descartan y el resultado, los diagnósticos y lo que
+ * se guarda en el cache salen solo del segundo intento.
+ */
+final class SysrootRetry {
+
+    // Mensajes de clang y lld cuando falta un header, una librería o un crt*.o;
+    // el grupo es el archivo como lo nombra el mensaje
+    private static final Pattern[] MISSING_FILE_PATTERNS = {
+        Pattern.compile("'([^']+)' file not found"),
+        Pattern.compile("unable to find library (-l\\S+)"),
+        Pattern.compile("cannot open ([^:\\s]+): [Nn]o such file or directory"),
+        Pattern.compile("cannot find (\\S+)")
+    };
+
+    private SysrootRetry() {
+    }
+
+    /**
+     * Una ejecución de clang que escribe su salida en la indicada
+     */
+    interface Attempt {
+        int run(CompilerOutput output) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Extrae los archivos pendientes
+     */
+    interface Materializer {
+        /**
+         * @param missing Archivos que la salida reporta como no encontrados
+         * @return true si se extrajo algo y vale la pena reintentar
+         */
+        boolean materialize(List<String> missing);
+    }
+
+    /**
+     * Ejecuta el intento y, si falla por archivos que el materializador
+     * puede extraer, lo repite una vez
+     * @param notice Línea que se agrega a la salida antes del reintento
+     * @return el código de salida del último intento
+     */
+    static int run(CompilerOutput output, Attempt attempt, Materializer materializer,
+                   String notice) throws IOException, InterruptedException {
+        FirstAttempt first = new FirstAttempt(output);
+        int exitCode;
+        try {
+            exitCode = attempt.run(first);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            first.commit();
+            throw e;
+        }
+
+        List<String> missing = first.getMissing();
+        if (exitCode == 0 || missing.isEmpty() || !materializer.materialize(missing)) {
+            first.commit();
+            return exitCode;
+        }
+        output.appendLine(notice);
+        return attempt.run(output);
+    }
+
+    /**
+     * Header, librería u objeto de arranque que una línea reporta como no
+     * encontrado, o null
+     */
+    static String findMissingFile(String line) {
+        for (Pattern pattern : MISSING_FILE_PATTERNS) {
+            Matcher matcher = pattern.matcher(line);
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Salida provisional del primer intento: muestra cada línea al llegar,
+     * anota los archivos que faltan y guarda las líneas completas para
+     * pasarlas a la salida real si no hay reintento
+     */
+    private static class FirstAttempt extends CompilerOutput {
+        private final CompilerOutput target;
+        private final List<String> lines = new ArrayList<>();
+        private final List<String> missing = new ArrayList<>();
+
+        FirstAttempt(CompilerOutput target) {
+            super(null);
+            this.target = target;
+        }
+
+        @Override
+        public void appendLine(String line) {
+            String file = findMissingFile(line);
+            synchronized (this) {
+                lines.add(line);
+                if (file != null) {
+                    missing.add(file);
+                }
+            }
+            target.streamLine(line);
+        }
+
+        synchronized List<String> getMissing() {
+            return new ArrayList<>(missing);
+        }
+
+        /**
+         * Pasa las líneas a la salida real, con sus diagnósticos; las líneas
+         * ya se mostraron y no se vuelven a entregar
+         */
+        void commit() {
+            List<String> committed;
+            synchronized (this) {
+                committed = new ArrayList<>(lines);
+                lines.clear();
+            }
+            for (String line : committed) {
+                target.appendStreamedLine(line);
+            }
+        }
+    }
+}
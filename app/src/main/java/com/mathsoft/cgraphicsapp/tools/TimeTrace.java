@@ -0,0 +1,232 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resumen de las trazas JSON que genera clang con -ftime-trace.
+ *
+ * Agrupa el tiempo por fase (frontend, optimización, generación de código y
+ * enlazado) y acumula los headers, funciones y passes más lentos. En el modo
+ * proyecto se combinan las trazas de todas las unidades de traducción.
+ */
+public class TimeTrace {
+
+    private static final String TAG = "TimeTrace";
+    private static final int TOP_ENTRIES = 5;
+
+    // Tiempos en microsegundos, como en la traza de clang
+    private long frontendUs;
+    private long optimizerUs;
+    private long codegenUs;
+    private long linkUs;
+    private long compilerUs;
+    private long wallUs;
+    private int traceCount;
+    private String clangVersion;
+
+    private final Map<String, Long> headers = new HashMap<>();
+    private final Map<String, Long> functions = new HashMap<>();
+    private final Map<String, Long> passes = new HashMap<>();
+
+    /**
+     * Versión de clang que compiló, para explicar una traza vacía (puede ser null)
+     */
+    public void setClangVersion(String clangVersion) {
+        this.clangVersion = clangVersion;
+    }
+
+    /**
+     * Lee todas las trazas .json de un directorio y las borra
+     */
+    public void addTraces(File traceDir) {
+        File[] files = traceDir.listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            try {
+                addTrace(FileUtils.readText(file));
+            } catch (IOException | JSONException e) {
+                Log.w(TAG, "No se pudo leer la traza: " + file.getName(), e);
+            }
+            file.delete();
+        }
+    }
+
+    /**
+     * Acumula una traza en formato Chrome Trace Event
+     */
+    void addTrace(String json) throws JSONException {
+        JSONArray events = new JSONObject(json).getJSONArray("traceEvents");
+        for (int i = 0; i < events.length(); i++) {
+            JSONObject event = events.optJSONObject(i);
+            if (event == null || !"X".equals(event.optString("ph"))) {
+                continue;
+            }
+
+            String name = event.optString("name");
+            long duration = event.optLong("dur");
+            JSONObject args = event.optJSONObject("args");
+            String detail = args != null ? args.optString("detail", "") : "";
+
+            switch (name) {
+                case "ExecuteCompiler":
+                    compilerUs += duration;
+                    break;
+                case "Frontend":
+                    frontendUs += duration;
+                    break;
+                case "Optimizer":
+                    optimizerUs += duration;
+                    break;
+                case "CodeGenPasses":
+                    codegenUs += duration;
+                    break;
+                case "Source":
+                    addTo(headers, detail, duration);
+                    break;
+                case "ParseFunctionDefinition":
+                case "OptFunction":
+                case "CodeGen Function":
+                    addTo(functions, detail, duration);
+                    break;
+                case "RunPass":
+                case "RunLoopPass":
+                    addTo(passes, detail, duration);
+                    break;
+                default:
+                    break;
+            }
+        }
+        traceCount++;
+    }
+
+    private static void addTo(Map<String, Long> totals, String key, long duration) {
+        if (key.isEmpty()) {
+            return;
+        }
+        Long current = totals.get(key);
+        totals.put(key, current != null ? current + duration : duration);
+    }
+
+    /**
+     * Registra el tiempo de enlazado, medido fuera de clang
+     */
+    public void setLinkTime(long millis) {
+        linkUs = millis * 1000;
+    }
+
+    /**
+     * Registra el tiempo total de pared de la compilación
+     */
+    public void setWallTime(long millis) {
+        wallUs = millis * 1000;
+    }
+
+    public boolean isEmpty() {
+        return traceCount == 0;
+    }
+
+    public long getFrontendMs() {
+        return frontendUs / 1000;
+    }
+
+    public long getOptimizerMs() {
+        return optimizerUs / 1000;
+    }
+
+    public long getCodegenMs() {
+        return codegenUs / 1000;
+    }
+
+    /**
+     * Tiempo total dentro del compilador (cc1), sin driver ni enlazador
+     */
+    public long getCompilerMs() {
+        return compilerUs / 1000;
+    }
+
+    public long getLinkMs() {
+        return linkUs / 1000;
+    }
+
+    public long getWallMs() {
+        return wallUs / 1000;
+    }
+
+    /**
+     * Informe legible para la consola
+     */
+    public String formatReport() {
+        StringBuilder report = new StringBuilder();
+        if (traceCount == 0) {
+            // -ftime-trace existe desde clang 9, pero con directorio (=<dir>) desde clang 16
+            int major = getMajorVersion(clangVersion);
+            if (major > 0 && major < 16) {
+                report.append("clang ").append(clangVersion)
+                      .append(" no admite -ftime-trace=<directorio> (requiere clang 16 o superior)\n");
+            } else {
+                report.append("clang no escribió trazas en el directorio esperado ")
+                      .append("(puede haberlas dejado junto al archivo de salida)\n");
+            }
+            return report.toString();
+        }
+
+        report.append("Frontend:     ").append(getFrontendMs()).append(" ms\n");
+        report.append("Optimización: ").append(getOptimizerMs()).append(" ms\n");
+        report.append("Codegen:      ").append(getCodegenMs()).append(" ms\n");
+        if (linkUs > 0) {
+            report.append("Enlazado:     ").append(getLinkMs()).append(" ms\n");
+        }
+        report.append("Total:        ").append(getWallMs()).append(" ms\n");
+
+        appendTop(report, "Headers más lentos", headers, true);
+        appendTop(report, "Funciones más lentas", functions, false);
+        appendTop(report, "Passes más lentos", passes, false);
+        return report.toString();
+    }
+
+    /**
+     * Versión mayor de clang ("17.0.2" -> 17), o 0 si no se conoce
+     */
+    private static int getMajorVersion(String version) {
+        if (version == null) {
+            return 0;
+        }
+        int end = 0;
+        while (end < version.length() && Character.isDigit(version.charAt(end))) {
+            end++;
+        }
+        return end > 0 ? Integer.parseInt(version.substring(0, end)) : 0;
+    }
+
+    private void appendTop(StringBuilder report, String title, Map<String, Long> totals,
+                           boolean shortenPaths) {
+        if (totals.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(totals.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+
+        report.append("\n").append(title).append(":\n");
+        for (int i = 0; i < Math.min(TOP_ENTRIES, entries.size()); i++) {
+            Map.Entry<String, Long> entry = entries.get(i);
+            String name = entry.getKey();
+            if (shortenPaths) {
+                name = new File(name).getName();
+            }
+            report.append("  ").append(entry.getValue() / 1000).append(" ms  ").append(name).append("\n");
+        }
+    }
+}
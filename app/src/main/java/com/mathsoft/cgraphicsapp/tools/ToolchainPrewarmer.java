@@ -0,0 +1,286 @@
+package com.mathsoft.cgraphicsapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Precarga del toolchain en la cache de páginas del sistema.
+ *
+ * Tras un arranque en frío, la primera compilación tiene que leer de la flash
+ * el binario de clang y los headers del sysroot. Este trabajo los lee
+ * secuencialmente con baja prioridad al abrir la app, y se detiene en cuanto
+ * empieza una compilación real (la revisión de sintaxis no la detiene). Se
+ * registra la duración de la primera compilación de cada proceso según el
+ * estado al empezarla: con la precarga terminada, sin ella, o con clang ya
+ * cargado por una revisión de sintaxis, para poder comparar los casos.
+ */
+public class ToolchainPrewarmer {
+
+    private static final String TAG = "ToolchainPrewarmer";
+    private static final String STATS_FILE = "prewarm_stats.json";
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    // Headers que incluyen casi todos los programas (y el PCH)
+    private static final String[] HOT_INCLUDE_DIRS = { "GLES2", "GLES3", "EGL", "android" };
+
+    // Estado al empezar la primera compilación
+    static final String STATE_WARM = "warm";
+    static final String STATE_COLD = "cold";
+    static final String STATE_CHECKED = "checked";
+
+    private static volatile boolean cancelled;
+    private static volatile boolean completed;
+    private static volatile boolean syntaxChecked;
+    private static boolean started;
+    private static boolean firstCompileRecorded;
+
+    private ToolchainPrewarmer() {
+    }
+
+    /**
+     * Inicia la precarga en segundo plano, una sola vez por proceso
+     */
+    public static void start(Context context) {
+        synchronized (ToolchainPrewarmer.class) {
+            if (started) {
+                return;
+            }
+            started = true;
+            cancelled = false;
+        }
+
+        Context appContext = context.getApplicationContext();
+        BackgroundExecutors.threadFactory("toolchain-prewarm")
+            .newThread(() -> prewarm(appContext))
+            .start();
+    }
+
+    /**
+     * Detiene la precarga para no competir con una compilación real
+     */
+    public static void cancel() {
+        cancelled = true;
+    }
+
+    private static void prewarm(Context context) {
+        ToolchainDescriptor toolchain = new ClangCompilerManager(context).getToolchain();
+        if (toolchain == null) {
+            return;
+        }
+
+        List<File> files = collectHotFiles(toolchain);
+        long start = System.currentTimeMillis();
+        long bytes = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        for (File file : files) {
+            if (cancelled) {
+                break;
+            }
+            bytes += readFully(file, buffer);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        if (cancelled) {
+            Log.d(TAG, "Prewarm interrupted by a compile after " + elapsed + " ms");
+            return;
+        }
+
+        completed = true;
+        Log.d(TAG, "Prewarmed " + files.size() + " files (" + (bytes / 1024) + " KB) in "
+              + elapsed + " ms");
+        synchronized (ToolchainPrewarmer.class) {
+            JSONObject stats = loadStats(context);
+            try {
+                stats.put("lastPrewarmMs", elapsed);
+                stats.put("lastPrewarmBytes", bytes);
+            } catch (JSONException e) {
+                return;
+            }
+            saveStats(context, stats);
+        }
+    }
+
+    /**
+     * Archivos que lee toda compilación: clang, sus librerías, los headers
+     * intrínsecos y los del sysroot más usados
+     */
+    private static List<File> collectHotFiles(ToolchainDescriptor toolchain) {
+        List<File> files = new ArrayList<>();
+        files.add(toolchain.getClangBinary());
+
+        if (toolchain.getLibDir() != null) {
+            File[] libraries = toolchain.getLibDir().listFiles((dir, name) -> name.contains(".so"));
+            if (libraries != null) {
+                for (File library : libraries) {
+                    files.add(library);
+                }
+            }
+        }
+
+        if (toolchain.getResourceDir() != null) {
+            collectFiles(new File(toolchain.getResourceDir(), "include"), files, false);
+        }
+
+        File includeDir = new File(toolchain.getSysrootDir(), "usr/include");
+        collectFiles(includeDir, files, false);
+        for (String dir : HOT_INCLUDE_DIRS) {
+            collectFiles(new File(includeDir, dir), files, true);
+        }
+        return files;
+    }
+
+    private static void collectFiles(File dir, List<File> files, boolean recursive) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isFile()) {
+                files.add(child);
+            } else if (recursive && child.isDirectory()) {
+                collectFiles(child, files, true);
+            }
+        }
+    }
+
+    /**
+     * Lee un archivo completo (solo para traerlo a memoria) y devuelve los bytes leídos
+     */
+    private static long readFully(File file, byte[] buffer) {
+        long total = 0;
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read;
+            while (!cancelled && (read = in.read(buffer)) != -1) {
+                total += read;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not prewarm " + file.getName());
+        }
+        return total;
+    }
+
+    /**
+     * Registra que una revisión de sintaxis ejecutó clang (lo trae a memoria
+     * aunque la precarga no haya terminado)
+     */
+    static void recordSyntaxCheck() {
+        syntaxChecked = true;
+    }
+
+    /**
+     * Estado del toolchain al empezar una compilación: precarga terminada
+     * (STATE_WARM), clang ya ejecutado por una revisión de sintaxis
+     * (STATE_CHECKED) o nada de eso (STATE_COLD). Se toma antes de compilar,
+     * porque la precarga puede terminar mientras tanto.
+     */
+    static String getCompileStartState() {
+        if (completed) {
+            return STATE_WARM;
+        }
+        return syntaxChecked ? STATE_CHECKED : STATE_COLD;
+    }
+
+    /**
+     * Registra la duración de la primera compilación real del proceso
+     * (las siguientes ya encuentran el toolchain en memoria y no cuentan)
+     * @param startState Estado al empezar la compilación (getCompileStartState)
+     * @return resumen para el log, o null si no era la primera
+     */
+    static String recordFirstCompile(Context context, long millis, String startState) {
+        synchronized (ToolchainPrewarmer.class) {
+            if (firstCompileRecorded) {
+                return null;
+            }
+            firstCompileRecorded = true;
+
+            JSONObject stats = loadStats(context);
+            try {
+                stats.put(startState + "Count", stats.optLong(startState + "Count") + 1);
+                stats.put(startState + "TotalMs", stats.optLong(startState + "TotalMs") + millis);
+            } catch (JSONException e) {
+                return null;
+            }
+            saveStats(context, stats);
+
+            String summary = "First compile " + millis + " ms (" + startState + "); " + formatSummary(stats);
+            Log.d(TAG, summary);
+            return summary;
+        }
+    }
+
+    /**
+     * Si ya terminó la primera compilación real del proceso
+     */
+    static boolean isFirstCompileDone() {
+        synchronized (ToolchainPrewarmer.class) {
+            return firstCompileRecorded;
+        }
+    }
+
+    /**
+     * Resumen de la medición para mostrar en la interfaz, o null si aún no hay datos
+     */
+    public static String getSummary(Context context) {
+        synchronized (ToolchainPrewarmer.class) {
+            JSONObject stats = loadStats(context);
+            if (stats.optLong("warmCount") == 0 && stats.optLong("coldCount") == 0
+                    && stats.optLong("checkedCount") == 0) {
+                return null;
+            }
+            return formatSummary(stats);
+        }
+    }
+
+    private static String formatSummary(JSONObject stats) {
+        StringBuilder summary = new StringBuilder("Primera compilación:");
+        appendAverage(summary, "con precarga", stats, "warm");
+        appendAverage(summary, "sin precarga", stats, "cold");
+        appendAverage(summary, "tras revisar la sintaxis", stats, "checked");
+        long prewarmMs = stats.optLong("lastPrewarmMs");
+        if (prewarmMs > 0) {
+            summary.append(" · precarga ").append(prewarmMs).append(" ms (")
+                   .append(stats.optLong("lastPrewarmBytes") / (1024 * 1024)).append(" MB)");
+        }
+        return summary.toString();
+    }
+
+    private static void appendAverage(StringBuilder summary, String label, JSONObject stats,
+                                      String prefix) {
+        long count = stats.optLong(prefix + "Count");
+        if (count > 0) {
+            summary.append(" ").append(label).append(" ")
+                   .append(stats.optLong(prefix + "TotalMs") / count).append(" ms (n=")
+                   .append(count).append(")");
+        }
+    }
+
+    private static JSONObject loadStats(Context context) {
+        File file = new File(context.getFilesDir(), STATS_FILE);
+        if (file.exists()) {
+            try {
+                return new JSONObject(FileUtils.readText(file));
+            } catch (IOException | JSONException e) {
+                Log.w(TAG, "Prewarm stats unreadable, starting over");
+            }
+        }
+        return new JSONObject();
+    }
+
+    private static void saveStats(Context context, JSONObject stats) {
+        try {
+            FileUtils.writeTextAtomic(new File(context.getFilesDir(), STATS_FILE), stats.toString());
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving prewarm stats", e);
+        }
+    }
+}
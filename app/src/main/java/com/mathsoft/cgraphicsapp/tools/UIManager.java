@@ -24,6 +24,7 @@ public class UIManager {
     private ProgressBar progressBar;
     private ProgressBar loadingIndicator;
     private TabHost tabHost;
+    private Diagnostic firstError;
     
     public UIManager(Activity activity) {
         this.activity = activity;
@@ -127,7 +128,8 @@ public class UIManager {
             progressBar.setVisibility(View.VISIBLE);
             compileButton.setEnabled(false);
             executeButton.setEnabled(false);
-            consoleOutput.setText("Compilando...\n(Eliminando versión anterior si existe)");
+            consoleOutput.setText("Compilando...\n(Eliminando versión anterior si existe)\n\n");
+            firstError = null;
             
             // Cambiar a la pestaña de consola
             if (tabHost != null) {
@@ -136,6 +138,32 @@ public class UIManager {
         });
     }
     
+    /**
+     * Agrega salida de clang a la consola mientras compila (una o varias
+     * líneas; CompilationManager la entrega en bloques desde el hilo principal)
+     */
+    public void appendCompilerOutput(String lines) {
+        activity.runOnUiThread(() -> consoleOutput.append(lines + "\n"));
+    }
+
+    /**
+     * Muestra el primer error en cuanto clang lo reporta, sin esperar al final
+     */
+    public void showDiagnostic(Diagnostic diagnostic) {
+        if (!diagnostic.isError()) {
+            return;
+        }
+        activity.runOnUiThread(() -> {
+            if (firstError != null) {
+                return;
+            }
+            firstError = diagnostic;
+            changeStatusText.setVisibility(View.VISIBLE);
+            changeStatusText.setText("✗ " + diagnostic);
+            changeStatusText.setTextColor(0xFFFF0000);
+        });
+    }
+
     public void showCompilationResult(CompilationResult result, boolean saveToExternal) {
         activity.runOnUiThread(() -> {
             progressBar.setVisibility(View.GONE);
@@ -149,7 +177,25 @@ public class UIManager {
             StringBuilder output = new StringBuilder();
             output.append("═══ RESULTADO DE COMPILACIÓN ═══\n\n");
             output.append("Estado: ").append(result.isSuccess ? "✓ ÉXITO" : "✗ ERROR").append("\n");
-            output.append("Mensaje: ").append(result.message).append("\n\n");
+            output.append("Mensaje: ").append(result.message).append("\n");
+            if (result.cacheStats != null) {
+                output.append("Cache: ").append(result.fromCache ? "✓ reutilizado" : "compilado")
+                    .append(" — ").append(result.cacheStats).append("\n");
+            }
+            if (result.diagnostics != null && !result.diagnostics.isEmpty()) {
+                int errors = 0;
+                int warnings = 0;
+                for (Diagnostic diagnostic : result.diagnostics) {
+                    if (diagnostic.isError()) {
+                        errors++;
+                    } else if (diagnostic.severity == Diagnostic.Severity.WARNING) {
+                        warnings++;
+                    }
+                }
+                output.append("Diagnósticos: ").append(errors).append(" errores, ")
+                    .append(warnings).append(" warnings\n");
+            }
+            output.append("\n");
 
             if (result.isSuccess && result.outputPath != null) {
                 output.append("Archivo generado:\n");
@@ -158,22 +204,54 @@ public class UIManager {
                 File outputFile = new File(result.outputPath);
                 output.append("Tamaño: ").append(formatFileSize(outputFile.length())).append("\n");
                 output.append("Ubicación: ").append(saveToExternal ? 
-                    "Almacenamiento externo (/mis_so/)" : 
+                    "Almacenamiento interno (exportando copia a /mis_so/)" : 
                     "Almacenamiento interno").append("\n\n");
                 
                 output.append("✓ Presiona '▶' para ejecutar\n\n");
             }
 
+            if (result.timingReport != null) {
+                output.append("═══ TIEMPOS (-ftime-trace) ═══\n");
+                output.append(result.timingReport).append("\n");
+            }
+
             if (result.output != null && !result.output.isEmpty()) {
                 output.append("\n═══ SALIDA DEL COMPILADOR ═══\n");
                 output.append(result.output);
             }
 
             consoleOutput.setText(output.toString());
-            changeStatusText.setVisibility(View.GONE);
+
+            // Mantener visible el primer error si la compilación falló
+            if (result.isSuccess || firstError == null) {
+                changeStatusText.setVisibility(View.GONE);
+            }
         });
     }
     
+    /**
+     * Informa el fin de la compilación release en segundo plano sin tocar la consola
+     */
+    public void showBackgroundBuildResult(CompilationResult result) {
+        activity.runOnUiThread(() -> {
+            if (changeStatusText.getVisibility() == View.VISIBLE && firstError != null) {
+                return; // No tapar el error de la compilación principal
+            }
+            changeStatusText.setVisibility(View.VISIBLE);
+            if (result.isSuccess) {
+                changeStatusText.setText("✓ Release listo: al cambiar de perfil se reutiliza");
+                changeStatusText.setTextColor(0xFF4CAF50);
+            } else {
+                changeStatusText.setText("✗ Falló la compilación release en segundo plano");
+                changeStatusText.setTextColor(0xFFFF9800);
+            }
+
+            new android.os.Handler().postDelayed(() -> {
+                changeStatusText.setVisibility(View.GONE);
+            }, 3000);
+        });
+    }
+
     private String formatFileSize(long size) {
         if (size < 1024) return size + " B";
         else if (size < 1024 * 1024) return String.format("%.1f KB", size / 1024.0);
@@ -6,15 +6,20 @@ import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.ProgressBar;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 import android.util.Log;
 import android.widget.TabHost;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 public class CompilerActivity extends Activity {
 
@@ -31,10 +36,14 @@ public class CompilerActivity extends Activity {
     private static final String STATE_SAVE_ENABLED = "save_enabled";
     private static final String STATE_CURRENT_TAB = "current_tab";
     private static final String STATE_SAVE_TO_EXTERNAL = "save_to_external";
+    private static final String STATE_TIME_TRACE = "time_trace";
+    private static final String STATE_BUILD_PROFILE = "build_profile";
+    private static final String STATE_BACKGROUND_RELEASE = "background_release";
     private static final String STATE_FILE_CHANGED = "file_changed";
     private static final String STATE_LAST_SO_PATH = "last_so_path";
     private static final String STATE_LAST_SO_NAME = "last_so_name";
     private static final String STATE_LAST_IS_TEMPORARY = "last_is_temporary";
+    private static final String STATE_PROJECT_URIS = "project_uris";
 
     // UI Components
     private TabHost tabHost;
@@ -43,9 +52,13 @@ public class CompilerActivity extends Activity {
     private TextView changeStatusText;
     private Button selectFileButton;
     private Button compileButton;
+    private Button rebuildProjectButton;
     private Button executeButton;
     private Button saveButton;
     private CheckBox saveToExternalCheckBox;
+    private CheckBox timeTraceCheckBox;
+    private Spinner profileSpinner;
+    private CheckBox backgroundReleaseCheckBox;
     private ProgressBar progressBar;
     private ProgressBar loadingIndicator;
     
@@ -55,6 +68,19 @@ public class CompilerActivity extends Activity {
     private FileChangeDetector fileChangeDetector;
     private UIManager uiManager;
 
+    // Salida de clang mostrada en la consola mientras compila
+    private final CompilerOutput.Listener compilerOutputListener = new CompilerOutput.Listener() {
+        @Override
+        public void onOutputLine(String line) {
+            uiManager.appendCompilerOutput(line);
+        }
+
+        @Override
+        public void onDiagnostic(Diagnostic diagnostic) {
+            uiManager.showDiagnostic(diagnostic);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -102,6 +128,9 @@ public class CompilerActivity extends Activity {
         
         // Guardar estado del checkbox
         outState.putBoolean(STATE_SAVE_TO_EXTERNAL, saveToExternalCheckBox.isChecked());
+        outState.putBoolean(STATE_TIME_TRACE, timeTraceCheckBox.isChecked());
+        outState.putInt(STATE_BUILD_PROFILE, profileSpinner.getSelectedItemPosition());
+        outState.putBoolean(STATE_BACKGROUND_RELEASE, backgroundReleaseCheckBox.isChecked());
         
         // Guardar flag de cambios
         outState.putBoolean(STATE_FILE_CHANGED, fileManager.hasFileChanged());
@@ -112,6 +141,15 @@ public class CompilerActivity extends Activity {
             outState.putString(STATE_LAST_SO_NAME, compilationManager.getLastSoName());
             outState.putBoolean(STATE_LAST_IS_TEMPORARY, compilationManager.isLastTemporary());
         }
+
+        // Guardar el proyecto cargado para poder recompilarlo
+        if (fileManager.hasProject()) {
+            ArrayList<String> projectUris = new ArrayList<>();
+            for (Uri uri : fileManager.getProjectUris()) {
+                projectUris.add(uri.toString());
+            }
+            outState.putStringArrayList(STATE_PROJECT_URIS, projectUris);
+        }
     }
 
     private void restoreInstanceState(Bundle savedState) {
@@ -154,6 +192,9 @@ public class CompilerActivity extends Activity {
         
         // Restaurar checkbox
         saveToExternalCheckBox.setChecked(savedState.getBoolean(STATE_SAVE_TO_EXTERNAL, false));
+        timeTraceCheckBox.setChecked(savedState.getBoolean(STATE_TIME_TRACE, false));
+        profileSpinner.setSelection(savedState.getInt(STATE_BUILD_PROFILE, 0));
+        backgroundReleaseCheckBox.setChecked(savedState.getBoolean(STATE_BACKGROUND_RELEASE, false));
         
         // Restaurar flag de cambios
         boolean fileChanged = savedState.getBoolean(STATE_FILE_CHANGED, false);
@@ -169,6 +210,17 @@ public class CompilerActivity extends Activity {
             boolean lastIsTemporary = savedState.getBoolean(STATE_LAST_IS_TEMPORARY, true);
             compilationManager.setLastCompilation(lastSoPath, lastSoName, lastIsTemporary);
         }
+
+        // Restaurar el proyecto cargado
+        ArrayList<String> projectUris = savedState.getStringArrayList(STATE_PROJECT_URIS);
+        if (projectUris != null) {
+            List<Uri> uris = new ArrayList<>();
+            for (String uri : projectUris) {
+                uris.add(Uri.parse(uri));
+            }
+            fileManager.setProjectUris(uris);
+            rebuildProjectButton.setVisibility(View.VISIBLE);
+        }
         
         // Habilitar el editor si hay archivo cargado
         if (fileUriString != null) {
@@ -209,9 +261,19 @@ public class CompilerActivity extends Activity {
         changeStatusText = findViewById(R.id.change_status_text);
         selectFileButton = findViewById(R.id.select_file_button);
         compileButton = findViewById(R.id.compile_button);
+        rebuildProjectButton = findViewById(R.id.rebuild_project_button);
         executeButton = findViewById(R.id.execute_button);
         saveButton = findViewById(R.id.save_button);
         saveToExternalCheckBox = findViewById(R.id.save_external_checkbox);
+        timeTraceCheckBox = findViewById(R.id.time_trace_checkbox);
+        profileSpinner = findViewById(R.id.profile_spinner);
+        backgroundReleaseCheckBox = findViewById(R.id.background_release_checkbox);
+
+        // Perfiles de compilación
+        ArrayAdapter<String> profileAdapter = new ArrayAdapter<>(this, 
+            android.R.layout.simple_spinner_item, BuildProfile.getLabels());
+        profileAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        profileSpinner.setAdapter(profileAdapter);
         progressBar = findViewById(R.id.compile_progress_bar);
         loadingIndicator = findViewById(R.id.loading_indicator);
 
@@ -236,38 +298,75 @@ public class CompilerActivity extends Activity {
             }
         });
 
+        // Pulsación larga: abrir un proyecto de varios archivos
+        selectFileButton.setOnLongClickListener(v -> {
+            if (StoragePermissionHelper.hasReadPermission(this)) {
+                fileManager.openProjectPicker();
+            } else {
+                StoragePermissionHelper.requestReadPermission(this);
+            }
+            return true;
+        });
+
         saveButton.setOnClickListener(v -> {
             saveCurrentFile();
         });
 
-        compileButton.setOnClickListener(v -> {
+        // Diagnósticos en vivo mientras se escribe
+        codeEditor.setOnContentChangedListener(text -> {
             File sourceFile = fileManager.getSelectedSourceFile();
-            if (sourceFile != null) {
-                // Guardar antes de compilar
-                saveCurrentFile();
-                
-                boolean saveToExternal = saveToExternalCheckBox.isChecked();
-                
-                if (saveToExternal && !StoragePermissionHelper.hasWritePermission(this)) {
-                    Toast.makeText(this, 
-                        "Se requieren permisos de escritura para guardar en almacenamiento externo", 
-                        Toast.LENGTH_LONG).show();
-                    StoragePermissionHelper.requestWritePermission(this);
-                    return;
-                }
-                
-                uiManager.showCompilationStart();
-                
-                compilationManager.compile(sourceFile, saveToExternal, 
-                    new CompilationManager.CompilationCallback() {
-                        @Override
-                        public void onCompilationComplete(CompilationResult result) {
-                            handleCompilationResult(result, saveToExternal);
-                        }
-                    });
+            if (sourceFile == null) {
+                return;
+            }
+            compilationManager.checkSyntax(text, sourceFile, 
+                diagnostics -> codeEditor.setDiagnostics(diagnostics, sourceFile.getAbsolutePath()));
+        });
+
+        timeTraceCheckBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            compilationManager.setTimeTraceEnabled(isChecked);
+        });
+
+        profileSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                BuildProfile profile = BuildProfile.values()[position];
+                compilationManager.setBuildProfile(profile);
+                // La compilación release en segundo plano solo tiene sentido con el perfil rápido
+                backgroundReleaseCheckBox.setEnabled(profile != BuildProfile.RELEASE);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
             }
         });
 
+        backgroundReleaseCheckBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            compilationManager.setBackgroundReleaseEnabled(isChecked, 
+                result -> uiManager.showBackgroundBuildResult(result));
+        });
+
+        compileButton.setOnClickListener(v -> {
+            if (fileManager.getSelectedSourceFile() == null) {
+                return;
+            }
+            // El guardado termina por su cuenta; se compila el texto del editor
+            saveCurrentFile();
+            startCompilation(false);
+        });
+
+        // Pulsación larga: compilar para todas las ABI
+        compileButton.setOnLongClickListener(v -> {
+            if (fileManager.getSelectedSourceFile() == null) {
+                return true;
+            }
+            saveCurrentFile();
+            startMultiAbiCompilation();
+            return true;
+        });
+
+        // Recompilar el proyecto cargado copiando solo los archivos que cambiaron
+        rebuildProjectButton.setOnClickListener(v -> rebuildProject());
+
         executeButton.setOnClickListener(v -> {
             compilationManager.execute(new CompilationManager.ExecutionCallback() {
                 @Override
@@ -290,10 +389,53 @@ public class CompilerActivity extends Activity {
         });
     }
 
+    /**
+     * Compila el fuente actual. Si ya había una compilación en curso,
+     * el planificador la cancela y solo se muestra el resultado de esta.
+     * @param restart Reinicio por un cambio del archivo: espera un momento
+     *                para agrupar cambios seguidos (un toque arranca enseguida)
+     */
+    private void startCompilation(boolean restart) {
+        File sourceFile = fileManager.getSelectedSourceFile();
+        if (sourceFile == null) return;
+
+        boolean saveToExternal = saveToExternalCheckBox.isChecked();
+
+        if (saveToExternal && !StoragePermissionHelper.hasWritePermission(this)) {
+            Toast.makeText(this, 
+                "Se requieren permisos de escritura para guardar en almacenamiento externo", 
+                Toast.LENGTH_LONG).show();
+            StoragePermissionHelper.requestWritePermission(this);
+            return;
+        }
+
+        uiManager.showCompilationStart();
+
+        CompilationManager.CompilationCallback callback = 
+            new CompilationManager.CompilationCallback() {
+                @Override
+                public void onCompilationComplete(CompilationResult result) {
+                    handleCompilationResult(result, saveToExternal);
+                }
+            };
+        if (restart) {
+            compilationManager.restartCompile(sourceFile, codeEditor.getText(), saveToExternal, 
+                compilerOutputListener, callback);
+        } else {
+            compilationManager.compile(sourceFile, codeEditor.getText(), saveToExternal, 
+                compilerOutputListener, callback);
+        }
+    }
+
     private void saveCurrentFile() {
         String content = codeEditor.getText();
         
         uiManager.showSavingIndicator(true);
+
+        // La escritura propia no debe verse como un cambio externo (ni reiniciar la compilación)
+        if (fileManager.canSaveContent()) {
+            fileChangeDetector.expectContent(content.getBytes());
+        }
         
         fileManager.saveContent(content, success -> {
             uiManager.showSavingIndicator(false);
@@ -308,8 +450,32 @@ public class CompilerActivity extends Activity {
         });
     }
 
+    private void startMultiAbiCompilation() {
+        File sourceFile = fileManager.getSelectedSourceFile();
+        if (sourceFile == null) return;
+
+        boolean saveToExternal = saveToExternalCheckBox.isChecked();
+        if (saveToExternal && !StoragePermissionHelper.hasWritePermission(this)) {
+            StoragePermissionHelper.requestWritePermission(this);
+            return;
+        }
+
+        Toast.makeText(this, "Compilando para todas las ABI...", Toast.LENGTH_SHORT).show();
+        uiManager.showCompilationStart();
+
+        compilationManager.compileAllAbis(sourceFile, codeEditor.getText(), saveToExternal, 
+            compilerOutputListener,
+            result -> handleCompilationResult(result, saveToExternal));
+    }
+
     private void handleCompilationResult(CompilationResult result, boolean saveToExternal) {
         uiManager.showCompilationResult(result, saveToExternal);
+
+        // Marcar en el editor los diagnósticos del fuente abierto
+        File sourceFile = fileManager.getSelectedSourceFile();
+        if (result.diagnostics != null && sourceFile != null) {
+            codeEditor.setDiagnostics(result.diagnostics, sourceFile.getAbsolutePath());
+        }
         
         if (result.isSuccess) {
             compilationManager.setLastCompilation(result.outputPath, 
@@ -392,6 +558,7 @@ public class CompilerActivity extends Activity {
         // Solo limpiar si no es un cambio de configuración
         if (!isChangingConfigurations()) {
             fileChangeDetector.stopMonitoring();
+            compilationManager.cancelAll();
             fileManager.cleanup();
         }
         super.onDestroy();
@@ -411,9 +578,18 @@ public class CompilerActivity extends Activity {
                     fileManager.reloadFromUri(changedUri, new FileManager.FileLoadCallback() {
                         @Override
                         public void onFileLoaded(File file, String content) {
+                            // Mismo texto que el editor (y que la compilación en curso): nada que hacer
+                            if (content.equals(codeEditor.getText())) {
+                                return;
+                            }
                             codeEditor.setText(content);
                             Toast.makeText(CompilerActivity.this, 
                                 "⚠️ Archivo actualizado externamente", Toast.LENGTH_SHORT).show();
+
+                            // Si se estaba compilando, la versión anterior ya no sirve
+                            if (compilationManager.isCompiling(file)) {
+                                startCompilation(true);
+                            }
                         }
 
                         @Override
@@ -444,6 +620,27 @@ public class CompilerActivity extends Activity {
                 
                 handleFileSelected(uri);
             }
+        } else if (requestCode == FileManager.REQUEST_CODE_PICK_PROJECT && resultCode == RESULT_OK) {
+            if (data != null) {
+                List<Uri> uris = new ArrayList<>();
+                if (data.getClipData() != null) {
+                    for (int i = 0; i < data.getClipData().getItemCount(); i++) {
+                        uris.add(data.getClipData().getItemAt(i).getUri());
+                    }
+                } else if (data.getData() != null) {
+                    uris.add(data.getData());
+                }
+                // Permisos persistentes: el proyecto se vuelve a leer en cada recompilación
+                for (Uri uri : uris) {
+                    try {
+                        getContentResolver().takePersistableUriPermission(uri, 
+                            Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                    } catch (SecurityException e) {
+                        Log.w(TAG, "No se pudo tomar permiso persistente", e);
+                    }
+                }
+                handleProjectSelected(uris);
+            }
         } else {
             fileManager.handlePermissionResult(requestCode, resultCode, data);
         }
@@ -479,6 +676,60 @@ public class CompilerActivity extends Activity {
         });
     }
 
+    private void handleProjectSelected(List<Uri> uris) {
+        if (uris.isEmpty()) return;
+
+        boolean saveToExternal = saveToExternalCheckBox.isChecked();
+        if (saveToExternal && !StoragePermissionHelper.hasWritePermission(this)) {
+            StoragePermissionHelper.requestWritePermission(this);
+            return;
+        }
+
+        uiManager.showCompilationStart();
+        fileManager.loadProject(uris, createProjectCallback(saveToExternal));
+        rebuildProjectButton.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Recompila el proyecto cargado sin volver a elegir los archivos
+     */
+    private void rebuildProject() {
+        if (!fileManager.hasProject()) return;
+
+        boolean saveToExternal = saveToExternalCheckBox.isChecked();
+        if (saveToExternal && !StoragePermissionHelper.hasWritePermission(this)) {
+            StoragePermissionHelper.requestWritePermission(this);
+            return;
+        }
+
+        uiManager.showCompilationStart();
+        fileManager.reloadProject(createProjectCallback(saveToExternal));
+    }
+
+    private FileManager.ProjectLoadCallback createProjectCallback(boolean saveToExternal) {
+        return new FileManager.ProjectLoadCallback() {
+            @Override
+            public void onProjectLoaded(List<File> sourceFiles, int copiedFiles) {
+                Toast.makeText(CompilerActivity.this, 
+                    "Proyecto: " + sourceFiles.size() + " archivos .c, " + copiedFiles 
+                    + " actualizados", Toast.LENGTH_SHORT).show();
+                // El directorio de la copia lleva el nombre del proyecto que se cargó
+                // (aunque mientras tanto se haya elegido otro)
+                String projectName = sourceFiles.get(0).getParentFile().getName();
+                compilationManager.compileProject(sourceFiles, projectName, saveToExternal, 
+                    compilerOutputListener, result -> handleCompilationResult(result, saveToExternal));
+            }
+
+            @Override
+            public void onProjectLoadError(String error) {
+                CompilationResult result = new CompilationResult();
+                result.isSuccess = false;
+                result.message = error;
+                uiManager.showCompilationResult(result, saveToExternal);
+            }
+        };
+    }
+
     @Override
     public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
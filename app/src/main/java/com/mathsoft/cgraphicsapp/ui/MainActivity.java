@@ -48,14 +48,19 @@ public class MainActivity extends Activity {
             }
         });
 
-        // Verificar e instalar el compilador
+        // Verificar e instalar (o completar, o actualizar) el compilador
         if (!compilerManager.isCompilerInstalled()) {
             installCompilerAsync();
         } else {
             statusText.setText("✓ Compilador ya instalado");
+            showPrewarmSummary();
             compileButton.setEnabled(true);
+
+            // Traer el toolchain a memoria antes de la primera compilación
+            ToolchainPrewarmer.start(this);
             Toast.makeText(this, "Compilador disponible", Toast.LENGTH_SHORT).show();
             displayCompilerFiles();
+            verifyCompilerAsync();
             
             Intent intent = new Intent(MainActivity.this, CompilerActivity.class);
             startActivity(intent);
@@ -82,9 +87,49 @@ public class MainActivity extends Activity {
         }
     }
 
+    private void showPrewarmSummary() {
+        new AsyncTask<Void, Void, String>() {
+            @Override
+            protected String doInBackground(Void... voids) {
+                return ToolchainPrewarmer.getSummary(MainActivity.this);
+            }
+
+            @Override
+            protected void onPostExecute(String summary) {
+                if (summary != null) {
+                    statusText.append("\n" + summary);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Verifica en segundo plano los archivos instalados (tamaños y permisos; la
+     * verificación completa se programa aparte). Los dañados no se reparan
+     * ahora, con el compilador abierto: se reinstalan en el próximo inicio.
+     */
+    private void verifyCompilerAsync() {
+        new AsyncTask<Void, Void, Integer>() {
+            @Override
+            protected Integer doInBackground(Void... voids) {
+                return compilerManager.verifyInstallation(false);
+            }
+
+            @Override
+            protected void onPostExecute(Integer damaged) {
+                if (damaged > 0) {
+                    statusText.setText("⚠ " + damaged
+                        + " archivos del compilador dañados, se repararán al volver a abrir la app");
+                } else {
+                    compilerManager.scheduleFullVerification();
+                }
+            }
+        }.executeOnExecutor(ClangCompilerManager.VERIFY_EXECUTOR);
+    }
+
     private void installCompilerAsync() {
         new AsyncTask<Void, String, Boolean>() {
-            private int fileCount = 0;
+            private volatile int fileCount = 0;
 
             @Override
             protected void onPreExecute() {
@@ -98,22 +143,23 @@ public class MainActivity extends Activity {
                 compilerManager.setCopyCallback(new ClangCompilerManager.CopyCallback() {
                     @Override
                     public void onCopyStarted() {
-                        publishProgress("⟳ Copiando compilador...", "0");
+                        publishProgress("⟳ Copiando compilador...", "-1");
                     }
 
                     @Override
-                    public void onCopyProgress(String currentFile) {
-                        fileCount++;
-                        String fileName = new File(currentFile).getName();
-                        publishProgress("⟳ Copiando: " + fileName, String.valueOf(fileCount));
+                    public void onCopyProgress(InstallProgress progress) {
+                        fileCount = progress.getFilesDone();
+                        double fraction = progress.getFraction();
+                        publishProgress("⟳ " + progress.format(),
+                            String.valueOf(fraction >= 0 ? (int) (fraction * 100) : -1));
                     }
 
                     @Override
                     public void onCopyCompleted(boolean success) {
                         if (success) {
-                            publishProgress("✓ Instalación completada", String.valueOf(fileCount));
+                            publishProgress("✓ Instalación completada (" + fileCount + " archivos)", "100");
                         } else {
-                            publishProgress("✗ Error en la instalación", String.valueOf(fileCount));
+                            publishProgress("✗ Error en la instalación (" + fileCount + " archivos)", "-1");
                         }
                     }
                 });
@@ -123,16 +169,25 @@ public class MainActivity extends Activity {
 
             @Override
             protected void onProgressUpdate(String... values) {
-                statusText.setText(values[0] + " (" + values[1] + " archivos)");
+                statusText.setText(values[0]);
+                // Barra determinada en cuanto se conoce el total
+                int percent = Integer.parseInt(values[1]);
+                progressBar.setIndeterminate(percent < 0);
+                if (percent >= 0) {
+                    progressBar.setProgress(percent);
+                }
             }
 
             @Override
             protected void onPostExecute(Boolean success) {
                 progressBar.setVisibility(ProgressBar.GONE);
                 if (success) {
-                    statusText.setText("✓ Compilador instalado correctamente (" + fileCount + " archivos)");
+                    String summary = compilerManager.getInstallSummary();
+                    statusText.setText("✓ Compilador instalado correctamente (" 
+                        + (summary != null ? summary : fileCount + " archivos") + ")");
                     Toast.makeText(MainActivity.this, "Instalación exitosa", Toast.LENGTH_SHORT).show();
                     compileButton.setEnabled(true);
+                    ToolchainPrewarmer.start(MainActivity.this);
                     displayCompilerFiles();
                     Intent intent = new Intent(MainActivity.this, CompilerActivity.class);
                     startActivity(intent);
@@ -149,13 +204,21 @@ public class MainActivity extends Activity {
             @Override
             protected String doInBackground(Void... voids) {
                 File compilerDir = compilerManager.getCompilerDirectory();
-                if (compilerDir.exists()) {
-                    return "Compilador instalado en:\n" + 
-                           compilerDir.getAbsolutePath() + "\n\n" +
-                           getFileTreeBranch(compilerDir, 0, 2); // Limitar a 2 niveles
-                } else {
+                if (!compilerDir.exists()) {
                     return "Compilador no instalado";
                 }
+                // El inventario que escribe el instalador: no se recorre el directorio
+                ToolchainInventory inventory = compilerManager.getInventory();
+                if (inventory == null) {
+                    return "Compilador instalado en:\n" + compilerDir.getAbsolutePath()
+                           + "\n\n(inventario no disponible)";
+                }
+                return "Compilador instalado en:\n" + 
+                       compilerDir.getAbsolutePath() + "\n" +
+                       inventory.getFileCount() + " archivos, " 
+                       + formatFileSize(inventory.getTotalBytes()) + ", "
+                       + inventory.getExecutables().size() + " ejecutables\n\n" +
+                       getFileTreeBranch(inventory.getRoot(), 0);
             }
 
             @Override
@@ -165,29 +228,19 @@ public class MainActivity extends Activity {
         }.execute();
     }
 
-    private String getFileTreeBranch(File directory, int level, int maxLevel) {
-        if (level >= maxLevel) {
-            return "";
-        }
-
+    private String getFileTreeBranch(ToolchainInventory.Node directory, int level) {
         StringBuilder tree = new StringBuilder();
-        File[] files = directory.listFiles();
-
-        if (files == null) {
-            return "";
-        }
-
         String tabs = genTabs(level);
-        for (File file : files) {
-            tree.append(tabs).append(file.getName());
-            if (file.isDirectory()) {
-                tree.append("/\n");
-                tree.append(getFileTreeBranch(file, level + 1, maxLevel));
+        for (ToolchainInventory.Node node : directory.getChildren()) {
+            tree.append(tabs).append(node.getName());
+            if (node.isDirectory()) {
+                tree.append("/ (").append(node.getFileCount()).append(" archivos, ")
+                    .append(formatFileSize(node.getSize())).append(")\n");
+                tree.append(getFileTreeBranch(node, level + 1));
             } else {
-                long size = file.length();
-                String sizeStr = formatFileSize(size);
+                String sizeStr = formatFileSize(node.getSize());
                 tree.append(" (").append(sizeStr).append(")");
-                if (file.canExecute()) {
+                if (node.isExecutable()) {
                     tree.append(" [x]");
                 }
                 tree.append("\n");
@@ -15,6 +15,9 @@ import android.widget.HorizontalScrollView;
 import android.widget.LinearLayout;
 import android.widget.ScrollView;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -37,7 +40,20 @@ public class CodeEditorView extends LinearLayout {
     private Runnable highlightRunnable;
     private ExecutorService highlightExecutor;
     
+    private OnContentChangedListener contentChangedListener;
+    private Runnable contentChangedRunnable;
+    
     private static final int HIGHLIGHT_DELAY_MS = 300; // Delay antes de aplicar resaltado
+    private static final int CONTENT_CHANGED_DELAY_MS = 600; // Delay antes de revisar la sintaxis
+    private static final int ERROR_LINE_COLOR = 0x40F44336;
+    private static final int WARNING_LINE_COLOR = 0x30FFC107;
+    
+    /**
+     * Recibe el contenido del editor cuando deja de cambiar
+     */
+    public interface OnContentChangedListener {
+        void onContentChanged(String text);
+    }
     
     public CodeEditorView(Context context) {
         super(context);
@@ -284,6 +300,15 @@ public class CodeEditorView extends LinearLayout {
                     highlightRunnable = () -> scheduleHighlighting();
                     highlightHandler.postDelayed(highlightRunnable, HIGHLIGHT_DELAY_MS);
                 }
+                
+                if (contentChangedListener != null) {
+                    if (contentChangedRunnable != null) {
+                        highlightHandler.removeCallbacks(contentChangedRunnable);
+                    }
+                    contentChangedRunnable = () -> 
+                        contentChangedListener.onContentChanged(codeEditText.getText().toString());
+                    highlightHandler.postDelayed(contentChangedRunnable, CONTENT_CHANGED_DELAY_MS);
+                }
             }
         };
         
@@ -561,6 +586,79 @@ public class CodeEditorView extends LinearLayout {
         return android.graphics.Color.argb(a, r, g, b);
     }
     
+    /**
+     * Listener que recibe el texto tras una pausa en la edición (por ejemplo para revisar la sintaxis)
+     */
+    public void setOnContentChangedListener(OnContentChangedListener listener) {
+        this.contentChangedListener = listener;
+    }
+    
+    /**
+     * Marca en el editor las líneas con errores y warnings de clang.
+     * Solo se usan los diagnósticos del propio buffer: "<stdin>" en la revisión
+     * de sintaxis, o la ruta del fuente (la del marcador # 1 "ruta") al compilar.
+     * @param sourcePath Ruta del fuente abierto en el editor (puede ser null)
+     */
+    public void setDiagnostics(List<Diagnostic> diagnostics, String sourcePath) {
+        Editable editable = codeEditText.getText();
+        
+        // Quitar las marcas anteriores
+        DiagnosticLineSpan[] oldSpans = editable.getSpans(0, editable.length(), DiagnosticLineSpan.class);
+        for (DiagnosticLineSpan span : oldSpans) {
+            editable.removeSpan(span);
+        }
+        
+        Set<Integer> errorLines = new HashSet<>();
+        Set<Integer> warningLines = new HashSet<>();
+        String text = editable.toString();
+        
+        for (Diagnostic diagnostic : diagnostics) {
+            if (!"<stdin>".equals(diagnostic.file) && !diagnostic.file.equals(sourcePath)) {
+                continue;
+            }
+            boolean isError = diagnostic.isError();
+            if (!isError && diagnostic.severity != Diagnostic.Severity.WARNING) {
+                continue;
+            }
+            
+            int lineStart = getLineStartOffset(text, diagnostic.line);
+            if (lineStart < 0) {
+                continue;
+            }
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+            if (lineEnd > lineStart) {
+                editable.setSpan(new DiagnosticLineSpan(isError ? ERROR_LINE_COLOR : WARNING_LINE_COLOR),
+                    lineStart, lineEnd, android.text.Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+            
+            if (isError) {
+                errorLines.add(diagnostic.line);
+            } else {
+                warningLines.add(diagnostic.line);
+            }
+        }
+        
+        lineNumberView.setMarkedLines(errorLines, warningLines);
+    }
+    
+    /**
+     * Offset del inicio de una línea (1-based), o -1 si no existe
+     */
+    private int getLineStartOffset(String text, int line) {
+        int offset = 0;
+        for (int i = 1; i < line; i++) {
+            offset = text.indexOf('\n', offset);
+            if (offset < 0) {
+                return -1;
+            }
+            offset++;
+        }
+        return offset;
+    }
+    
     public void cleanup() {
         if (highlightExecutor != null && !highlightExecutor.isShutdown()) {
             highlightExecutor.shutdown();
@@ -568,6 +666,18 @@ public class CodeEditorView extends LinearLayout {
         if (highlightHandler != null && highlightRunnable != null) {
             highlightHandler.removeCallbacks(highlightRunnable);
         }
+        if (highlightHandler != null && contentChangedRunnable != null) {
+            highlightHandler.removeCallbacks(contentChangedRunnable);
+        }
+    }
+    
+    /**
+     * Fondo de una línea con diagnóstico; tipo propio para no tocar otros spans
+     */
+    private static class DiagnosticLineSpan extends android.text.style.BackgroundColorSpan {
+        DiagnosticLineSpan(int color) {
+            super(color);
+        }
     }
     
     @Override
@@ -666,6 +776,10 @@ public class CodeEditorView extends LinearLayout {
     private class LineNumberView extends View {
         private Paint textPaint;
         private Paint backgroundPaint;
+        private Paint errorPaint;
+        private Paint warningPaint;
+        private Set<Integer> errorLines = new HashSet<>();
+        private Set<Integer> warningLines = new HashSet<>();
         private int lineCount = 1;
         private float textSize = 12;
         private Rect bounds = new Rect();
@@ -685,6 +799,12 @@ public class CodeEditorView extends LinearLayout {
             backgroundPaint.setColor(0xFF1E2428);
             backgroundPaint.setStyle(Paint.Style.FILL);
             
+            errorPaint = new Paint(textPaint);
+            errorPaint.setColor(0xFFF44336);
+            
+            warningPaint = new Paint(textPaint);
+            warningPaint.setColor(0xFFFFC107);
+            
             setWillNotDraw(false);
             setPadding(16, 12, 16, 12);
         }
@@ -697,9 +817,17 @@ public class CodeEditorView extends LinearLayout {
             }
         }
         
+        public void setMarkedLines(Set<Integer> errors, Set<Integer> warnings) {
+            this.errorLines = errors;
+            this.warningLines = warnings;
+            invalidate();
+        }
+        
         public void setTextSize(float size) {
             this.textSize = size;
             textPaint.setTextSize(size * getResources().getDisplayMetrics().scaledDensity);
+            errorPaint.setTextSize(textPaint.getTextSize());
+            warningPaint.setTextSize(textPaint.getTextSize());
             requestLayout();
             invalidate();
         }
@@ -733,7 +861,9 @@ public class CodeEditorView extends LinearLayout {
             for (int i = 1; i <= lineCount; i++) {
                 String lineNumber = String.valueOf(i);
                 float y = getPaddingTop() + (i * lineHeight) - metrics.descent;
-                canvas.drawText(lineNumber, getPaddingLeft(), y, textPaint);
+                Paint paint = errorLines.contains(i) ? errorPaint 
+                    : warningLines.contains(i) ? warningPaint : textPaint;
+                canvas.drawText(lineNumber, getPaddingLeft(), y, paint);
             }
         }
     }
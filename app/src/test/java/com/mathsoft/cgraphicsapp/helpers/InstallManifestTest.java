@@ -0,0 +1,129 @@
+package com.mathsoft.cgraphicsapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InstallManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysJournalOfInterruptedInstall() throws IOException {
+        File dir = folder.getRoot();
+        InstallManifest manifest = InstallManifest.load(dir);
+        manifest.beginInstall(7);
+        manifest.record("bin/clang", 100, "aa");
+        manifest.record("lib/libc.a", 20, null);
+        // El proceso muere antes de finishInstall
+        manifest.abortInstall();
+
+        InstallManifest resumed = InstallManifest.load(dir);
+        assertFalse(resumed.isComplete());
+        assertEquals(7, resumed.getPackageVersion());
+        assertEquals(2, resumed.getFileCount());
+        assertEquals(100, resumed.get("bin/clang").getSize());
+        assertEquals("aa", resumed.get("bin/clang").getHash());
+        assertNull(resumed.get("lib/libc.a").getHash());
+    }
+
+    @Test
+    public void ignoresTruncatedJournalLine() throws IOException {
+        File dir = folder.getRoot();
+        InstallManifest manifest = InstallManifest.load(dir);
+        manifest.beginInstall(1);
+        manifest.record("bin/clang", 100, "aa");
+        manifest.abortInstall();
+        append(new File(dir, InstallManifest.JOURNAL_FILE), "42\tbb");
+
+        InstallManifest resumed = InstallManifest.load(dir);
+        assertEquals(1, resumed.getFileCount());
+        assertNotNull(resumed.get("bin/clang"));
+    }
+
+    @Test
+    public void journalEntriesReplaceManifestEntries() throws IOException {
+        File dir = folder.getRoot();
+        InstallManifest manifest = InstallManifest.load(dir);
+        manifest.beginInstall(1);
+        manifest.record("bin/clang", 100, "aa");
+        manifest.finishInstall(true);
+
+        InstallManifest update = InstallManifest.load(dir);
+        update.beginInstall(2);
+        update.record("bin/clang", 120, "cc");
+        update.abortInstall();
+
+        InstallManifest resumed = InstallManifest.load(dir);
+        assertFalse(resumed.isComplete());
+        assertEquals(1, resumed.getFileCount());
+        assertEquals(120, resumed.get("bin/clang").getSize());
+        assertEquals("cc", resumed.get("bin/clang").getHash());
+    }
+
+    @Test
+    public void finishInstallMergesJournal() throws IOException {
+        File dir = folder.getRoot();
+        InstallManifest manifest = InstallManifest.load(dir);
+        manifest.beginInstall(3);
+        manifest.record("bin/clang", 100, "aa");
+        manifest.setDeferredArchs(new HashSet<>(Arrays.asList("x86_64-linux-android")));
+        manifest.setDeferredApiLevels(new HashSet<>(Arrays.asList("aarch64-linux-android/21")));
+        manifest.finishInstall(true);
+
+        assertFalse(new File(dir, InstallManifest.JOURNAL_FILE).exists());
+        InstallManifest loaded = InstallManifest.load(dir);
+        assertTrue(loaded.isComplete());
+        assertEquals(3, loaded.getPackageVersion());
+        assertTrue(loaded.getInstallStamp() > 0);
+        assertEquals(1, loaded.getFileCount());
+        assertEquals(new HashSet<>(Arrays.asList("x86_64-linux-android")),
+            loaded.getDeferredArchs());
+        assertEquals(new HashSet<>(Arrays.asList("aarch64-linux-android/21")),
+            loaded.getDeferredApiLevels());
+    }
+
+    @Test
+    public void headerIsIncompleteWhileJournalExists() throws IOException {
+        File dir = folder.getRoot();
+        InstallManifest manifest = InstallManifest.load(dir);
+        manifest.beginInstall(1);
+        manifest.finishInstall(true);
+        assertTrue(InstallManifest.loadHeader(dir).isComplete());
+
+        InstallManifest update = InstallManifest.load(dir);
+        update.beginInstall(2);
+        update.abortInstall();
+        assertFalse(InstallManifest.loadHeader(dir).isComplete());
+    }
+
+    @Test
+    public void emptyDirectoryHasNoInstall() {
+        InstallManifest manifest = InstallManifest.load(folder.getRoot());
+        assertFalse(manifest.isComplete());
+        assertEquals(0, manifest.getFileCount());
+    }
+
+    private static void append(File file, String text) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.mathsoft.cgraphicsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class InstallProgressTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void fractionUsesBytesWhenKnown() {
+        InstallProgress progress = new InstallProgress(9, 10, 25 * MB, 100 * MB, 1000, "bin/clang");
+        assertEquals(0.25, progress.getFraction(), 1e-9);
+    }
+
+    @Test
+    public void fractionFallsBackToFiles() {
+        InstallProgress progress = new InstallProgress(3, 4, 10 * MB, -1, 1000, null);
+        assertEquals(0.75, progress.getFraction(), 1e-9);
+    }
+
+    @Test
+    public void fractionIsUnknownWithoutTotals() {
+        InstallProgress progress = new InstallProgress(3, -1, 10 * MB, -1, 1000, null);
+        assertEquals(-1, progress.getFraction(), 1e-9);
+        assertEquals(-1, progress.getEtaMs());
+    }
+
+    @Test
+    public void fractionIsCappedAtOne() {
+        // Los archivos enlazados pueden superar el total previsto
+        InstallProgress progress = new InstallProgress(12, 10, 120 * MB, 100 * MB, 1000, null);
+        assertEquals(1.0, progress.getFraction(), 1e-9);
+        assertEquals(0, progress.getEtaMs());
+    }
+
+    @Test
+    public void etaExtrapolatesElapsedTime() {
+        InstallProgress progress = new InstallProgress(1, 10, 25 * MB, 100 * MB, 2000, null);
+        assertEquals(6000, progress.getEtaMs());
+        assertEquals(25 * MB / 2.0, progress.getBytesPerSecond(), 1e-6);
+    }
+
+    @Test
+    public void etaIsUnknownBeforeAnyProgress() {
+        assertEquals(-1, new InstallProgress(0, 10, 0, 100 * MB, 500, null).getEtaMs());
+        assertEquals(-1, new InstallProgress(1, 10, MB, 100 * MB, 0, null).getEtaMs());
+    }
+
+    @Test
+    public void formatsTotalsSpeedAndEta() {
+        InstallProgress progress = new InstallProgress(5, 10, 50 * MB, 100 * MB, 4000, null);
+        assertEquals("50% · 5/10 archivos · 50.0/100.0 MB · 12.5 MB/s · quedan 4 s",
+                     progress.format());
+    }
+}
@@ -0,0 +1,37 @@
+package com.mathsoft.cgraphicsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ToolchainArchiveTest {
+
+    @Test
+    public void acceptsRelativePaths() {
+        assertTrue(ToolchainArchive.isSafeEntryName("bin/clang"));
+        assertTrue(ToolchainArchive.isSafeEntryName("sysroot/usr/include/"));
+        assertTrue(ToolchainArchive.isSafeEntryName("lib/./clang/17/include/stddef.h"));
+        assertTrue(ToolchainArchive.isSafeEntryName("lib/..hidden/x"));
+    }
+
+    @Test
+    public void rejectsEmptyAndAbsolutePaths() {
+        assertFalse(ToolchainArchive.isSafeEntryName(""));
+        assertFalse(ToolchainArchive.isSafeEntryName("/system/bin/sh"));
+    }
+
+    @Test
+    public void rejectsParentSegments() {
+        assertFalse(ToolchainArchive.isSafeEntryName(".."));
+        assertFalse(ToolchainArchive.isSafeEntryName("../files/x"));
+        assertFalse(ToolchainArchive.isSafeEntryName("bin/../../x"));
+        assertFalse(ToolchainArchive.isSafeEntryName("bin/.."));
+    }
+
+    @Test
+    public void rejectsBackslashes() {
+        assertFalse(ToolchainArchive.isSafeEntryName("bin\\clang"));
+        assertFalse(ToolchainArchive.isSafeEntryName("..\\x"));
+    }
+}
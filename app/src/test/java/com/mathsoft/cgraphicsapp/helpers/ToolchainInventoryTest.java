@@ -0,0 +1,138 @@
+package com.mathsoft.cgraphicsapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ToolchainInventoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void summarizesDeepDirectoriesInSecondLevel() throws IOException {
+        File dir = folder.getRoot();
+        ToolchainInventory inventory = ToolchainInventory.build(dir, 5, entries(
+            "sysroot/usr/include/stdio.h", 100,
+            "sysroot/usr/include/GLES2/gl2.h", 200,
+            "sysroot/usr/lib/libc.a", 300,
+            "lib/libLLVM.so", 1000),
+            Collections.<String, File>emptyMap());
+
+        assertEquals(4, inventory.getFileCount());
+        assertEquals(1600, inventory.getTotalBytes());
+
+        ToolchainInventory.Node sysroot = child(inventory.getRoot(), "sysroot");
+        assertTrue(sysroot.isDirectory());
+        assertEquals(3, sysroot.getFileCount());
+        assertEquals(600, sysroot.getSize());
+
+        // Los niveles más profundos se resumen en sysroot/usr
+        ToolchainInventory.Node usr = child(sysroot, "usr");
+        assertEquals(3, usr.getFileCount());
+        assertEquals(600, usr.getSize());
+        assertTrue(usr.getChildren().isEmpty());
+
+        ToolchainInventory.Node library = child(child(inventory.getRoot(), "lib"), "libLLVM.so");
+        assertFalse(library.isDirectory());
+        assertEquals(1000, library.getSize());
+    }
+
+    @Test
+    public void marksExecutablesOnlyInBin() throws IOException {
+        File dir = folder.getRoot();
+        executable(new File(dir, "bin/clang"));
+        executable(new File(dir, "lib/helper"));
+        new File(dir, "bin/README").createNewFile();
+
+        ToolchainInventory inventory = ToolchainInventory.build(dir, 1, entries(
+            "bin/clang", 10, "bin/README", 1, "lib/helper", 5),
+            Collections.<String, File>emptyMap());
+
+        assertEquals(Collections.singletonList("bin/clang"), inventory.getExecutables());
+        assertTrue(child(child(inventory.getRoot(), "bin"), "clang").isExecutable());
+        assertFalse(child(child(inventory.getRoot(), "bin"), "README").isExecutable());
+    }
+
+    @Test
+    public void linkedExecutablesReplaceManifestEntries() throws IOException {
+        File dir = folder.getRoot();
+        File nativeLib = folder.newFile("libbin_clang.so");
+        Files.write(nativeLib.toPath(), new byte[42]);
+        Map<String, File> linked = new HashMap<>();
+        linked.put("bin/clang", nativeLib);
+
+        ToolchainInventory inventory = ToolchainInventory.build(dir, 1, entries(
+            "bin/clang", 10, "lib/libc.a", 5), linked);
+
+        assertEquals(2, inventory.getFileCount());
+        assertEquals(47, inventory.getTotalBytes());
+        assertEquals(Collections.singletonList("bin/clang"), inventory.getExecutables());
+        assertEquals(42, child(child(inventory.getRoot(), "bin"), "clang").getSize());
+    }
+
+    @Test
+    public void savesAndLoads() throws IOException {
+        File dir = folder.getRoot();
+        executable(new File(dir, "bin/clang"));
+        ToolchainInventory.build(dir, 9, entries(
+            "bin/clang", 10, "sysroot/usr/include/stdio.h", 3),
+            Collections.<String, File>emptyMap()).save(dir);
+
+        ToolchainInventory loaded = ToolchainInventory.load(dir);
+        assertNotNull(loaded);
+        assertEquals(9, loaded.getInstallStamp());
+        assertEquals(2, loaded.getFileCount());
+        assertEquals(13, loaded.getTotalBytes());
+        assertEquals(Arrays.asList("bin/clang"), loaded.getExecutables());
+        assertTrue(child(child(loaded.getRoot(), "bin"), "clang").isExecutable());
+        assertEquals(1, child(child(loaded.getRoot(), "sysroot"), "usr").getFileCount());
+    }
+
+    @Test
+    public void loadReturnsNullWithoutInventory() {
+        assertNull(ToolchainInventory.load(folder.getRoot()));
+    }
+
+    private List<InstallManifest.FileEntry> entries(Object... pathsAndSizes)
+            throws IOException {
+        InstallManifest manifest = InstallManifest.load(folder.newFolder());
+        manifest.beginInstall(1);
+        for (int i = 0; i < pathsAndSizes.length; i += 2) {
+            manifest.record((String) pathsAndSizes[i], (Integer) pathsAndSizes[i + 1], null);
+        }
+        manifest.abortInstall();
+        return new ArrayList<>(manifest.getFiles());
+    }
+
+    private static ToolchainInventory.Node child(ToolchainInventory.Node node, String name) {
+        for (ToolchainInventory.Node child : node.getChildren()) {
+            if (child.getName().equals(name)) {
+                return child;
+            }
+        }
+        throw new AssertionError("Sin hijo " + name + " en " + node.getName());
+    }
+
+    private static void executable(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        file.createNewFile();
+        file.setExecutable(true);
+    }
+}
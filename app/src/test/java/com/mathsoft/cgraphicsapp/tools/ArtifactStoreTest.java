@@ -0,0 +1,110 @@
+package com.mathsoft.cgraphicsapp;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ArtifactStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File root;
+    private ArtifactStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        root = folder.newFolder("compiled");
+        store = ArtifactStore.forDirectory(root);
+    }
+
+    @Test
+    public void reusesLibraryWithIdenticalContent() throws IOException {
+        File first = store.add(library("a.so", 10, 'x'), "libmain.so", "main.c", BuildProfile.FAST);
+        File duplicate = library("b.so", 10, 'x');
+        File second = store.add(duplicate, "libmain.so", "main.c", BuildProfile.FAST);
+
+        assertEquals(first, second);
+        assertFalse(duplicate.exists());
+        assertEquals(new File(root, "fast"), first.getParentFile());
+    }
+
+    @Test
+    public void storesDifferentContentUnderDifferentPaths() throws IOException {
+        File first = store.add(library("a.so", 10, 'x'), "libmain.so", "main.c", BuildProfile.FAST);
+        File second = store.add(library("b.so", 10, 'y'), "libmain.so", "main.c", BuildProfile.FAST);
+
+        assertNotEquals(first, second);
+        assertTrue(first.exists());
+        assertTrue(second.exists());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverQuota() throws IOException {
+        store.setQuota(250);
+        File oldest = store.add(library("a.so", 100, 'a'), "liba.so", "a.c", BuildProfile.FAST);
+        File middle = store.add(library("b.so", 100, 'b'), "libb.so", "b.c", BuildProfile.FAST);
+        File newest = store.add(library("c.so", 100, 'c'), "libc.so", "c.c", BuildProfile.FAST);
+
+        assertFalse(oldest.exists());
+        assertTrue(middle.exists());
+        assertTrue(newest.exists());
+    }
+
+    @Test
+    public void neverEvictsLoadedLibrary() throws IOException {
+        store.setQuota(150);
+        File loaded = store.add(library("a.so", 100, 'a'), "liba.so", "a.c", BuildProfile.FAST);
+        ArtifactStore.markLoaded(loaded);
+        File other = store.add(library("b.so", 100, 'b'), "libb.so", "b.c", BuildProfile.FAST);
+        store.add(library("c.so", 100, 'c'), "libc.so", "c.c", BuildProfile.FAST);
+
+        assertTrue(loaded.exists());
+        assertFalse(other.exists());
+    }
+
+    @Test
+    public void adoptsOnlyLibrariesNamedByTheApp() throws IOException {
+        File other = folder.newFolder("external");
+        File legacy = library(other, "libmain_1700000000000.so", 10, 'a');
+        File stored = library(new File(other, "release"), "libmain_0123456789ab.so", 10, 'b');
+        File userFile = library(other, "libusuario.so", 10, 'c');
+        File userDir = library(new File(other, "mios"), "libmain_1700000000000.so", 10, 'd');
+
+        // Con cuota cero se elimina todo lo adoptado
+        ArtifactStore.forDirectory(other).setQuota(0);
+
+        assertFalse(legacy.exists());
+        assertFalse(stored.exists());
+        assertTrue(userFile.exists());
+        assertTrue(userDir.exists());
+    }
+
+    private File library(String name, int size, char fill) throws IOException {
+        return library(folder.getRoot(), name, size, fill);
+    }
+
+    private static File library(File dir, String name, int size, char fill) throws IOException {
+        dir.mkdirs();
+        File file = new File(dir, name);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            content.append(fill);
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+}
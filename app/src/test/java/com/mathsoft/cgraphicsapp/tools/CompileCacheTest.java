@@ -0,0 +1,127 @@
+package com.mathsoft.cgraphicsapp;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompileCacheTest {
+
+    private static final byte[] SOURCE = "int main(void) { return 0; }".getBytes(StandardCharsets.UTF_8);
+    private static final String TRIPLE = "aarch64-linux-android24";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CompileCache cache;
+    private File clang;
+
+    @Before
+    public void setUp() throws IOException {
+        cache = new CompileCache(folder.newFolder("cache"), 1024, ".so");
+        clang = folder.newFile("clang");
+    }
+
+    @Test
+    public void ignoresOutputPath() {
+        File first = new File("/tmp/job1/libmain.so");
+        File second = new File("/tmp/job2/libmain.so");
+        assertEquals(key(command(first, "/tmp/job1/main.d"), first),
+                     key(command(second, "/tmp/job1/main.d"), second));
+    }
+
+    @Test
+    public void ignoresDepfilePath() {
+        File output = new File("/tmp/job/libmain.so");
+        assertEquals(key(command(output, "/tmp/job1/main.d"), output),
+                     key(command(output, "/tmp/job2/main.d"), output));
+    }
+
+    @Test
+    public void keepsOtherArgumentsInKey() {
+        File output = new File("/tmp/job/libmain.so");
+        List<String> base = command(output, "/tmp/job/main.d");
+        List<String> optimized = command(output, "/tmp/job/main.d");
+        optimized.set(1, "-O3");
+        assertNotEquals(key(base, output), key(optimized, output));
+    }
+
+    @Test
+    public void outputPathOnlyMaskedAtOutputFile() {
+        // Un argumento igual a la salida de otra compilación sí cuenta
+        File output = new File("/tmp/job/libmain.so");
+        File other = new File("/tmp/job/libotro.so");
+        assertNotEquals(key(command(output, "/tmp/job/main.d"), output),
+                        key(command(output, "/tmp/job/main.d"), other));
+    }
+
+    @Test
+    public void dependsOnSourceAndHeaders() {
+        File output = new File("/tmp/job/libmain.so");
+        List<String> command = command(output, "/tmp/job/main.d");
+        String base = cache.computeKey(SOURCE, command, output, clang, TRIPLE, "h1");
+        assertNotEquals(base, cache.computeKey("int x;".getBytes(StandardCharsets.UTF_8),
+                                               command, output, clang, TRIPLE, "h1"));
+        assertNotEquals(base, cache.computeKey(SOURCE, command, output, clang, TRIPLE, "h2"));
+        assertNotEquals(base, cache.computeKey(SOURCE, command, output, clang,
+                                               "armv7a-linux-androideabi24", "h1"));
+    }
+
+    @Test
+    public void restoresStoredEntry() throws IOException {
+        File library = write(folder.newFile("libmain.so"), "ELF");
+        cache.store("k1", library, "warning: x");
+
+        File restored = new File(folder.getRoot(), "restored.so");
+        assertEquals("warning: x", cache.restore("k1", restored));
+        assertTrue(restored.exists());
+        assertEquals(1, cache.getHits());
+        assertNull(cache.restore("k2", restored));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverLimit() throws IOException {
+        File library = write(folder.newFile("libmain.so"), new String(new byte[400]));
+        cache.store("old", library, "");
+        new File(cache.getDirectory(), "old.so").setLastModified(1000);
+        cache.store("mid", library, "");
+        new File(cache.getDirectory(), "mid.so").setLastModified(2000);
+        cache.store("new", library, "");
+
+        assertNull(cache.lookup("old"));
+        assertNotNull(cache.lookup("mid"));
+        assertNotNull(cache.lookup("new"));
+    }
+
+    private String key(List<String> command, File output) {
+        return cache.computeKey(SOURCE, command, output, clang, TRIPLE, "");
+    }
+
+    private static List<String> command(File output, String depfile) {
+        return new ArrayList<>(Arrays.asList(
+            "clang", "-O0", "-shared", "-MD", "-MF", depfile,
+            "-o", output.getAbsolutePath(), "main.c"));
+    }
+
+    private static File write(File file, String text) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+}
@@ -0,0 +1,51 @@
+package com.mathsoft.cgraphicsapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class DependencyGraphTest {
+
+    @Test
+    public void parsesSingleLine() {
+        assertEquals(Arrays.asList("/src/main.c", "/src/util.h"),
+            DependencyGraph.parseDepfile("main.o: /src/main.c /src/util.h\n"));
+    }
+
+    @Test
+    public void joinsContinuationLines() {
+        String depfile = "main.o: /src/main.c \\\n  /src/a.h \\\n  /src/b.h\n";
+        assertEquals(Arrays.asList("/src/main.c", "/src/a.h", "/src/b.h"),
+            DependencyGraph.parseDepfile(depfile));
+    }
+
+    @Test
+    public void joinsCrLfContinuationLines() {
+        String depfile = "main.o: /src/main.c \\\r\n  /src/a.h\r\n";
+        assertEquals(Arrays.asList("/src/main.c", "/src/a.h"),
+            DependencyGraph.parseDepfile(depfile));
+    }
+
+    @Test
+    public void unescapesSpacesAndDollars() {
+        String depfile = "main.o: /mis\\ proyectos/main.c /src/$$precio.h\n";
+        assertEquals(Arrays.asList("/mis proyectos/main.c", "/src/$precio.h"),
+            DependencyGraph.parseDepfile(depfile));
+    }
+
+    @Test
+    public void acceptsTargetWithoutDependenciesOnSameLine() {
+        String depfile = "main.o:\n /src/main.c /src/a.h\n";
+        assertEquals(Arrays.asList("/src/main.c", "/src/a.h"),
+            DependencyGraph.parseDepfile(depfile));
+    }
+
+    @Test
+    public void returnsEmptyListWithoutTarget() {
+        assertEquals(Collections.<String>emptyList(), DependencyGraph.parseDepfile(""));
+        assertEquals(Collections.<String>emptyList(), DependencyGraph.parseDepfile("main.o /src/a.h"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.mathsoft.cgraphicsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiagnosticTest {
+
+    @Test
+    public void parsesError() {
+        Diagnostic diagnostic = Diagnostic.parse(
+            "/sdcard/proyecto/main.c:12:5: error: use of undeclared identifier 'x'");
+        assertNotNull(diagnostic);
+        assertEquals("/sdcard/proyecto/main.c", diagnostic.file);
+        assertEquals(12, diagnostic.line);
+        assertEquals(5, diagnostic.column);
+        assertEquals(Diagnostic.Severity.ERROR, diagnostic.severity);
+        assertEquals("use of undeclared identifier 'x'", diagnostic.message);
+        assertEquals("main.c", diagnostic.getFileName());
+        assertTrue(diagnostic.isError());
+    }
+
+    @Test
+    public void parsesEverySeverity() {
+        assertEquals(Diagnostic.Severity.FATAL,
+            Diagnostic.parse("a.c:1:1: fatal error: 'b.h' file not found").severity);
+        assertEquals(Diagnostic.Severity.WARNING,
+            Diagnostic.parse("a.c:1:1: warning: unused variable 'y'").severity);
+        assertEquals(Diagnostic.Severity.NOTE,
+            Diagnostic.parse("a.c:1:1: note: previous definition is here").severity);
+        assertTrue(Diagnostic.parse("a.c:1:1: fatal error: x").isError());
+        assertFalse(Diagnostic.parse("a.c:1:1: warning: x").isError());
+    }
+
+    @Test
+    public void keepsColonsInFileAndMessage() {
+        Diagnostic diagnostic = Diagnostic.parse("/dir:raro/a.c:3:9: error: expected ';': got '}'");
+        assertNotNull(diagnostic);
+        assertEquals("/dir:raro/a.c", diagnostic.file);
+        assertEquals(3, diagnostic.line);
+        assertEquals(9, diagnostic.column);
+        assertEquals("expected ';': got '}'", diagnostic.message);
+    }
+
+    @Test
+    public void ignoresLinesWithoutDiagnostic() {
+        assertNull(Diagnostic.parse(""));
+        assertNull(Diagnostic.parse("1 error generated."));
+        assertNull(Diagnostic.parse("    int x = y;"));
+        assertNull(Diagnostic.parse("a.c:1:1: remark: inlined"));
+        assertNull(Diagnostic.parse("ld.lld: error: undefined symbol: main"));
+    }
+
+    @Test
+    public void rejectsOutOfRangeLineNumbers() {
+        assertNull(Diagnostic.parse("a.c:99999999999:1: error: x"));
+    }
+}
@@ -0,0 +1,79 @@
+package com.mathsoft.cgraphicsapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FileUtilsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeRangeCopiesAssetBytesAtAbsoluteOffset() throws IOException {
+        // Un "APK" con otros datos antes y después del asset
+        byte[] apk = new byte[64 * 1024];
+        for (int i = 0; i < apk.length; i++) {
+            apk[i] = (byte) (i * 31 + 7);
+        }
+        File apkFile = folder.newFile("base.apk");
+        try (FileOutputStream out = new FileOutputStream(apkFile)) {
+            out.write(apk);
+        }
+        int start = 12345;
+        int length = 40000;
+
+        File dest = new File(folder.getRoot(), "libclang.so");
+        AtomicLong progress = new AtomicLong();
+        long written;
+        try (RandomAccessFile in = new RandomAccessFile(apkFile, "r")) {
+            // La posición del descriptor no influye: las posiciones son absolutas
+            in.seek(500);
+            written = FileUtils.writeRange(in.getFD(), start, length, dest, progress);
+        }
+
+        assertEquals(length, written);
+        assertEquals(length, progress.get());
+        assertArrayEquals(Arrays.copyOfRange(apk, start, start + length), FileUtils.readBytes(dest));
+    }
+
+    @Test(expected = IOException.class)
+    public void writeRangeFailsPastEndOfFile() throws IOException {
+        File apkFile = folder.newFile("base.apk");
+        try (FileOutputStream out = new FileOutputStream(apkFile)) {
+            out.write(new byte[100]);
+        }
+        try (RandomAccessFile in = new RandomAccessFile(apkFile, "r")) {
+            FileUtils.writeRange(in.getFD(), 50, 100, new File(folder.getRoot(), "out"), null);
+        }
+    }
+
+    @Test
+    public void atomicWritesLeaveOtherWritersTempFilesAlone() throws IOException {
+        File dir = folder.newFolder("cache");
+        File dest = new File(dir, "k1.so");
+        // Temporal de otro escritor del mismo destino, a medio escribir
+        File foreign = new File(dir, "k1.so.tmp");
+        FileUtils.writeTextAtomic(foreign, "parcial");
+        File source = folder.newFile("libmain.so");
+        FileUtils.writeTextAtomic(source, "ELF");
+
+        FileUtils.copyFileAtomic(source, dest);
+        FileUtils.writeTextAtomic(new File(dir, "k1.log"), "warning: x");
+
+        assertEquals("ELF", FileUtils.readText(dest));
+        assertEquals("warning: x", FileUtils.readText(new File(dir, "k1.log")));
+        assertEquals("parcial", FileUtils.readText(foreign));
+        assertEquals(3, dir.listFiles().length);
+    }
+}
@@ -0,0 +1,117 @@
+package com.mathsoft.cgraphicsapp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SysrootRetryTest {
+
+    private static final String MISSING =
+        "main.c:1:10: fatal error: 'GLES3/gl3.h' file not found";
+    private static final String NOTICE = "compilando de nuevo...";
+
+    private final List<String> streamed = new ArrayList<>();
+    private final List<Diagnostic> delivered = new ArrayList<>();
+    private final CompilerOutput output = new CompilerOutput(new CompilerOutput.Listener() {
+        @Override
+        public void onOutputLine(String line) {
+            streamed.add(line);
+        }
+
+        @Override
+        public void onDiagnostic(Diagnostic diagnostic) {
+            delivered.add(diagnostic);
+        }
+    });
+
+    @Test
+    public void successfulRetryLeavesNoErrorDiagnostics() throws Exception {
+        List<List<String>> requested = new ArrayList<>();
+        int[] runs = { 0 };
+        int exitCode = SysrootRetry.run(output, out -> {
+            if (runs[0]++ == 0) {
+                out.appendLine(MISSING);
+                out.appendLine("1 error generated.");
+                return 1;
+            }
+            out.appendLine("main.c:3:5: warning: unused variable 'x'");
+            return 0;
+        }, missing -> requested.add(missing), NOTICE);
+
+        assertEquals(0, exitCode);
+        assertEquals(2, runs[0]);
+        assertEquals(Collections.singletonList(Arrays.asList("GLES3/gl3.h")), requested);
+        assertEquals(0, output.getErrorCount());
+        assertNull(output.getFirstError());
+        for (Diagnostic diagnostic : output.getDiagnostics()) {
+            assertFalse(diagnostic.isError());
+        }
+        for (Diagnostic diagnostic : delivered) {
+            assertFalse(diagnostic.isError());
+        }
+        assertFalse(output.getText().contains("file not found"));
+        assertTrue(output.getText().startsWith(NOTICE + "\n"));
+        // Las líneas del primer intento se mostraron igual
+        assertTrue(streamed.contains(MISSING));
+    }
+
+    @Test
+    public void keepsFirstAttemptWhenNothingIsExtracted() throws Exception {
+        int exitCode = SysrootRetry.run(output, out -> {
+            out.appendLine(MISSING);
+            return 1;
+        }, missing -> false, NOTICE);
+
+        assertEquals(1, exitCode);
+        assertEquals(1, output.getErrorCount());
+        assertEquals(MISSING + "\n", output.getText());
+        assertEquals(1, delivered.size());
+        // La línea se mostró una sola vez
+        assertEquals(Collections.singletonList(MISSING), streamed);
+    }
+
+    @Test
+    public void doesNotRetryOtherErrors() throws Exception {
+        int[] runs = { 0 };
+        int exitCode = SysrootRetry.run(output, out -> {
+            runs[0]++;
+            out.appendLine("main.c:2:1: error: expected ';'");
+            return 1;
+        }, missing -> true, NOTICE);
+
+        assertEquals(1, exitCode);
+        assertEquals(1, runs[0]);
+        assertEquals(1, output.getErrorCount());
+    }
+
+    @Test
+    public void keepsFirstAttemptOutputOnFailure() {
+        try {
+            SysrootRetry.run(output, out -> {
+                out.appendLine(MISSING);
+                throw new IOException("proceso cerrado");
+            }, missing -> true, NOTICE);
+        } catch (Exception e) {
+            assertEquals(MISSING + "\n", output.getText());
+            return;
+        }
+        throw new AssertionError("Se esperaba IOException");
+    }
+
+    @Test
+    public void findsMissingFiles() {
+        assertEquals("GLES3/gl3.h", SysrootRetry.findMissingFile(MISSING));
+        assertEquals("-lGLESv3", SysrootRetry.findMissingFile("ld.lld: error: unable to find library -lGLESv3"));
+        assertEquals("crtbegin_so.o", SysrootRetry.findMissingFile("ld.lld: error: cannot find crtbegin_so.o"));
+        assertNull(SysrootRetry.findMissingFile("main.c:2:1: error: expected ';'"));
+    }
+}